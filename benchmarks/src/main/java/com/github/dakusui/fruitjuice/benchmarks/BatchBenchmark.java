@@ -0,0 +1,69 @@
+package com.github.dakusui.fruitjuice.benchmarks;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.InjectionType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares creating {@code batchSize} objects by calling {@link Injector#getInstance(Class)}
+ * repeatedly with doing so by {@link Injector.Extended#getInstances(Class, int)} and its
+ * parallel variant.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+  @Param({ "1000" })
+  public int batchSize;
+
+  private Injector.Extended injector;
+  private ExecutorService   executorService;
+
+  @Setup
+  public void setUp() {
+    this.injector = FruitJuice.createExtendedInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return InjectionType.typeOf(request).create(this, request);
+      }
+    });
+    this.executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.executorService.shutdown();
+  }
+
+  @Benchmark
+  public List<ExampleFixture> getInstance() {
+    List<ExampleFixture> ret = new ArrayList<>(this.batchSize);
+    for (int i = 0; i < this.batchSize; i++) {
+      ret.add(this.injector.getInstance(ExampleFixture.class));
+    }
+    return ret;
+  }
+
+  @Benchmark
+  public List<ExampleFixture> getInstances() {
+    return this.injector.getInstances(ExampleFixture.class, this.batchSize);
+  }
+
+  @Benchmark
+  public List<ExampleFixture> getInstances_parallel() {
+    return this.injector.getInstances(ExampleFixture.class, this.batchSize, this.executorService);
+  }
+}
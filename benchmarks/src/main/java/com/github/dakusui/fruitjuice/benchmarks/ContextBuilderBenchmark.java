@@ -0,0 +1,112 @@
+package com.github.dakusui.fruitjuice.benchmarks;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scalability of {@link Context.Builder}s shared by threads under a read-mostly
+ * workload, where all the values are already created.
+ * <p>
+ * Run with {@code -t 1}, {@code -t 8}, {@code -t 32}, etc. to see how throughput scales
+ * with the number of threads. {@code SYNCHRONIZED} is a {@link Context.Builder.Base}
+ * guarded by a single lock, which is shown as a baseline.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContextBuilderBenchmark {
+  public enum BuilderType {
+    CONCURRENT {
+      @Override
+      Context.Builder create() {
+        return new Context.Builder.Concurrent() {
+          @Override
+          protected Object create(InjectionRequest request) {
+            return request.toString();
+          }
+        };
+      }
+    },
+    SYNCHRONIZED {
+      @Override
+      Context.Builder create() {
+        final Context.Builder builder = new Context.Builder.Base() {
+          @Override
+          protected Object create(InjectionRequest request) {
+            return request.toString();
+          }
+        };
+        final Object lock = new Object();
+        return new Context.Builder() {
+          @Override
+          public Context.Builder add(InjectionPoint injectionPoint) {
+            synchronized (lock) {
+              builder.add(injectionPoint);
+            }
+            return this;
+          }
+
+          @Override
+          public Context build() {
+            final Context context;
+            synchronized (lock) {
+              context = builder.build();
+            }
+            return new Context() {
+              @Override
+              public <T> T lookup(InjectionRequest request) {
+                synchronized (lock) {
+                  return context.lookup(request);
+                }
+              }
+            };
+          }
+        };
+      }
+    };
+
+    abstract Context.Builder create();
+  }
+
+  @Param
+  public BuilderType builderType;
+
+  private Context.Builder      builder;
+  private List<InjectionPoint> points;
+
+  @Setup
+  public void setUp() {
+    this.builder = this.builderType.create();
+    this.points = InjectionPlan.Factory.create(ExampleFixture.class).getFieldInjectionPoints();
+    for (InjectionPoint each : this.points) {
+      this.builder.add(each);
+    }
+  }
+
+  /**
+   * Adds all the field injection points of {@link ExampleFixture} and looks their values up,
+   * as {@code Injector#getInstance} does.
+   */
+  @Benchmark
+  public Object addAndLookup() {
+    Object ret = null;
+    for (InjectionPoint each : this.points) {
+      this.builder.add(each);
+    }
+    Context context = this.builder.build();
+    for (InjectionPoint each : this.points) {
+      ret = context.lookup(each.getRequest());
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,52 @@
+package com.github.dakusui.fruitjuice.benchmarks;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.InjectionType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Injector.Engine}s by injecting {@link ExampleFixture}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EngineBenchmark {
+  @Param({ "REFLECTIVE", "GENERATED" })
+  public Injector.Engine engine;
+
+  private Injector injector;
+
+  @Setup
+  public void setUp() {
+    this.injector = FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return InjectionType.typeOf(request).create(this, request);
+      }
+    }, this.engine);
+  }
+
+  @Benchmark
+  public ExampleFixture exampleFixture() {
+    return this.injector.getInstance(ExampleFixture.class);
+  }
+
+  /**
+   * Unlike {@link #exampleFixture()}, this doesn't create a nested injector in
+   * {@code create}, and therefore measures instantiation and field injection more
+   * directly.
+   */
+  @Benchmark
+  public ExampleFixture.NestedFixture nestedFixture() {
+    return this.injector.getInstance(ExampleFixture.NestedFixture.class);
+  }
+}
@@ -0,0 +1,96 @@
+package com.github.dakusui.fruitjuice.benchmarks;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.examples.calc.Add;
+import com.github.dakusui.fruitjuice.examples.calc.Calc;
+import com.github.dakusui.fruitjuice.examples.executorservice.ContainsMultiThreadedExecutorService;
+import com.github.dakusui.fruitjuice.examples.executorservice.MultiThreaded;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.InjectionType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput and latency of {@link Injector#getInstance(Class)} for the
+ * fixtures and examples shipped with FruitJuice's tests.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetInstanceBenchmark {
+  private Injector        fixtureInjector;
+  private Injector        calcInjector;
+  private Injector        executorServiceInjector;
+  private ExecutorService executorService;
+
+  @Setup
+  public void setUp() {
+    this.fixtureInjector = FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return InjectionType.typeOf(request).create(this, request);
+      }
+    });
+    this.calcInjector = FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        int ret = 0;
+        for (int each : request.getAnnotation(Add.class).value()) {
+          ret += each;
+        }
+        return ret;
+      }
+    });
+    ////
+    // A pool is created only once here. Otherwise, this benchmark would measure
+    // creation of thread pools rather than injection.
+    this.executorService = Executors.newSingleThreadExecutor();
+    this.executorServiceInjector = FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        if (!request.isAnnotationPresent(MultiThreaded.class))
+          throw new IllegalArgumentException(request.toString());
+        return GetInstanceBenchmark.this.executorService;
+      }
+    });
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.executorService.shutdown();
+  }
+
+  /**
+   * {@link ExampleFixture} has constructor and field injection points including a
+   * nested fixture, which is created by another injector.
+   */
+  @Benchmark
+  public ExampleFixture exampleFixture() {
+    return this.fixtureInjector.getInstance(ExampleFixture.class);
+  }
+
+  /**
+   * {@link Calc} has a single primitive field injection point.
+   */
+  @Benchmark
+  public Calc calc() {
+    return this.calcInjector.getInstance(Calc.class);
+  }
+
+  /**
+   * {@link ContainsMultiThreadedExecutorService} has a single constructor injection point.
+   */
+  @Benchmark
+  public ContainsMultiThreadedExecutorService multiThreaded() {
+    return this.executorServiceInjector.getInstance(ContainsMultiThreadedExecutorService.class);
+  }
+}
@@ -0,0 +1,99 @@
+package com.github.dakusui.fruitjuice.benchmarks;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.Fixture;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures hashing, equality and annotation accesses of {@link InjectionRequest}s and lookups of values
+ * from a {@link Context}, which are performed for every injection point.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InjectionRequestBenchmark {
+  private InjectionRequest request;
+  private InjectionRequest equalRequest;
+  private InjectionRequest sameTypeRequest;
+  private Context          context;
+
+  @Setup
+  public void setUp() {
+    List<InjectionRequest> requests = requestsOf(ExampleFixture.class);
+    List<InjectionRequest> anotherRequests = requestsOf(ExampleFixture.class);
+    ////
+    // Constructor parameter 0 (HECTOR) and field 'patroclus' (PATROCLUS) are both
+    // Components but differently configured.
+    this.request = requests.get(0);
+    this.equalRequest = anotherRequests.get(0);
+    this.sameTypeRequest = requests.get(requests.size() - 1);
+    Context.Builder builder = new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return request.toString();
+      }
+    };
+    for (InjectionPoint each : InjectionPlan.Factory.create(ExampleFixture.class).getConstructorInjectionPoints()) {
+      builder.add(each);
+    }
+    for (InjectionPoint each : InjectionPlan.Factory.create(ExampleFixture.class).getFieldInjectionPoints()) {
+      builder.add(each);
+    }
+    this.context = builder.build();
+  }
+
+  @Benchmark
+  public int hashCode_() {
+    return this.request.hashCode();
+  }
+
+  @Benchmark
+  public boolean equals_equalRequest() {
+    return this.request.equals(this.equalRequest);
+  }
+
+  @Benchmark
+  public boolean equals_sameTypeRequest() {
+    return this.request.equals(this.sameTypeRequest);
+  }
+
+  @Benchmark
+  public Object getAnnotation() {
+    return this.request.getAnnotation(Fixture.InjectComponent.class);
+  }
+
+  @Benchmark
+  public boolean isAnnotationPresent_absent() {
+    return this.request.isAnnotationPresent(Fixture.InjectSubsystem.class);
+  }
+
+  @Benchmark
+  public Object lookup() {
+    return this.context.lookup(this.equalRequest);
+  }
+
+  private static List<InjectionRequest> requestsOf(Class<?> targetClass) {
+    ////
+    // Plans are created separately so that requests are not shared.
+    InjectionPlan<?> plan = InjectionPlan.Factory.create(targetClass);
+    List<InjectionRequest> ret = new ArrayList<>();
+    for (InjectionPoint each : plan.getConstructorInjectionPoints()) {
+      ret.add(each.getRequest());
+    }
+    for (InjectionPoint each : plan.getFieldInjectionPoints()) {
+      ret.add(each.getRequest());
+    }
+    return ret;
+  }
+}
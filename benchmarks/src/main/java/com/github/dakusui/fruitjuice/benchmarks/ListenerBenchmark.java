@@ -0,0 +1,45 @@
+package com.github.dakusui.fruitjuice.benchmarks;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.InjectionListener;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.InjectionType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of {@link InjectionListener.Metrics} on {@link Injector#getInstance(Class)}
+ * when it is disabled, sampling, and recording every call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListenerBenchmark {
+  @Param({ "NONE", "100", "1" })
+  public String samplingInterval;
+
+  private Injector injector;
+
+  @Setup
+  public void setUp() {
+    this.injector = new Injector.Impl(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return InjectionType.typeOf(request).create(this, request);
+      }
+    }, Injector.Engine.REFLECTIVE, null, "NONE".equals(this.samplingInterval)
+        ? InjectionListener.NONE
+        : new InjectionListener.Metrics(Integer.parseInt(this.samplingInterval)));
+  }
+
+  @Benchmark
+  public ExampleFixture getInstance() {
+    return this.injector.getInstance(ExampleFixture.class);
+  }
+}
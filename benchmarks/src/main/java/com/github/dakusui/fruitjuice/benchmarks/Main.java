@@ -0,0 +1,36 @@
+package com.github.dakusui.fruitjuice.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * An entry point of FruitJuice's benchmarks.
+ * <p>
+ * Accepts the same command line options as JMH's own. Unless specified otherwise,
+ * the GC profiler is enabled and results are written to {@code jmh-result.json}
+ * in JSON format so that they can be compared between releases.
+ */
+public class Main {
+  public static void main(String... args) throws Exception {
+    CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+    if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListProfilers() || commandLineOptions.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    ChainedOptionsBuilder builder = new OptionsBuilder().parent(commandLineOptions);
+    if (commandLineOptions.getProfilers().isEmpty()) {
+      builder.addProfiler(GCProfiler.class);
+    }
+    if (!commandLineOptions.getResultFormat().hasValue()) {
+      builder.resultFormat(ResultFormatType.JSON);
+    }
+    if (!commandLineOptions.getResult().hasValue()) {
+      builder.result("jmh-result.json");
+    }
+    new Runner(builder.build()).run();
+  }
+}
@@ -0,0 +1,90 @@
+package com.github.dakusui.fruitjuice.benchmarks;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.InjectionType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares an injector whose builder is a {@link Context.Builder.Slotted}, which stores
+ * values into slots of a plan as injection points are added, with one whose builder
+ * is not, whose values are looked up from the built context once per slot.
+ * <p>
+ * {@code LOOKED_UP} delegates to the same kind of builder as {@code SLOTTED} does, so
+ * that the difference is only in how slots are filled.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlotBenchmark {
+  public enum BuilderType {
+    SLOTTED {
+      @Override
+      Context.Builder create() {
+        return newConcurrent();
+      }
+    },
+    LOOKED_UP {
+      @Override
+      Context.Builder create() {
+        final Context.Builder builder = newConcurrent();
+        return new Context.Builder() {
+          @Override
+          public Context.Builder add(InjectionPoint injectionPoint) {
+            builder.add(injectionPoint);
+            return this;
+          }
+
+          @Override
+          public Context build() {
+            return builder.build();
+          }
+        };
+      }
+    };
+
+    abstract Context.Builder create();
+
+    private static Context.Builder newConcurrent() {
+      return new Context.Builder.Concurrent() {
+        @Override
+        protected Object create(InjectionRequest request) {
+          return InjectionType.typeOf(request).create(this, request);
+        }
+      };
+    }
+  }
+
+  @Param({ "SLOTTED", "LOOKED_UP" })
+  public BuilderType builderType;
+
+  @Param({ "100" })
+  public int batchSize;
+
+  private Injector.Extended injector;
+
+  @Setup
+  public void setUp() {
+    this.injector = FruitJuice.createExtendedInjector(this.builderType.create());
+  }
+
+  @Benchmark
+  public ExampleFixture getInstance() {
+    return this.injector.getInstance(ExampleFixture.class);
+  }
+
+  @Benchmark
+  public List<ExampleFixture> getInstances() {
+    return this.injector.getInstances(ExampleFixture.class, this.batchSize);
+  }
+}
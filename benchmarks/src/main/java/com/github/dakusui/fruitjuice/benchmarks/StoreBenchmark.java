@@ -0,0 +1,101 @@
+package com.github.dakusui.fruitjuice.benchmarks;
+
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionPlanStore;
+import com.github.dakusui.fruitjuice.examples.calc.Calc;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares creating plans at startup by scanning classes reflectively with loading
+ * them from an {@link InjectionPlanStore}.
+ * <p>
+ * Each fork measures a single call, where the classes have not been examined by
+ * reflection yet, as in a process which starts up. The store file is written by another
+ * process for the same reason. A plan for another class is created beforehand, so that
+ * costs paid once per process, e.g., of initializing method handles, are not measured.
+ * {@code load} opens the store, so it pays for mapping the file and validating stamps
+ * of the classes, too. Run with {@code -bm avgt -wi 5 -i 5} to compare them after
+ * warming up.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Benchmark)
+public class StoreBenchmark {
+  private static final List<Class<?>> CLASSES = Arrays.<Class<?>>asList(
+      ExampleFixture.class,
+      ExampleFixture.NestedFixture.class,
+      Calc.class);
+
+  private File file;
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    this.file = File.createTempFile("fruitjuice", ".plans");
+    Process process = new ProcessBuilder(
+        new File(System.getProperty("java.home"), "bin/java").getPath(),
+        "-cp",
+        System.getProperty("java.class.path"),
+        Writer.class.getName(),
+        this.file.getPath())
+        .inheritIO()
+        .start();
+    if (process.waitFor() != 0)
+      throw new IOException("Failed to write " + this.file);
+    InjectionPlan.Factory.create(Bootstrap.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    //noinspection ResultOfMethodCallIgnored
+    this.file.delete();
+  }
+
+  @Benchmark
+  public void scan(Blackhole blackhole) {
+    for (Class<?> each : CLASSES) {
+      blackhole.consume(InjectionPlan.Factory.create(each));
+    }
+  }
+
+  @Benchmark
+  public void load(Blackhole blackhole) throws IOException {
+    try (InjectionPlanStore store = InjectionPlanStore.open(this.file)) {
+      for (Class<?> each : CLASSES) {
+        blackhole.consume(store.load(each));
+      }
+    }
+  }
+
+  /**
+   * A class whose plan is created before measurement.
+   */
+  public static class Bootstrap {
+    @Inject
+    public Object value;
+
+    @Inject
+    public Bootstrap(String value) {
+    }
+  }
+
+  /**
+   * Writes plans of the classes to a file given by the first argument.
+   */
+  public static class Writer {
+    public static void main(String... args) throws IOException {
+      InjectionPlanStore.write(new File(args[0]), CLASSES);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package com.github.dakusui.fruitjuice.jfr;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.InjectionListener;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingControl;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A listener that emits Java Flight Recorder events. Created by
+ * {@link InjectionListener.Factory#createJfrListener()}.
+ * <p>
+ * All the events are disabled by default. They are enabled by a recording with
+ * settings that enable {@code fruitjuice.*} events, e.g., one started by JDK Mission
+ * Control. A {@code minDuration} setting of each event, e.g., {@code 10 ms}, filters
+ * events shorter than it. Since an injector reports events after they happen, durations
+ * of events are held by their {@code elapsed} fields, to which {@code minDuration} is
+ * applied, rather than by their start and end times.
+ * <p>
+ * This class is in {@code fruitjuice-jfr}, which requires JDK 11 or later, so that
+ * {@code fruitjuice} itself stays compatible with Java 7. It is in a package of its own,
+ * so that the two artifacts don't split a package.
+ */
+public final class JfrInjectionListener implements InjectionListener {
+  /**
+   * {@inheritDoc}
+   * <p>
+   * A call is sampled if any of {@link GetInstanceEvent} and {@link CreateEvent} is
+   * enabled.
+   */
+  @Override
+  public boolean sample(Class<?> targetClass) {
+    return new GetInstanceEvent().isEnabled() || new CreateEvent().isEnabled();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onEvent(InjectionListener.Event event, Class<?> targetClass, InjectionPoint point, InjectionRequest request, long start, long nanos) {
+    switch (event) {
+    case GET_INSTANCE:
+      GetInstanceEvent getInstance = new GetInstanceEvent();
+      if (getInstance.isEnabled()) {
+        getInstance.targetClass = targetClass;
+        getInstance.elapsed = nanos;
+        getInstance.commit();
+      }
+      break;
+    case CREATE:
+      CreateEvent create = new CreateEvent();
+      if (create.isEnabled()) {
+        create.targetClass = targetClass;
+        create.request = String.valueOf(request);
+        create.elapsed = nanos;
+        create.commit();
+      }
+      break;
+    case PLAN:
+      PlanCacheMissEvent planCacheMiss = new PlanCacheMissEvent();
+      if (planCacheMiss.isEnabled()) {
+        planCacheMiss.targetClass = targetClass;
+        planCacheMiss.elapsed = nanos;
+        planCacheMiss.commit();
+      }
+      break;
+    default:
+      ////
+      // Other events are too fine-grained to be recorded.
+    }
+  }
+
+  /**
+   * An event emitted for each call of {@code getInstance}.
+   */
+  @Name("fruitjuice.GetInstance")
+  @Label("Get Instance")
+  @Description("An object is created and injected by an injector")
+  @Category("FruitJuice")
+  @Enabled(false)
+  @StackTrace(false)
+  public static class GetInstanceEvent extends jdk.jfr.Event {
+    @Label("Target Class")
+    Class<?> targetClass;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Minimum Duration")
+    @Name("minDuration")
+    @SettingDefinition
+    protected boolean minDuration(MinDuration setting) {
+      return this.elapsed >= setting.nanos;
+    }
+  }
+
+  /**
+   * An event emitted for each value created by {@code create} method of a
+   * {@link Context.Builder}.
+   */
+  @Name("fruitjuice.Create")
+  @Label("Create")
+  @Description("A value for an injection request is created by a context builder")
+  @Category("FruitJuice")
+  @Enabled(false)
+  @StackTrace(false)
+  public static class CreateEvent extends jdk.jfr.Event {
+    @Label("Target Class")
+    Class<?> targetClass;
+
+    @Label("Request")
+    String request;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Minimum Duration")
+    @Name("minDuration")
+    @SettingDefinition
+    protected boolean minDuration(MinDuration setting) {
+      return this.elapsed >= setting.nanos;
+    }
+  }
+
+  /**
+   * An event emitted when a plan for a class is not cached and created.
+   */
+  @Name("fruitjuice.PlanCacheMiss")
+  @Label("Plan Cache Miss")
+  @Description("An injection plan is created for a class")
+  @Category("FruitJuice")
+  @Enabled(false)
+  public static class PlanCacheMissEvent extends jdk.jfr.Event {
+    @Label("Target Class")
+    Class<?> targetClass;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Minimum Duration")
+    @Name("minDuration")
+    @SettingDefinition
+    protected boolean minDuration(MinDuration setting) {
+      return this.elapsed >= setting.nanos;
+    }
+  }
+
+  /**
+   * A setting that filters events whose {@code elapsed} is shorter than its value, which
+   * is given in the same form as JFR's {@code threshold}, e.g., {@code 20 ms}.
+   */
+  public static class MinDuration extends SettingControl {
+    private static final Pattern PATTERN = Pattern.compile("\\s*(\\d+)\\s*(ns|us|ms|s|m|h|d)\\s*");
+
+    private volatile String value = "0 ns";
+    private volatile long   nanos = 0;
+
+    /**
+     * Returns the smallest one of {@code values}, so that all the recordings get events
+     * they ask for.
+     */
+    @Override
+    public String combine(Set<String> values) {
+      String ret = null;
+      long min = Long.MAX_VALUE;
+      for (String each : values) {
+        long nanos = parse(each);
+        if (nanos < min) {
+          min = nanos;
+          ret = each;
+        }
+      }
+      return ret == null
+          ? "0 ns"
+          : ret;
+    }
+
+    @Override
+    public void setValue(String value) {
+      this.nanos = parse(value);
+      this.value = value;
+    }
+
+    @Override
+    public String getValue() {
+      return this.value;
+    }
+
+    private static long parse(String value) {
+      Matcher m = PATTERN.matcher(value);
+      if (!m.matches())
+        return 0;
+      long amount = Long.parseLong(m.group(1));
+      switch (m.group(2)) {
+      case "ns":
+        return amount;
+      case "us":
+        return TimeUnit.MICROSECONDS.toNanos(amount);
+      case "ms":
+        return TimeUnit.MILLISECONDS.toNanos(amount);
+      case "s":
+        return TimeUnit.SECONDS.toNanos(amount);
+      case "m":
+        return TimeUnit.MINUTES.toNanos(amount);
+      case "h":
+        return TimeUnit.HOURS.toNanos(amount);
+      default:
+        return TimeUnit.DAYS.toNanos(amount);
+      }
+    }
+  }
+}
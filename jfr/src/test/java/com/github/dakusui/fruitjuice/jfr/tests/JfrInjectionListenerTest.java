@@ -0,0 +1,104 @@
+package com.github.dakusui.fruitjuice.jfr.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionListener;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.examples.calc.Add;
+import com.github.dakusui.fruitjuice.examples.calc.Calc;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class JfrInjectionListenerTest {
+  @Test
+  public void givenNoRecording$whenInstanceIsRequested$thenNotSampled() {
+    InjectionListener listener = InjectionListener.Factory.createJfrListener();
+
+    assertNotSame(InjectionListener.NONE, listener);
+    assertFalse(listener.sample(Calc.class));
+  }
+
+  @Test
+  public void givenRecording$whenInstanceIsRequested$thenEventsAreEmitted() throws Exception {
+    List<RecordedEvent> events = record("0 ns", Recorded.class);
+
+    assertEquals(1, count(events, "fruitjuice.PlanCacheMiss"));
+    assertEquals(2, count(events, "fruitjuice.GetInstance"));
+    assertEquals(2, count(events, "fruitjuice.Create"));
+    for (RecordedEvent each : events) {
+      assertEquals(Recorded.class.getName(), each.getClass("targetClass").getName());
+      if ("fruitjuice.Create".equals(each.getEventType().getName()))
+        assertTrue(each.getString("request"), each.getString("request").contains(Add.class.getName()));
+    }
+  }
+
+  @Test
+  public void givenMinDuration$whenInstanceIsRequested$thenShortEventsAreFiltered() throws Exception {
+    assertTrue(record("1 h", Filtered.class).isEmpty());
+  }
+
+  public static class Recorded {
+    @Inject
+    @Add({ 1, 2, 3 })
+    public int sum;
+  }
+
+  public static class Filtered {
+    @Inject
+    @Add({ 1, 2, 3 })
+    public int sum;
+  }
+
+  /*
+   * Each call is given a class of its own, since a plan cache miss happens only once
+   * per class in a process.
+   */
+  private static List<RecordedEvent> record(String minDuration, Class<?> targetClass) throws Exception {
+    Injector injector = new Injector.Impl(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return request.getAnnotation(Add.class).value().length;
+      }
+    }, Injector.Engine.REFLECTIVE, null, InjectionListener.Factory.createJfrListener());
+    Path file = Files.createTempFile("fruitjuice", ".jfr");
+    try (Recording recording = new Recording()) {
+      for (String each : new String[] { "fruitjuice.GetInstance", "fruitjuice.Create", "fruitjuice.PlanCacheMiss" }) {
+        recording.enable(each).with("minDuration", minDuration);
+      }
+      recording.start();
+      injector.getInstance(targetClass);
+      injector.getInstance(targetClass);
+      recording.stop();
+      recording.dump(file);
+    }
+    List<RecordedEvent> ret = new ArrayList<>();
+    for (RecordedEvent each : RecordingFile.readAllEvents(file)) {
+      if (each.getEventType().getName().startsWith("fruitjuice."))
+        ret.add(each);
+    }
+    Files.delete(file);
+    return ret;
+  }
+
+  private static int count(List<RecordedEvent> events, String name) {
+    int ret = 0;
+    for (RecordedEvent each : events) {
+      if (name.equals(each.getEventType().getName()))
+        ret++;
+    }
+    return ret;
+  }
+}
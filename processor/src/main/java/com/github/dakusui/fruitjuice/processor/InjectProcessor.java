@@ -0,0 +1,580 @@
+package com.github.dakusui.fruitjuice.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static java.lang.String.format;
+
+/**
+ * An annotation processor that generates an injection plan, a class named
+ * {@code <TargetClass>$$FruitJuiceInjector}, for each class which declares members
+ * annotated with {@code com.github.dakusui.fruitjuice.Inject} or inherits fields
+ * annotated with it.
+ * <p>
+ * Generated plans instantiate target classes and inject their fields without
+ * reflection and are picked up by {@code FruitJuice.createInjector} automatically.
+ * Plans are not generated for classes which cannot be handled by code in the same
+ * package, e.g., classes with private injection points. Those are handled by
+ * FruitJuice's reflective engine at runtime.
+ * <p>
+ * This processor also reports errors that FruitJuice would find at runtime:
+ * fields marked final or static, and multiple constructors annotated with {@code Inject}.
+ * <p>
+ * An index of all the classes which declare or inherit members annotated with
+ * {@code Inject} is written to {@code META-INF/fruitjuice/index}, which is read by
+ * {@code com.github.dakusui.fruitjuice.InjectionIndex} at runtime. Each class is listed
+ * with its binary name, followed by {@code abstract} if it cannot be instantiated,
+ * and its injection points, one per line, are listed after it as below.
+ *
+ * <pre>
+ *   com.example.Foo
+ *   \tparameter\t0\tint\tcom.example.Add
+ *   \tfield\tcom.example.FooBase#name\tjava.lang.String\t
+ * </pre>
+ *
+ * Columns of an injection point are separated by tabs, and they are its kind, its name,
+ * the binary name of the type of values to be injected, and comma-separated binary names
+ * of types of annotations on it other than {@code Inject}. For {@code Lazy} and
+ * {@code Provider}, the type of the wrapped values is written.
+ * <p>
+ * If the class output already has an index, e.g., written by an earlier run of an
+ * incremental build, entries of classes which are not compiled by this run are kept
+ * as long as the classes still exist.
+ * <p>
+ * Since a class may inherit fields annotated with {@code Inject} from a class which is
+ * not compiled by the same run, this processor examines every class compiled by it,
+ * whether or not {@code Inject} is present in its sources.
+ */
+@SupportedAnnotationTypes("*")
+public class InjectProcessor extends AbstractProcessor {
+  static final String INJECT        = "com.github.dakusui.fruitjuice.Inject";
+  static final String PLAN_SUFFIX   = "$$FruitJuiceInjector";
+  static final String INSTANTIATOR  = "com.github.dakusui.fruitjuice.InjectionPlan.Instantiator";
+  static final String PLAN_BASE     = "com.github.dakusui.fruitjuice.InjectionPlan.Base";
+  static final String CONTEXT       = "com.github.dakusui.fruitjuice.Context";
+  static final String LAZY          = "com.github.dakusui.fruitjuice.Lazy";
+  static final String PROVIDER      = "com.github.dakusui.fruitjuice.Provider";
+  static final String INDEX         = "META-INF/fruitjuice/index";
+
+  /*
+   * Index entries collected over rounds, keyed by binary names of classes. Sorted
+   * to make the index file reproducible.
+   */
+  private final Map<String, String> index    = new TreeMap<>();
+  /*
+   * Binary names of classes compiled by this run, whose entries in an existing index
+   * are replaced or dropped.
+   */
+  private final Set<String>         compiled = new HashSet<>();
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    TypeElement inject = processingEnv.getElementUtils().getTypeElement(INJECT);
+    if (inject == null)
+      return false;
+    List<TypeElement> types = new ArrayList<>();
+    for (TypeElement each : ElementFilter.typesIn(roundEnv.getRootElements())) {
+      collectCompiled(each, types);
+    }
+    Set<TypeElement> targets = new LinkedHashSet<>();
+    for (Element each : roundEnv.getElementsAnnotatedWith(inject)) {
+      if (each.getKind() == ElementKind.FIELD || each.getKind() == ElementKind.CONSTRUCTOR) {
+        targets.add((TypeElement) each.getEnclosingElement());
+      }
+    }
+    ////
+    // Fields are inherited, but annotations on them are not found in sources of subclasses.
+    for (TypeElement each : types) {
+      if (each.getKind() == ElementKind.CLASS && inheritsInjectFields(each))
+        targets.add(each);
+    }
+    for (TypeElement each : targets) {
+      Target target = new Target(each);
+      if (target.validate()) {
+        this.index.put(target.binaryName(), target.describe());
+        if (target.isGeneratable())
+          target.generate();
+      }
+    }
+    if (roundEnv.processingOver()) {
+      writeIndex();
+    }
+    ////
+    // Other processors may be interested in Inject, too.
+    return false;
+  }
+
+  private void collectCompiled(TypeElement typeElement, List<TypeElement> types) {
+    this.compiled.add(processingEnv.getElementUtils().getBinaryName(typeElement).toString());
+    types.add(typeElement);
+    for (TypeElement each : ElementFilter.typesIn(typeElement.getEnclosedElements())) {
+      collectCompiled(each, types);
+    }
+  }
+
+  /*
+   * Returns true if any super class of a class declares fields annotated with Inject.
+   */
+  private boolean inheritsInjectFields(TypeElement typeElement) {
+    for (TypeMirror cur = typeElement.getSuperclass(); cur.getKind() == TypeKind.DECLARED; ) {
+      TypeElement superclass = (TypeElement) ((DeclaredType) cur).asElement();
+      for (VariableElement each : ElementFilter.fieldsIn(superclass.getEnclosedElements())) {
+        if (isInjectAnnotated(each))
+          return true;
+      }
+      cur = superclass.getSuperclass();
+    }
+    return false;
+  }
+
+  private void writeIndex() {
+    Map<String, String> entries = readIndex();
+    if (entries == null && this.index.isEmpty())
+      return;
+    if (entries == null)
+      entries = new TreeMap<>();
+    entries.putAll(this.index);
+    try (Writer w = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX).openWriter()) {
+      w.write(format("# Generated by %s. Do not edit.%n", InjectProcessor.class.getSimpleName()));
+      for (String each : entries.values()) {
+        w.write(each);
+      }
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, format("Failed to write '%s': %s", INDEX, e.getMessage()));
+    }
+  }
+
+  /*
+   * Reads entries of an index which the class output already has, except ones of classes
+   * compiled by this run or removed since. Returns null if there is no such index.
+   */
+  private Map<String, String> readIndex() {
+    String content;
+    try {
+      content = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX).getCharContent(true).toString();
+    } catch (IOException e) {
+      return null;
+    }
+    Map<String, String> ret = new TreeMap<>();
+    String name = null;
+    StringBuilder entry = null;
+    for (String each : content.split("\\r?\\n")) {
+      if (each.isEmpty() || each.startsWith("#"))
+        continue;
+      if (each.startsWith("\t")) {
+        if (entry != null)
+          entry.append(format("%s%n", each));
+        continue;
+      }
+      if (entry != null && isAlive(name))
+        ret.put(name, entry.toString());
+      int tab = each.indexOf('\t');
+      name = tab < 0
+          ? each
+          : each.substring(0, tab);
+      entry = new StringBuilder(format("%s%n", each));
+    }
+    if (entry != null && isAlive(name))
+      ret.put(name, entry.toString());
+    return ret;
+  }
+
+  /*
+   * Returns true if an entry of a class in an existing index is still valid, i.e., the
+   * class is not compiled by this run and it still exists.
+   */
+  private boolean isAlive(String binaryName) {
+    return !this.compiled.contains(binaryName)
+        && processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.')) != null;
+  }
+
+  private boolean isInjectAnnotated(Element element) {
+    TypeElement inject = processingEnv.getElementUtils().getTypeElement(INJECT);
+    for (AnnotationMirror each : element.getAnnotationMirrors()) {
+      if (each.getAnnotationType().asElement().equals(inject))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * A class which declares members annotated with {@code Inject}, or inherits fields
+   * annotated with it.
+   */
+  private class Target {
+    final TypeElement           typeElement;
+    final PackageElement        packageElement;
+    final List<VariableElement> fields;
+    ExecutableElement           constructor;
+
+    Target(TypeElement typeElement) {
+      this.typeElement = typeElement;
+      this.packageElement = processingEnv.getElementUtils().getPackageOf(typeElement);
+      this.fields = collectFields(typeElement);
+    }
+
+    /**
+     * Reports errors found in this target and returns {@code true} if none is found.
+     */
+    boolean validate() {
+      boolean valid = true;
+      for (VariableElement each : ElementFilter.fieldsIn(this.typeElement.getEnclosedElements())) {
+        if (!isInjectAnnotated(each))
+          continue;
+        if (each.getModifiers().contains(Modifier.FINAL)) {
+          error(each, "Field '%s' is marked final.", each.getSimpleName());
+          valid = false;
+        }
+        if (each.getModifiers().contains(Modifier.STATIC)) {
+          error(each, "Field '%s' is marked static.", each.getSimpleName());
+          valid = false;
+        }
+      }
+      List<ExecutableElement> injectConstructors = new ArrayList<>();
+      ExecutableElement defaultConstructor = null;
+      for (ExecutableElement each : ElementFilter.constructorsIn(this.typeElement.getEnclosedElements())) {
+        if (!each.getModifiers().contains(Modifier.PUBLIC)) {
+          if (isInjectAnnotated(each))
+            warning(each, "Constructor annotated with '@Inject' is ignored since it is not public.");
+          continue;
+        }
+        if (isInjectAnnotated(each))
+          injectConstructors.add(each);
+        else if (each.getParameters().isEmpty())
+          defaultConstructor = each;
+      }
+      if (injectConstructors.size() > 1) {
+        error(this.typeElement,
+            "More than one constructors annotated with '@Inject' are found in '%s'",
+            this.typeElement.getQualifiedName());
+        valid = false;
+      }
+      if (!valid)
+        return false;
+      this.constructor = injectConstructors.isEmpty()
+          ? defaultConstructor
+          : injectConstructors.get(0);
+      return true;
+    }
+
+    String binaryName() {
+      return processingEnv.getElementUtils().getBinaryName(this.typeElement).toString();
+    }
+
+    /**
+     * Returns an entry of the index for this target.
+     *
+     * @see InjectProcessor
+     */
+    String describe() {
+      StringBuilder b = new StringBuilder(binaryName());
+      if (this.typeElement.getKind() != ElementKind.CLASS
+          || this.typeElement.getModifiers().contains(Modifier.ABSTRACT)
+          || this.constructor == null)
+        b.append("\tabstract");
+      b.append(format("%n"));
+      if (this.constructor != null) {
+        List<? extends VariableElement> parameters = this.constructor.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+          describe(b, "parameter", Integer.toString(i), parameters.get(i));
+        }
+      }
+      for (VariableElement each : this.fields) {
+        describe(b, "field", format("%s#%s",
+            processingEnv.getElementUtils().getBinaryName((TypeElement) each.getEnclosingElement()),
+            each.getSimpleName()), each);
+      }
+      return b.toString();
+    }
+
+    private void describe(StringBuilder b, String kind, String name, VariableElement element) {
+      StringBuilder qualifiers = new StringBuilder();
+      for (AnnotationMirror each : element.getAnnotationMirrors()) {
+        TypeElement annotationType = (TypeElement) each.getAnnotationType().asElement();
+        if (annotationType.getQualifiedName().contentEquals(INJECT))
+          continue;
+        if (qualifiers.length() > 0)
+          qualifiers.append(',');
+        qualifiers.append(processingEnv.getElementUtils().getBinaryName(annotationType));
+      }
+      b.append(format("\t%s\t%s\t%s\t%s%n", kind, name, typeNameOf(requestedTypeOf(element.asType())), qualifiers));
+    }
+
+    void generate() {
+      String binaryName = binaryName();
+      String packageName = this.packageElement.getQualifiedName().toString();
+      String planName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1) + PLAN_SUFFIX;
+      String targetName = erasure(this.typeElement.asType());
+      try (Writer w = processingEnv.getFiler().createSourceFile(binaryName + PLAN_SUFFIX, this.typeElement).openWriter()) {
+        if (!packageName.isEmpty()) {
+          w.write(format("package %s;%n%n", packageName));
+        }
+        w.write(format("/**%n"));
+        w.write(format(" * An injection plan for {@link %s} generated by %s. Do not edit.%n", targetName, InjectProcessor.class.getSimpleName()));
+        w.write(format(" */%n"));
+        w.write(format("@SuppressWarnings({\"rawtypes\", \"unchecked\"})%n"));
+        w.write(format("public final class %s extends %s<%s> {%n", planName, PLAN_BASE, targetName));
+
+        w.write(format("  public %s() {%n", planName));
+        w.write(format("    super(%n"));
+        w.write(format("        %s.class,%n", targetName));
+        StringBuilder parameterTypes = new StringBuilder();
+        for (VariableElement each : this.constructor.getParameters()) {
+          parameterTypes.append(", ").append(erasure(each.asType())).append(".class");
+        }
+        w.write(format("        constructorOf(%s.class%s),%n", targetName, parameterTypes));
+        w.write(format("        java.util.Arrays.<java.lang.reflect.Field>asList("));
+        for (int i = 0; i < this.fields.size(); i++) {
+          VariableElement each = this.fields.get(i);
+          w.write(format("%s%n            fieldOf(%s.class, \"%s\")",
+              i == 0 ? "" : ",",
+              erasure(each.getEnclosingElement().asType()),
+              each.getSimpleName()));
+        }
+        w.write(format("));%n"));
+        w.write(format("  }%n%n"));
+
+        w.write(format("  @Override%n"));
+        w.write(format("  public %s newInstance(%s context) {%n", targetName, CONTEXT));
+        List<? extends VariableElement> parameters = this.constructor.getParameters();
+        boolean unboxed = false;
+        for (VariableElement each : parameters) {
+          unboxed |= isUnboxed(each.asType());
+        }
+        ////
+        // Arguments are looked up one by one if any of them can be passed without boxing.
+        if (!unboxed)
+          w.write(format("    Object[] args = arguments(context);%n"));
+        w.write(format("    return new %s(", targetName));
+        for (int i = 0; i < parameters.size(); i++) {
+          TypeMirror type = parameters.get(i).asType();
+          w.write(format("%s%n        %s", i == 0 ? "" : ",", !unboxed
+              ? convert(type, format("args[%d]", i))
+              : isUnboxed(type)
+              ? format("%sArgument(context, %d)", type.toString(), i)
+              : convert(type, format("argument(context, %d)", i))));
+        }
+        w.write(format(");%n"));
+        w.write(format("  }%n%n"));
+
+        w.write(format("  @Override%n"));
+        w.write(format("  public void injectMembers(%s target, %s context) {%n", targetName, CONTEXT));
+        for (int i = 0; i < this.fields.size(); i++) {
+          VariableElement each = this.fields.get(i);
+          w.write(format("    target.%s = %s;%n", each.getSimpleName(), isUnboxed(each.asType())
+              ? format("%sFieldValue(context, %d)", each.asType().toString(), i)
+              : convert(each.asType(), format("fieldValue(context, %d)", i))));
+        }
+        w.write(format("  }%n"));
+        w.write(format("}%n"));
+      } catch (IOException e) {
+        error(this.typeElement, "Failed to generate an injection plan: %s", e.getMessage());
+      }
+    }
+
+    /**
+     * Returns {@code true} if the code in the same package as this target can
+     * instantiate it and assign all of its fields to be injected.
+     */
+    boolean isGeneratable() {
+      String reason = null;
+      if (this.typeElement.getKind() != ElementKind.CLASS || this.typeElement.getModifiers().contains(Modifier.ABSTRACT)) {
+        reason = "it is not a concrete class";
+      } else if (this.typeElement.getNestingKind() != NestingKind.TOP_LEVEL
+          && !(this.typeElement.getNestingKind() == NestingKind.MEMBER && this.typeElement.getModifiers().contains(Modifier.STATIC))) {
+        reason = "it is neither a top level class nor a static member class";
+      } else if (!isAccessible(this.typeElement)) {
+        reason = "it is not accessible from its package";
+      } else if (this.constructor == null) {
+        reason = "no available constructor for injection is found";
+      } else {
+        for (VariableElement each : this.constructor.getParameters()) {
+          if (!isAccessible(each.asType())) {
+            reason = format("type of parameter '%s' is not accessible", each.getSimpleName());
+            break;
+          }
+        }
+        for (VariableElement each : this.fields) {
+          if (reason != null)
+            break;
+          if (!isAccessible(each) || !isAccessible(each.asType()))
+            reason = format("field '%s' is not accessible", each.getSimpleName());
+        }
+      }
+      if (reason != null) {
+        processingEnv.getMessager().printMessage(
+            Diagnostic.Kind.NOTE,
+            format("An injection plan is not generated for '%s' since %s. It will be handled at runtime.", this.typeElement.getQualifiedName(), reason),
+            this.typeElement);
+        return false;
+      }
+      return true;
+    }
+
+    private boolean isAccessible(Element element) {
+      Set<Modifier> modifiers = element.getModifiers();
+      if (modifiers.contains(Modifier.PRIVATE))
+        return false;
+      if (!modifiers.contains(Modifier.PUBLIC)
+          && !processingEnv.getElementUtils().getPackageOf(element).equals(this.packageElement))
+        return false;
+      Element enclosing = element.getEnclosingElement();
+      return enclosing == null || enclosing.getKind() == ElementKind.PACKAGE || isAccessible(enclosing);
+    }
+
+    private boolean isAccessible(TypeMirror type) {
+      TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+      if (erasure.getKind() == TypeKind.ARRAY)
+        return isAccessible(((ArrayType) erasure).getComponentType());
+      if (erasure.getKind() == TypeKind.DECLARED)
+        return isAccessible(((DeclaredType) erasure).asElement());
+      return erasure.getKind().isPrimitive();
+    }
+
+    /**
+     * Returns {@code true} if values of {@code type} are looked up without being boxed,
+     * i.e., it is {@code int}, {@code long} or {@code double}.
+     */
+    private boolean isUnboxed(TypeMirror type) {
+      return type.getKind() == TypeKind.INT || type.getKind() == TypeKind.LONG || type.getKind() == TypeKind.DOUBLE;
+    }
+
+    private String convert(TypeMirror type, String value) {
+      if (type.getKind().isPrimitive())
+        return format("%s.%sValue(%s)", INSTANTIATOR, type.toString(), value);
+      return format("(%s) %s", erasure(type), value);
+    }
+
+    /**
+     * Returns the type of values to be created for a type of an injection point, i.e.,
+     * the type argument for {@code Lazy} and {@code Provider}, and the type itself
+     * otherwise.
+     */
+    private TypeMirror requestedTypeOf(TypeMirror type) {
+      if (type.getKind() != TypeKind.DECLARED)
+        return type;
+      DeclaredType declaredType = (DeclaredType) type;
+      Name name = ((TypeElement) declaredType.asElement()).getQualifiedName();
+      if ((name.contentEquals(LAZY) || name.contentEquals(PROVIDER)) && declaredType.getTypeArguments().size() == 1)
+        return declaredType.getTypeArguments().get(0);
+      return type;
+    }
+
+    /**
+     * Returns the name of a type in the same form as {@code Class#getName}.
+     */
+    private String typeNameOf(TypeMirror type) {
+      TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+      if (erasure.getKind() == TypeKind.ARRAY)
+        return "[" + descriptorOf(((ArrayType) erasure).getComponentType());
+      if (erasure.getKind() == TypeKind.DECLARED)
+        return processingEnv.getElementUtils().getBinaryName((TypeElement) ((DeclaredType) erasure).asElement()).toString();
+      return erasure.toString();
+    }
+
+    private String descriptorOf(TypeMirror type) {
+      TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+      switch (erasure.getKind()) {
+      case BOOLEAN:
+        return "Z";
+      case BYTE:
+        return "B";
+      case CHAR:
+        return "C";
+      case SHORT:
+        return "S";
+      case INT:
+        return "I";
+      case LONG:
+        return "J";
+      case FLOAT:
+        return "F";
+      case DOUBLE:
+        return "D";
+      case ARRAY:
+        return typeNameOf(erasure);
+      default:
+        return "L" + typeNameOf(erasure) + ";";
+      }
+    }
+
+    private String erasure(TypeMirror type) {
+      return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    /**
+     * Collects fields annotated with {@code Inject} in the same order as FruitJuice's
+     * runtime does, i.e., fields in super classes come first.
+     */
+    private List<VariableElement> collectFields(TypeElement typeElement) {
+      LinkedList<VariableElement> ret = new LinkedList<>();
+      TypeElement cur = typeElement;
+      while (cur != null) {
+        List<VariableElement> fieldsInCur = new ArrayList<>();
+        for (VariableElement each : ElementFilter.fieldsIn(cur.getEnclosedElements())) {
+          if (isInjectAnnotated(each))
+            fieldsInCur.add(each);
+        }
+        ret.addAll(0, fieldsInCur);
+        TypeMirror superclass = cur.getSuperclass();
+        cur = superclass.getKind() == TypeKind.DECLARED
+            ? (TypeElement) ((DeclaredType) superclass).asElement()
+            : null;
+      }
+      return ret;
+    }
+
+    private void error(Element element, String format, Object... args) {
+      messager().printMessage(Diagnostic.Kind.ERROR, format(format, args), element);
+    }
+
+    private void warning(Element element, String format, Object... args) {
+      messager().printMessage(Diagnostic.Kind.WARNING, format(format, args), element);
+    }
+
+    private Messager messager() {
+      return processingEnv.getMessager();
+    }
+  }
+}
@@ -0,0 +1,248 @@
+package com.github.dakusui.fruitjuice.processor.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.InjectionIndex;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.processor.InjectProcessor;
+import com.github.dakusui.fruitjuice.processor.tests.sample.InheritingSample;
+import com.github.dakusui.fruitjuice.processor.tests.sample.PrivateSample;
+import com.github.dakusui.fruitjuice.processor.tests.sample.Sample;
+import com.github.dakusui.fruitjuice.processor.tests.sample.SampleBase;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class InjectProcessorTest {
+  public static class TestInjector extends Injector.Impl {
+    public TestInjector() {
+      super(new Context.Builder.Base() {
+        @Override
+        protected Object create(InjectionRequest request) {
+          return int.class.equals(request.getType())
+              ? 123
+              : "Hello";
+        }
+      });
+    }
+
+    @Override
+    public <T> InjectionPlan<T> getPlan(Class<T> targetClass) {
+      return super.getPlan(targetClass);
+    }
+  }
+
+  @Test
+  public void givenSample$whenInjected$thenPlanGeneratedAtCompileTimeIsUsed() {
+    TestInjector injector = new TestInjector();
+    Sample sample = injector.getInstance(Sample.class);
+
+    assertEquals(Sample.class.getName() + "$$FruitJuiceInjector", injector.getPlan(Sample.class).getClass().getName());
+    assertEquals(123, sample.getNumber());
+    assertEquals("Hello", sample.baseField);
+  }
+
+  @Test
+  public void givenNestedClass$whenInjected$thenPlanGeneratedAtCompileTimeIsUsed() {
+    TestInjector injector = new TestInjector();
+    Sample.Nested nested = injector.getInstance(Sample.Nested.class);
+
+    assertEquals(Sample.Nested.class.getName() + "$$FruitJuiceInjector", injector.getPlan(Sample.Nested.class).getClass().getName());
+    assertEquals("Hello", nested.name);
+  }
+
+  @Test
+  public void givenClassInheritingInjectFields$whenInjected$thenPlanGeneratedAtCompileTimeIsUsed() {
+    TestInjector injector = new TestInjector();
+    InheritingSample sample = injector.getInstance(InheritingSample.class);
+
+    assertEquals(InheritingSample.class.getName() + "$$FruitJuiceInjector", injector.getPlan(InheritingSample.class).getClass().getName());
+    assertEquals("Hello", sample.baseField);
+  }
+
+  @Test
+  public void givenClassWithPrivateField$whenInjected$thenReflectivePlanIsUsed() {
+    TestInjector injector = new TestInjector();
+    PrivateSample sample = injector.getInstance(PrivateSample.class);
+
+    assertThat(injector.getPlan(PrivateSample.class), instanceOf(InjectionPlan.Impl.class));
+    assertEquals("Hello", sample.getPrivateField());
+  }
+
+  @Test
+  public void givenSamples$whenCompiled$thenIndexIsWritten() throws Exception {
+    InjectionIndex index = InjectionIndex.load(InjectProcessorTest.class.getClassLoader());
+
+    assertThat(index.getClassNames(), hasItems(
+        Sample.class.getName(), Sample.Nested.class.getName(), SampleBase.class.getName(), PrivateSample.class.getName()));
+    assertTrue(index.isInstantiable(Sample.Nested.class.getName()));
+    assertFalse(index.isInstantiable(SampleBase.class.getName()));
+    List<InjectionIndex.Point> points = index.getInjectionPoints(Sample.class.getName());
+    assertEquals(3, points.size());
+    assertEquals(InjectionPoint.Type.CONSTRUCTOR_PARAMETER, points.get(0).getType());
+    assertEquals("int", points.get(0).getTypeName());
+    assertEquals(SampleBase.class.getName() + "#baseField", points.get(1).getName());
+    assertEquals(Sample.class.getName() + "#packagePrivateField", points.get(2).getName());
+    assertThat(index.getClassNamesRequesting(String.class), hasItems(Sample.class.getName(), Sample.Nested.class.getName()));
+    assertTrue(index.isInstantiable(InheritingSample.class.getName()));
+    assertThat(index.getClassNamesRequesting(String.class), hasItems(InheritingSample.class.getName()));
+  }
+
+  @Test
+  public void givenSubclassesInheritingInjectFields$whenCompiled$thenTheyAreIndexed() throws Exception {
+    File outputDirectory = Files.createTempDirectory("fruitjuice-processor").toFile();
+    compile(outputDirectory,
+        source("Base", "public abstract class Base { @com.github.dakusui.fruitjuice.Inject public String name; }\n"),
+        source("Derived", "public class Derived extends Base {}\n"),
+        source("Plain", "public class Plain {}\n"));
+    compile(outputDirectory,
+        source("Recompiled", "public class Recompiled extends Derived {}\n"));
+
+    List<String> lines = Files.readAllLines(new File(outputDirectory, InjectionIndex.RESOURCE_NAME).toPath(), StandardCharsets.UTF_8);
+    assertThat(lines, hasItems(
+        "Base\tabstract",
+        "Derived",
+        "Recompiled",
+        "\tfield\tBase#name\tjava.lang.String\t"));
+    assertThat(lines, not(hasItems("Plain")));
+    assertTrue(new File(outputDirectory, "Derived$$FruitJuiceInjector.class").exists());
+  }
+
+  @Test
+  public void givenQualifiedAndLazyInjectionPoints$whenCompiled$thenIndexDescribesRequestedValues() throws Exception {
+    File outputDirectory = Files.createTempDirectory("fruitjuice-processor").toFile();
+    compile(outputDirectory, "Described", ""
+        + "public class Described {\n"
+        + "  public static class Inner {}\n"
+        + "  @com.github.dakusui.fruitjuice.Inject @Deprecated public com.github.dakusui.fruitjuice.Lazy<Inner> inner;\n"
+        + "  @com.github.dakusui.fruitjuice.Inject public String[][] names;\n"
+        + "}\n");
+
+    List<String> lines = Files.readAllLines(new File(outputDirectory, InjectionIndex.RESOURCE_NAME).toPath(), StandardCharsets.UTF_8);
+    assertThat(lines, hasItems(
+        "Described",
+        "\tfield\tDescribed#inner\tDescribed$Inner\tjava.lang.Deprecated",
+        "\tfield\tDescribed#names\t[[Ljava.lang.String;\t"));
+  }
+
+  @Test
+  public void givenIndexWrittenBefore$whenSomeClassesAreRecompiled$thenEntriesOfOthersAreKept() throws Exception {
+    File outputDirectory = Files.createTempDirectory("fruitjuice-processor").toFile();
+    compile(outputDirectory,
+        source("Kept", "public class Kept { @com.github.dakusui.fruitjuice.Inject public String name; }\n"),
+        source("Changed", "public class Changed { @com.github.dakusui.fruitjuice.Inject public String name; }\n"),
+        source("Removed", "public class Removed { @com.github.dakusui.fruitjuice.Inject public String name; }\n"),
+        source("Uninjected", "public class Uninjected { @com.github.dakusui.fruitjuice.Inject public String name; }\n"));
+    assertTrue(new File(outputDirectory, "Removed.class").delete());
+    compile(outputDirectory,
+        source("Changed", "public class Changed { @com.github.dakusui.fruitjuice.Inject public int number; }\n"),
+        source("Uninjected", "public class Uninjected { public String name; }\n"));
+
+    List<String> lines = Files.readAllLines(new File(outputDirectory, InjectionIndex.RESOURCE_NAME).toPath(), StandardCharsets.UTF_8);
+    assertThat(lines, hasItems(
+        "Kept",
+        "\tfield\tKept#name\tjava.lang.String\t",
+        "Changed",
+        "\tfield\tChanged#number\tint\t"));
+    assertThat(lines, not(hasItems("\tfield\tChanged#name\tjava.lang.String\t")));
+    assertThat(lines, not(hasItems("Removed")));
+    assertThat(lines, not(hasItems("Uninjected")));
+  }
+
+  @Test
+  public void givenInvalidInjectionPoints$whenCompiled$thenErrorsReported() throws Exception {
+    List<String> messages = compile("Invalid", ""
+        + "public class Invalid {\n"
+        + "  @com.github.dakusui.fruitjuice.Inject public final String test1 = \"hello\";\n"
+        + "  @com.github.dakusui.fruitjuice.Inject public static String test2;\n"
+        + "  @com.github.dakusui.fruitjuice.Inject public Invalid() {}\n"
+        + "  @com.github.dakusui.fruitjuice.Inject public Invalid(int i) {}\n"
+        + "}\n");
+
+    assertThat(messages, hasItems(
+        "Field 'test1' is marked final.",
+        "Field 'test2' is marked static.",
+        "More than one constructors annotated with '@Inject' are found in 'Invalid'"
+    ));
+  }
+
+  @Test
+  public void givenValidInjectionPoints$whenCompiled$thenNoErrorsReported() throws Exception {
+    List<String> messages = compile("Valid", ""
+        + "public class Valid {\n"
+        + "  @com.github.dakusui.fruitjuice.Inject public String test1;\n"
+        + "  @com.github.dakusui.fruitjuice.Inject public Valid(int i) {}\n"
+        + "}\n");
+
+    assertFalse(messages.toString(), messages.iterator().hasNext());
+  }
+
+  private static List<String> compile(String className, final String source) throws Exception {
+    return compile(Files.createTempDirectory("fruitjuice-processor").toFile(), className, source);
+  }
+
+  private static List<String> compile(File outputDirectory, String className, String source) throws Exception {
+    return compile(outputDirectory, source(className, source));
+  }
+
+  /*
+   * Compiles sources into a directory, which is in the class path as well so that
+   * classes compiled before are visible, as in an incremental build.
+   */
+  private static List<String> compile(File outputDirectory, JavaFileObject... sources) throws Exception {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+      JavaCompiler.CompilationTask task = compiler.getTask(
+          null,
+          fileManager,
+          diagnostics,
+          Arrays.asList(
+              "-d", outputDirectory.getAbsolutePath(),
+              "-classpath", System.getProperty("java.class.path") + File.pathSeparator + outputDirectory.getAbsolutePath()),
+          null,
+          Arrays.asList(sources));
+      task.setProcessors(Collections.singletonList(new InjectProcessor()));
+      task.call();
+    }
+    List<String> ret = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> each : diagnostics.getDiagnostics()) {
+      if (each.getKind() == Diagnostic.Kind.ERROR)
+        ret.add(each.getMessage(null));
+    }
+    return ret;
+  }
+
+  private static JavaFileObject source(String className, final String source) {
+    return new SimpleJavaFileObject(URI.create("string:///" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return source;
+      }
+    };
+  }
+}
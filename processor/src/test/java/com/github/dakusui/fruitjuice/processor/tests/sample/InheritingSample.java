@@ -0,0 +1,4 @@
+package com.github.dakusui.fruitjuice.processor.tests.sample;
+
+public class InheritingSample extends SampleBase {
+}
@@ -0,0 +1,12 @@
+package com.github.dakusui.fruitjuice.processor.tests.sample;
+
+import com.github.dakusui.fruitjuice.Inject;
+
+public class PrivateSample {
+  @Inject
+  private String privateField;
+
+  public String getPrivateField() {
+    return this.privateField;
+  }
+}
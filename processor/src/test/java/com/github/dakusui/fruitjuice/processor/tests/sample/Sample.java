@@ -0,0 +1,24 @@
+package com.github.dakusui.fruitjuice.processor.tests.sample;
+
+import com.github.dakusui.fruitjuice.Inject;
+
+public class Sample extends SampleBase {
+  public static class Nested {
+    @Inject
+    public String name;
+  }
+
+  @Inject
+  String packagePrivateField;
+
+  private final int number;
+
+  @Inject
+  public Sample(int number) {
+    this.number = number;
+  }
+
+  public int getNumber() {
+    return this.number;
+  }
+}
@@ -0,0 +1,8 @@
+package com.github.dakusui.fruitjuice.processor.tests.sample;
+
+import com.github.dakusui.fruitjuice.Inject;
+
+public abstract class SampleBase {
+  @Inject
+  public String baseField;
+}
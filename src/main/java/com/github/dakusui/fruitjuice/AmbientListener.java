@@ -0,0 +1,93 @@
+package com.github.dakusui.fruitjuice;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A utility that holds the listener observing the current call of {@code getInstance}
+ * on each thread, so that nested calls of other injectors and builders' {@code create}
+ * methods are reported to it.
+ *
+ * @see InjectionListener
+ */
+enum AmbientListener {
+  ;
+
+  private static final ThreadLocal<State> CURRENT = new ThreadLocal<>();
+
+  /*
+   * The number of threads on which listeners are entered. Lets threads skip reading
+   * CURRENT while nothing is observed anywhere.
+   */
+  private static final AtomicInteger NUM_ACTIVE_THREADS = new AtomicInteger();
+
+  private static class State {
+    private final InjectionListener listener;
+    private final Class<?>          targetClass;
+    private final State             previous;
+
+    private State(InjectionListener listener, Class<?> targetClass, State previous) {
+      this.listener = listener;
+      this.targetClass = targetClass;
+      this.previous = previous;
+    }
+  }
+
+  /**
+   * Returns the listener entered on the current thread, or {@code null} if none is.
+   */
+  static InjectionListener current() {
+    if (NUM_ACTIVE_THREADS.get() == 0)
+      return null;
+    State state = CURRENT.get();
+    return state == null
+        ? null
+        : state.listener;
+  }
+
+  /**
+   * Makes {@code listener} observe calls on the current thread until {@link #exit()}
+   * is called. Calls of this method can be nested.
+   *
+   * @param listener    A listener to be entered.
+   * @param targetClass A class of which an object is being requested.
+   */
+  static void enter(InjectionListener listener, Class<?> targetClass) {
+    State previous = CURRENT.get();
+    if (previous == null)
+      NUM_ACTIVE_THREADS.incrementAndGet();
+    CURRENT.set(new State(listener, targetClass, previous));
+  }
+
+  /**
+   * Restores the listener entered before the last call of {@link #enter(InjectionListener, Class)}.
+   */
+  static void exit() {
+    State previous = CURRENT.get().previous;
+    if (previous == null) {
+      CURRENT.remove();
+      NUM_ACTIVE_THREADS.decrementAndGet();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * Reports a {@link InjectionListener.Event#CREATE} event to the listener entered on the
+   * current thread, if any.
+   *
+   * @param request A request for which a value was created.
+   * @param start   A value of {@link System#nanoTime()} when the creation started.
+   */
+  static void created(InjectionRequest request, long start) {
+    State state = CURRENT.get();
+    if (state != null)
+      state.listener.onEvent(InjectionListener.Event.CREATE, state.targetClass, null, request, start, System.nanoTime() - start);
+  }
+
+  /**
+   * Returns {@code true} if a listener is entered on the current thread.
+   */
+  static boolean isActive() {
+    return NUM_ACTIVE_THREADS.get() != 0 && CURRENT.get() != null;
+  }
+}
@@ -1,7 +1,31 @@
 package com.github.dakusui.fruitjuice;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
 
 /**
  * An interface that represents an object context.
@@ -23,6 +47,38 @@ public interface Context {
    */
   <T> T lookup(InjectionRequest request);
 
+  /**
+   * A context which gives values of {@code int}, {@code long} and {@code double} without
+   * boxing them. Plans look up values for injection points of those types through the
+   * methods of this interface if a context implements it, and otherwise through
+   * {@link #lookup(InjectionRequest)}.
+   * <p>
+   * {@code lookup} of a context of this interface gives boxed values for requests of
+   * those types, too.
+   */
+  interface Unboxed extends Context {
+    /**
+     * Returns an {@code int} value that matches given {@code request}.
+     *
+     * @param request A request whose type is {@code int}.
+     */
+    int lookupInt(InjectionRequest request);
+
+    /**
+     * Returns a {@code long} value that matches given {@code request}.
+     *
+     * @param request A request whose type is {@code long}.
+     */
+    long lookupLong(InjectionRequest request);
+
+    /**
+     * Returns a {@code double} value that matches given {@code request}.
+     *
+     * @param request A request whose type is {@code double}.
+     */
+    double lookupDouble(InjectionRequest request);
+  }
+
   /**
    * A builder of a {@code Context} object.
    * <p>
@@ -41,21 +97,175 @@ public interface Context {
      */
     Context build();
 
+    /**
+     * A builder which stores a value for an injection point into an array as it adds the
+     * point, so that the value is read by an index instead of being looked up by a request.
+     * <p>
+     * {@link Injector.Impl} adds an injection point by {@link #add(InjectionPoint, Object[], int)}
+     * if a plan assigns a slot to it, and by {@link #add(InjectionPoint)} otherwise. Slots
+     * are assigned to injection points of types other than {@code int}, {@code long} and
+     * {@code double}.
+     *
+     * @see InjectionPlan.Base
+     */
+    interface Slotted extends Builder {
+      /**
+       * Adds given {@code injectionPoint} to this object as {@link #add(InjectionPoint)}
+       * does, and stores a value for it into {@code values[slot]}.
+       *
+       * @param injectionPoint An injection point to be added.
+       * @param values         An array into which the value is stored.
+       * @param slot           An index of {@code values} assigned to {@code injectionPoint}.
+       */
+      Builder add(InjectionPoint injectionPoint, Object[] values, int slot);
+    }
+
+    /**
+     * A builder which creates values only for some requests, e.g., a builder of
+     * per-request values given to a child injector.
+     *
+     * @see Injector.Extended#createChild(Builder)
+     */
+    interface Partial extends Builder {
+      /**
+       * Returns {@code true} if this builder creates values for {@code request}.
+       * Injection points whose requests are not accepted are not added to this builder.
+       *
+       * @param request A request to be examined.
+       */
+      boolean accepts(InjectionRequest request);
+    }
+
     /**
      * A generic base class of {@link Builder}.
+     * <p>
+     * This class is not thread-safe. Use {@link Concurrent} if an injector that uses
+     * a builder is shared by more than one thread.
      */
-    abstract class Base implements Builder {
-      private Map<InjectionRequest, Object> registry = new HashMap<>();
+    abstract class Base implements Slotted {
+      private Map<InjectionRequest, Object>          registry = new HashMap<>();
+      private final Scopes                           scopes   = new Scopes();
+      /*
+       * Unscoped values of int, long and double, which are encoded into long and
+       * overwritten in place every time they are created.
+       */
+      private final Map<InjectionRequest, long[]>    slots    = new HashMap<>();
+      private final RequestKeyStrategy.Canonicalizer requests;
+      /*
+       * False if a subclass overrides add, which is to see all the injection points.
+       */
+      private final boolean                          slotted;
+      private final Context                          context  = new Context.Unboxed() {
+        @Override
+        public <V> V lookup(InjectionRequest request) {
+          InjectionRequest canonical = requests.canonicalize(request);
+          long[] slot = slots.get(canonical);
+          //noinspection unchecked
+          return slot == null
+              ? (V) registry.get(canonical)
+              : (V) Unboxing.box(canonical.getType(), slot[0]);
+        }
+
+        @Override
+        public int lookupInt(InjectionRequest request) {
+          InjectionRequest canonical = requests.canonicalize(request);
+          long[] slot = slots.get(canonical);
+          return slot == null
+              ? Unboxing.intValue(request, registry.get(canonical))
+              : (int) slot[0];
+        }
+
+        @Override
+        public long lookupLong(InjectionRequest request) {
+          InjectionRequest canonical = requests.canonicalize(request);
+          long[] slot = slots.get(canonical);
+          return slot == null
+              ? Unboxing.longValue(request, registry.get(canonical))
+              : slot[0];
+        }
+
+        @Override
+        public double lookupDouble(InjectionRequest request) {
+          InjectionRequest canonical = requests.canonicalize(request);
+          long[] slot = slots.get(canonical);
+          return slot == null
+              ? Unboxing.doubleValue(request, registry.get(canonical))
+              : Double.longBitsToDouble(slot[0]);
+        }
+      };
+
+      /**
+       * Creates an object of this class, where requests share a value only if they
+       * are equal.
+       */
+      protected Base() {
+        this(RequestKeyStrategy.Standard.FULL);
+      }
+
+      /**
+       * Creates an object of this class.
+       *
+       * @param strategy A strategy which determines requests sharing a value.
+       */
+      protected Base(RequestKeyStrategy strategy) {
+        this.requests = new RequestKeyStrategy.Canonicalizer(strategy);
+        this.slotted = !Injector.Utils.overrides(getClass(), Base.class, "add", InjectionPoint.class);
+      }
 
       /**
        * {@inheritDoc}
+       * <p>
+       * A value is created by {@code create} unless the scope of the request of
+       * {@code injectionPoint} holds one. Requests whose keys are equal under the
+       * strategy of this object are given to {@code create} and the scope as the
+       * first one of them.
+       * <p>
+       * Unscoped values of {@code int}, {@code long} and {@code double} are created by
+       * {@link #createInt(InjectionRequest)}, {@link #createLong(InjectionRequest)} and
+       * {@link #createDouble(InjectionRequest)} and held without being boxed.
+       *
+       * @see #scopeFor(InjectionRequest)
        */
       @Override
       public Context.Builder add(InjectionPoint injectionPoint) {
-        registry.put(
-            injectionPoint.getRequest(),
-            create(injectionPoint.getRequest())
-        );
+        final InjectionRequest request = this.requests.canonicalize(injectionPoint.getRequest());
+        if (Unboxing.isSpecialized(request.getType()) && scopeFor(request) == Scopes.NONE) {
+          long[] slot = this.slots.get(request);
+          if (slot == null) {
+            this.slots.put(request, slot = new long[1]);
+          }
+          if (!AmbientListener.isActive()) {
+            slot[0] = createBits(request);
+          } else {
+            long start = System.nanoTime();
+            try {
+              slot[0] = createBits(request);
+            } finally {
+              AmbientListener.created(request, start);
+            }
+          }
+          return this;
+        }
+        put(request);
+        return this;
+      }
+
+      /**
+       * {@inheritDoc}
+       * <p>
+       * Since a value is created for each call unless a scope holds one, injection points
+       * given slots are given the values created for them. If a subclass overrides
+       * {@link #add(InjectionPoint)}, this method adds {@code injectionPoint} by it and
+       * looks the value up.
+       */
+      @Override
+      public Context.Builder add(InjectionPoint injectionPoint, Object[] values, int slot) {
+        InjectionRequest request = this.requests.canonicalize(injectionPoint.getRequest());
+        if (!this.slotted || Unboxing.isSpecialized(request.getType())) {
+          values[slot] = add(injectionPoint).build().lookup(request);
+        } else {
+          values[slot] = put(request);
+        }
         return this;
       }
 
@@ -66,25 +276,999 @@ public interface Context {
        * created by the method call to {@code Context.Builder#add} with {@code request}
        * object held by {@code InjectionPoint} equal to the one given to {@code Context#lookup}
        * method.
+       * <p>
+       * The returned {@code Context} is a {@link Context.Unboxed}, and is the same
+       * object every time.
+       */
+      @Override
+      public Context build() {
+        return this.context;
+      }
+
+      /**
+       * Creates and returns a value to be injected the injection points which are
+       * equal to given {@code request}.
+       *
+       * @param request A request for which the returned value should be created.
+       */
+      protected abstract Object create(InjectionRequest request);
+
+      /*
+       * Puts a value for a canonical request, which a scope holds or create creates, into
+       * the registry and returns it.
+       */
+      private Object put(final InjectionRequest request) {
+        Object ret = scopeFor(request).get(request, new Provider<Object>() {
+          @Override
+          public Object get() {
+            if (!AmbientListener.isActive())
+              return create(request);
+            long start = System.nanoTime();
+            try {
+              return create(request);
+            } finally {
+              AmbientListener.created(request, start);
+            }
+          }
+        });
+        this.registry.put(request, ret);
+        return ret;
+      }
+
+      /**
+       * Creates and returns an {@code int} value for {@code request}, whose type is
+       * {@code int} and which is not scoped. Override this method to create values
+       * without boxing them. By default, a value created by {@code create} is unboxed.
+       *
+       * @param request A request for which the returned value should be created.
+       * @throws IllegalArgumentException A value created by {@code create} cannot be
+       *                                  converted to {@code int}.
+       */
+      protected int createInt(InjectionRequest request) {
+        return Unboxing.intValue(request, create(request));
+      }
+
+      /**
+       * Creates and returns a {@code long} value for {@code request}, whose type is
+       * {@code long} and which is not scoped.
+       *
+       * @param request A request for which the returned value should be created.
+       * @throws IllegalArgumentException A value created by {@code create} cannot be
+       *                                  converted to {@code long}.
+       * @see #createInt(InjectionRequest)
+       */
+      protected long createLong(InjectionRequest request) {
+        return Unboxing.longValue(request, create(request));
+      }
+
+      /**
+       * Creates and returns a {@code double} value for {@code request}, whose type is
+       * {@code double} and which is not scoped.
+       *
+       * @param request A request for which the returned value should be created.
+       * @throws IllegalArgumentException A value created by {@code create} cannot be
+       *                                  converted to {@code double}.
+       * @see #createInt(InjectionRequest)
+       */
+      protected double createDouble(InjectionRequest request) {
+        return Unboxing.doubleValue(request, create(request));
+      }
+
+      private long createBits(InjectionRequest request) {
+        Class<?> type = request.getType();
+        if (type == int.class)
+          return createInt(request);
+        if (type == long.class)
+          return createLong(request);
+        return Double.doubleToRawLongBits(createDouble(request));
+      }
+
+      /**
+       * Returns a scope of values for {@code request}. By default, a scope specified by
+       * {@link Scoped} on qualifier annotations of the request is returned, and if none is
+       * specified, a scope where values are created every time is returned.
+       * <p>
+       * Override this method to configure scopes without annotations.
+       *
+       * @param request A request whose scope is returned.
+       * @see #scopeOf(Class)
+       */
+      protected Scope scopeFor(InjectionRequest request) {
+        return this.scopes.scopeFor(request);
+      }
+
+      /**
+       * Returns a scope object of {@code scopeClass} held by this object. A scope object
+       * is created only once per class and builder.
+       *
+       * @param scopeClass A class of a scope.
+       */
+      protected Scope scopeOf(Class<? extends Scope> scopeClass) {
+        return this.scopes.scopeOf(scopeClass);
+      }
+    }
+
+    /**
+     * A thread-safe base class of {@link Builder}.
+     * <p>
+     * A value for an {@code InjectionRequest} is created only once and shared by all
+     * the injection points whose requests are equal to it. Creation is single-flight:
+     * when more than one thread adds injection points with equal requests at once,
+     * {@code create} is called only by one of them and the others wait for its result.
+     * Once a value is created, lookups of it don't acquire any lock.
+     * <p>
+     * If {@code create} throws an exception, it will be thrown to all the threads waiting
+     * for the value and the value will be created again by the next call of {@code add}.
+     * <p>
+     * Values of requests to which a scope is attached, e.g., by {@link Scoped}, are held
+     * by the scope instead, and created by {@code create} whenever the scope doesn't
+     * hold one.
+     * <p>
+     * Values of {@code int}, {@code long} and {@code double} are created by
+     * {@link #createInt(InjectionRequest)}, {@link #createLong(InjectionRequest)} and
+     * {@link #createDouble(InjectionRequest)} and held without being boxed.
+     *
+     * @see #scopeFor(InjectionRequest)
+     */
+    abstract class Concurrent implements Slotted {
+      private final ConcurrentMap<InjectionRequest, Creation> registry = new ConcurrentHashMap<>();
+      private final Scopes                                    scopes   = new Scopes();
+      private final RequestKeyStrategy.Canonicalizer          requests;
+      /*
+       * False if a subclass overrides add, which is to see all the injection points.
+       */
+      private final boolean                                   slotted;
+      private final Context                                   context  = new Context.Unboxed() {
+        @Override
+        public <V> V lookup(InjectionRequest request) {
+          InjectionRequest canonical = requests.canonicalize(request);
+          Creation creation = registry.get(canonical);
+          if (creation != null)
+            //noinspection unchecked
+            return (V) creation.await();
+          Scope scope = scopes.boundTo(canonical);
+          //noinspection unchecked
+          return scope == null
+              ? null
+              : (V) scope.get(canonical, unscoped(canonical));
+        }
+
+        @Override
+        public int lookupInt(InjectionRequest request) {
+          Creation creation = registry.get(requests.canonicalize(request));
+          return creation == null || creation.slot == null
+              ? Unboxing.intValue(request, lookup(request))
+              : (int) creation.awaitBits();
+        }
+
+        @Override
+        public long lookupLong(InjectionRequest request) {
+          Creation creation = registry.get(requests.canonicalize(request));
+          return creation == null || creation.slot == null
+              ? Unboxing.longValue(request, lookup(request))
+              : creation.awaitBits();
+        }
+
+        @Override
+        public double lookupDouble(InjectionRequest request) {
+          Creation creation = registry.get(requests.canonicalize(request));
+          return creation == null || creation.slot == null
+              ? Unboxing.doubleValue(request, lookup(request))
+              : Double.longBitsToDouble(creation.awaitBits());
+        }
+      };
+
+      /**
+       * Creates an object of this class, where requests share a value only if they
+       * are equal.
+       */
+      protected Concurrent() {
+        this(RequestKeyStrategy.Standard.FULL);
+      }
+
+      /**
+       * Creates an object of this class.
+       *
+       * @param strategy A strategy which determines requests sharing a value.
+       */
+      protected Concurrent(RequestKeyStrategy strategy) {
+        this.requests = new RequestKeyStrategy.Canonicalizer(strategy);
+        this.slotted = !Injector.Utils.overrides(getClass(), Concurrent.class, "add", InjectionPoint.class);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public Context.Builder add(InjectionPoint injectionPoint) {
+        InjectionRequest request = this.requests.canonicalize(injectionPoint.getRequest());
+        Creation creation = this.registry.get(request);
+        if (creation == null) {
+          Scope scope = scopeFor(request);
+          if (scope != Scopes.NONE) {
+            this.scopes.bind(request, scope);
+            scope.get(request, unscoped(request));
+            return this;
+          }
+          creation = start(request);
+        }
+        creation.awaitDone();
+        return this;
+      }
+
+      /**
+       * {@inheritDoc}
+       * <p>
+       * If a subclass overrides {@link #add(InjectionPoint)}, this method adds
+       * {@code injectionPoint} by it and looks the value up.
+       */
+      @Override
+      public Context.Builder add(InjectionPoint injectionPoint, Object[] values, int slot) {
+        if (!this.slotted) {
+          values[slot] = add(injectionPoint).build().lookup(injectionPoint.getRequest());
+          return this;
+        }
+        InjectionRequest request = this.requests.canonicalize(injectionPoint.getRequest());
+        Creation creation = this.registry.get(request);
+        if (creation == null) {
+          Scope scope = scopeFor(request);
+          if (scope != Scopes.NONE) {
+            this.scopes.bind(request, scope);
+            values[slot] = scope.get(request, unscoped(request));
+            return this;
+          }
+          creation = start(request);
+        }
+        values[slot] = creation.await();
+        return this;
+      }
+
+      /**
+       * {@inheritDoc}
+       * <p>
+       * The returned {@code Context} gives values created for the requests added to
+       * this object so far, and null for other requests. It is a {@link Context.Unboxed},
+       * and is the same object every time.
+       */
+      @Override
+      public Context build() {
+        return this.context;
+      }
+
+      /**
+       * Creates and returns a value to be injected the injection points which are
+       * equal to given {@code request}.
+       * <p>
+       * This method is called at most once at a time for equal requests, but may be called
+       * concurrently for different ones.
+       *
+       * @param request A request for which the returned value should be created.
+       */
+      protected abstract Object create(InjectionRequest request);
+
+      /**
+       * Creates and returns an {@code int} value for {@code request}, whose type is
+       * {@code int}. Override this method to create values without boxing them.
+       * By default, a value created by {@code create} is unboxed.
+       *
+       * @param request A request for which the returned value should be created.
+       * @throws IllegalArgumentException A value created by {@code create} cannot be
+       *                                  converted to {@code int}.
+       */
+      protected int createInt(InjectionRequest request) {
+        return Unboxing.intValue(request, create(request));
+      }
+
+      /**
+       * Creates and returns a {@code long} value for {@code request}, whose type is
+       * {@code long}.
+       *
+       * @param request A request for which the returned value should be created.
+       * @throws IllegalArgumentException A value created by {@code create} cannot be
+       *                                  converted to {@code long}.
+       * @see #createInt(InjectionRequest)
+       */
+      protected long createLong(InjectionRequest request) {
+        return Unboxing.longValue(request, create(request));
+      }
+
+      /**
+       * Creates and returns a {@code double} value for {@code request}, whose type is
+       * {@code double}.
+       *
+       * @param request A request for which the returned value should be created.
+       * @throws IllegalArgumentException A value created by {@code create} cannot be
+       *                                  converted to {@code double}.
+       * @see #createInt(InjectionRequest)
+       */
+      protected double createDouble(InjectionRequest request) {
+        return Unboxing.doubleValue(request, create(request));
+      }
+
+      /**
+       * Returns a scope of values for {@code request}. By default, a scope specified by
+       * {@link Scoped} on qualifier annotations of the request is returned, and if none is
+       * specified, {@link Scope.None} is returned, whose values are held by this object
+       * as described above.
+       * <p>
+       * Override this method to configure scopes without annotations. This method may be
+       * called concurrently.
+       *
+       * @param request A request whose scope is returned.
+       * @see #scopeOf(Class)
+       */
+      protected Scope scopeFor(InjectionRequest request) {
+        return this.scopes.scopeFor(request);
+      }
+
+      /**
+       * Returns a scope object of {@code scopeClass} held by this object. A scope object
+       * is created only once per class and builder.
+       *
+       * @param scopeClass A class of a scope.
+       */
+      protected Scope scopeOf(Class<? extends Scope> scopeClass) {
+        return this.scopes.scopeOf(scopeClass);
+      }
+
+      /*
+       * Registers a creation of a value for a canonical request, and runs it unless
+       * another thread has registered one.
+       */
+      private Creation start(InjectionRequest request) {
+        Creation newCreation = new Creation(request);
+        Creation ret = this.registry.putIfAbsent(request, newCreation);
+        if (ret == null) {
+          ret = newCreation;
+          ret.run();
+        }
+        return ret;
+      }
+
+      /*
+       * Returns a provider which creates a value for a scoped request.
+       */
+      private Provider<Object> unscoped(final InjectionRequest request) {
+        return new Provider<Object>() {
+          @Override
+          public Object get() {
+            if (!AmbientListener.isActive())
+              return create(request);
+            long start = System.nanoTime();
+            try {
+              return create(request);
+            } finally {
+              AmbientListener.created(request, start);
+            }
+          }
+        };
+      }
+
+      /*
+       * Creates a value for a request. A value of int, long or double is encoded into
+       * slot[0], and null is returned instead.
+       */
+      private Object create(InjectionRequest request, long[] slot) {
+        if (slot == null)
+          return create(request);
+        Class<?> type = request.getType();
+        if (type == int.class) {
+          slot[0] = createInt(request);
+        } else if (type == long.class) {
+          slot[0] = createLong(request);
+        } else {
+          slot[0] = Double.doubleToRawLongBits(createDouble(request));
+        }
+        return null;
+      }
+
+      /**
+       * A creation of a value, which is shared by all the threads requesting it.
+       */
+      private class Creation extends FutureTask<Object> {
+        private final    InjectionRequest request;
+        /*
+         * Holds a value of int, long or double, or null for other types. Written before
+         * the task completes, and read after it completes.
+         */
+        private final    long[]           slot;
+        private volatile Thread           creator;
+
+        private Creation(InjectionRequest request) {
+          this(request, Unboxing.isSpecialized(request.getType()) ? new long[1] : null);
+        }
+
+        private Creation(final InjectionRequest request, final long[] slot) {
+          super(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+              if (!AmbientListener.isActive())
+                return create(request, slot);
+              long start = System.nanoTime();
+              try {
+                return create(request, slot);
+              } finally {
+                AmbientListener.created(request, start);
+              }
+            }
+          });
+          this.request = request;
+          this.slot = slot;
+        }
+
+        @Override
+        public void run() {
+          this.creator = Thread.currentThread();
+          try {
+            super.run();
+          } finally {
+            this.creator = null;
+          }
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+          registry.remove(this.request, this);
+          super.setException(t);
+        }
+
+        private Object await() {
+          Object ret = awaitDone();
+          return this.slot == null
+              ? ret
+              : Unboxing.box(this.request.getType(), this.slot[0]);
+        }
+
+        private long awaitBits() {
+          awaitDone();
+          return this.slot[0];
+        }
+
+        private Object awaitDone() {
+          if (!isDone() && this.creator == Thread.currentThread())
+            throw new IllegalStateException(format("Circular dependency is detected on '%s'", this.request));
+          boolean interrupted = false;
+          try {
+            while (true) {
+              try {
+                return get();
+              } catch (InterruptedException e) {
+                interrupted = true;
+              } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+              }
+            }
+          } finally {
+            if (interrupted)
+              Thread.currentThread().interrupt();
+          }
+        }
+      }
+    }
+
+    /**
+     * A thread-safe base class of {@link Builder} which caches created values with
+     * a configurable eviction {@link Policy}.
+     * <p>
+     * Like {@link Concurrent}, a value for an {@code InjectionRequest} is created only
+     * once at a time and shared by the injection points whose requests are equal to it.
+     * Unlike {@link Concurrent}, values are evicted according to the policy and created
+     * again by {@code create} when they are requested next time.
+     * <p>
+     * Eviction by size is based on how recently entries are used.
+     * <p>
+     * Values of requests to which a scope is attached, e.g., by {@link Scoped}, are held
+     * by the scope instead of the cache, and created by {@code create} whenever the scope
+     * doesn't hold one.
+     *
+     * @see Policy
+     * @see #scopeFor(InjectionRequest)
+     */
+    abstract class Caching implements Builder {
+      /*
+       * Caches don't allow null values.
+       */
+      private static final Object NULL = new Object();
+
+      private final LoadingCache<InjectionRequest, Object> cache;
+      private final Scopes                                 scopes = new Scopes();
+      private final RequestKeyStrategy.Canonicalizer       requests;
+
+      /**
+       * Creates an object of this class, where requests share a value only if they
+       * are equal.
+       *
+       * @param policy A policy which determines when cached values are evicted or refreshed.
+       */
+      protected Caching(Policy policy) {
+        this(policy, RequestKeyStrategy.Standard.FULL);
+      }
+
+      /**
+       * Creates an object of this class.
+       *
+       * @param policy   A policy which determines when cached values are evicted or refreshed.
+       * @param strategy A strategy which determines requests sharing a value.
+       */
+      protected Caching(Policy policy, RequestKeyStrategy strategy) {
+        this.requests = new RequestKeyStrategy.Canonicalizer(strategy);
+        this.cache = checkNotNull(policy).createCache(new CacheLoader<InjectionRequest, Object>() {
+          @Override
+          public Object load(InjectionRequest request) {
+            Object ret = unscoped(request).get();
+            return ret == null
+                ? NULL
+                : ret;
+          }
+        });
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public Context.Builder add(InjectionPoint injectionPoint) {
+        InjectionRequest request = this.requests.canonicalize(injectionPoint.getRequest());
+        Scope scope = scopeFor(request);
+        if (scope == Scopes.NONE) {
+          get(request);
+        } else {
+          this.scopes.bind(request, scope);
+          scope.get(request, unscoped(request));
+        }
+        return this;
+      }
+
+      /**
+       * {@inheritDoc}
+       * <p>
+       * The returned {@code Context} gives values cached for the requests added to
+       * this object. If a value has been evicted since it was added, it will be created
+       * again.
        */
       @Override
       public Context build() {
         return new Context() {
           @Override
           public <V> V lookup(InjectionRequest request) {
+            ////
+            // Reads through the map view so that lookups are not counted as hits.
+            InjectionRequest canonical = requests.canonicalize(request);
+            Object ret = cache.asMap().get(canonical);
+            if (ret != null)
+              //noinspection unchecked
+              return (V) unwrap(ret);
+            Scope scope = scopes.boundTo(canonical);
             //noinspection unchecked
-            return (V) registry.get(request);
+            return (V) (scope == null
+                ? get(canonical)
+                : scope.get(canonical, unscoped(canonical)));
           }
         };
       }
 
+      /**
+       * Returns statistics of the cache of this object.
+       */
+      public Stats getStats() {
+        return new Stats(this.cache.stats());
+      }
+
       /**
        * Creates and returns a value to be injected the injection points which are
        * equal to given {@code request}.
+       * <p>
+       * This method is called at most once at a time for equal requests, but may be called
+       * concurrently for different ones. If a policy refreshes values, this method
+       * is also called by the policy's executor.
        *
        * @param request A request for which the returned value should be created.
        */
       protected abstract Object create(InjectionRequest request);
+
+      /**
+       * Returns a scope of values for {@code request}, which are held by the scope instead
+       * of the cache of this object unless it is {@link Scope.None}.
+       * <p>
+       * Override this method to configure scopes without annotations. This method may be
+       * called concurrently.
+       *
+       * @param request A request whose scope is returned.
+       * @see Concurrent#scopeFor(InjectionRequest)
+       */
+      protected Scope scopeFor(InjectionRequest request) {
+        return this.scopes.scopeFor(request);
+      }
+
+      /**
+       * Returns a scope object of {@code scopeClass} held by this object. A scope object
+       * is created only once per class and builder.
+       *
+       * @param scopeClass A class of a scope.
+       */
+      protected Scope scopeOf(Class<? extends Scope> scopeClass) {
+        return this.scopes.scopeOf(scopeClass);
+      }
+
+      /*
+       * Returns a provider which creates a value for a request.
+       */
+      private Provider<Object> unscoped(final InjectionRequest request) {
+        return new Provider<Object>() {
+          @Override
+          public Object get() {
+            if (!AmbientListener.isActive())
+              return create(request);
+            long start = System.nanoTime();
+            try {
+              return create(request);
+            } finally {
+              AmbientListener.created(request, start);
+            }
+          }
+        };
+      }
+
+      private Object get(InjectionRequest request) {
+        try {
+          return unwrap(this.cache.getUnchecked(request));
+        } catch (UncheckedExecutionException | ExecutionError e) {
+          throw Throwables.propagate(e.getCause());
+        }
+      }
+
+      private static Object unwrap(Object value) {
+        return value == NULL
+            ? null
+            : value;
+      }
+
+      /**
+       * A policy which determines when values cached by {@link Caching} are evicted
+       * or refreshed. By default, no value is evicted.
+       * <p>
+       * An object of this class is mutable and methods return the object itself to
+       * chain calls.
+       */
+      public static class Policy {
+        /**
+         * Kinds of references by which cached values are held.
+         */
+        public enum References {
+          /**
+           * Values are held by strong references and evicted only by other conditions.
+           */
+          STRONG,
+          /**
+           * Values are held by weak references and evicted once they are no longer
+           * strongly reachable.
+           */
+          WEAK,
+          /**
+           * Values are held by soft references and evicted in response to memory demand.
+           */
+          SOFT
+        }
+
+        private long       maximumSize       = -1;
+        private References references        = References.STRONG;
+        private long       expireAfterWrite  = -1;
+        private long       refreshAfterWrite = -1;
+        private Executor   refreshExecutor;
+
+        /**
+         * Limits the number of cached values. When the limit is exceeded, values used
+         * least recently are evicted.
+         *
+         * @param maximumSize The maximum number of cached values.
+         */
+        public Policy maximumSize(long maximumSize) {
+          checkArgument(maximumSize >= 0, "maximumSize must not be negative but %s was given", maximumSize);
+          this.maximumSize = maximumSize;
+          return this;
+        }
+
+        /**
+         * Sets a kind of references by which values are held.
+         *
+         * @param references A kind of references.
+         */
+        public Policy values(References references) {
+          this.references = checkNotNull(references);
+          return this;
+        }
+
+        /**
+         * Evicts values when a given duration has passed since they were created.
+         *
+         * @param duration A duration after which values are evicted.
+         * @param unit     A unit of {@code duration}.
+         */
+        public Policy expireAfterWrite(long duration, TimeUnit unit) {
+          checkArgument(duration >= 0, "duration must not be negative but %s was given", duration);
+          this.expireAfterWrite = checkNotNull(unit).toNanos(duration);
+          return this;
+        }
+
+        /**
+         * Refreshes values when a given duration has passed since they were created and
+         * they are requested. A refresh is performed by {@code executor}, and the old
+         * value is returned until the refresh completes, so that values are renewed off
+         * the request path.
+         * <p>
+         * Use this with {@link #expireAfterWrite(long, TimeUnit)} whose duration is longer
+         * than this to renew values, e.g., rotating keys, before they expire.
+         *
+         * @param duration A duration after which values are refreshed.
+         * @param unit     A unit of {@code duration}.
+         * @param executor An executor by which values are refreshed.
+         */
+        public Policy refreshAfterWrite(long duration, TimeUnit unit, Executor executor) {
+          checkArgument(duration > 0, "duration must be positive but %s was given", duration);
+          this.refreshAfterWrite = checkNotNull(unit).toNanos(duration);
+          this.refreshExecutor = checkNotNull(executor);
+          return this;
+        }
+
+        private LoadingCache<InjectionRequest, Object> createCache(CacheLoader<InjectionRequest, Object> loader) {
+          CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+          if (this.maximumSize >= 0)
+            builder.maximumSize(this.maximumSize);
+          if (this.references == References.WEAK)
+            builder.weakValues();
+          if (this.references == References.SOFT)
+            builder.softValues();
+          if (this.expireAfterWrite >= 0)
+            builder.expireAfterWrite(this.expireAfterWrite, TimeUnit.NANOSECONDS);
+          if (this.refreshAfterWrite > 0) {
+            builder.refreshAfterWrite(this.refreshAfterWrite, TimeUnit.NANOSECONDS);
+            loader = CacheLoader.asyncReloading(loader, this.refreshExecutor);
+          }
+          return builder.build(loader);
+        }
+      }
+
+      /**
+       * Statistics of a cache of {@link Caching}. An object of this class is a snapshot
+       * taken when it is created.
+       */
+      public static class Stats {
+        private final CacheStats stats;
+
+        private Stats(CacheStats stats) {
+          this.stats = stats;
+        }
+
+        /**
+         * Returns the number of times cached values were found by {@code add}.
+         */
+        public long getHitCount() {
+          return this.stats.hitCount();
+        }
+
+        /**
+         * Returns the number of times values were not cached and created by {@code add}.
+         */
+        public long getMissCount() {
+          return this.stats.missCount();
+        }
+
+        /**
+         * Returns the number of values evicted, i.e., removed since the cache exceeded its
+         * maximum size, they expired, or they were garbage-collected. Values replaced by
+         * refreshes are not counted.
+         */
+        public long getEvictionCount() {
+          return this.stats.evictionCount();
+        }
+
+        /**
+         * Returns the ratio of hits to all the requests, or 1.0 if nothing is requested yet.
+         */
+        public double getHitRate() {
+          return this.stats.hitRate();
+        }
+
+        @Override
+        public String toString() {
+          return format("hit=%s; miss=%s; eviction=%s", getHitCount(), getMissCount(), getEvictionCount());
+        }
+      }
+    }
+
+    /**
+     * A builder which creates values asynchronously. {@code Injector.Extended#getInstanceAsync}
+     * adds injection points to a builder of this interface concurrently, and calls
+     * {@code build} once all the values are created.
+     *
+     * @see Injector.Extended#getInstanceAsync(Class, Executor)
+     */
+    interface Async extends Builder {
+      /**
+       * Adds given {@code injectionPoint} to this object and returns a future which
+       * completes when a value for it is created.
+       *
+       * @param injectionPoint An injection point to be added.
+       * @param executor       An executor on which values can be created.
+       */
+      ListenableFuture<?> addAsync(InjectionPoint injectionPoint, Executor executor);
+
+      /**
+       * A thread-safe base class of {@link Async}.
+       * <p>
+       * Like {@link Concurrent}, a value for an {@code InjectionRequest} is created only
+       * once and shared by all the injection points whose requests are equal to it.
+       * A value is created by {@code createAsync}, which returns a future of it.
+       * If creation fails, the value will be created again by the next call of {@code add}
+       * or {@code addAsync}.
+       * <p>
+       * Values of requests to which a scope is attached, e.g., by {@link Scoped}, are held
+       * by the scope instead. Since a scope holds values rather than futures of them,
+       * {@code addAsync} waits for such a value to be created if the scope doesn't hold one.
+       *
+       * @see #scopeFor(InjectionRequest)
+       */
+      abstract class Base implements Async {
+        private final ConcurrentMap<InjectionRequest, ListenableFuture<Object>> registry = new ConcurrentHashMap<>();
+        private final Scopes                                                    scopes   = new Scopes();
+        private final RequestKeyStrategy.Canonicalizer                          requests;
+
+        /**
+         * Creates an object of this class, where requests share a value only if they
+         * are equal.
+         */
+        protected Base() {
+          this(RequestKeyStrategy.Standard.FULL);
+        }
+
+        /**
+         * Creates an object of this class.
+         *
+         * @param strategy A strategy which determines requests sharing a value.
+         */
+        protected Base(RequestKeyStrategy strategy) {
+          this.requests = new RequestKeyStrategy.Canonicalizer(strategy);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * This method blocks until a value for {@code injectionPoint} is created.
+         */
+        @Override
+        public Context.Builder add(InjectionPoint injectionPoint) {
+          await(addAsync(injectionPoint, MoreExecutors.sameThreadExecutor()));
+          return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ListenableFuture<?> addAsync(InjectionPoint injectionPoint, Executor executor) {
+          final InjectionRequest request = this.requests.canonicalize(injectionPoint.getRequest());
+          ListenableFuture<Object> ret = this.registry.get(request);
+          if (ret == null) {
+            Scope scope = scopeFor(request);
+            if (scope != Scopes.NONE) {
+              this.scopes.bind(request, scope);
+              try {
+                return Futures.immediateFuture(scope.get(request, unscoped(request, checkNotNull(executor))));
+              } catch (RuntimeException | Error e) {
+                return Futures.immediateFailedFuture(e);
+              }
+            }
+            final SettableFuture<Object> newFuture = SettableFuture.create();
+            ret = this.registry.putIfAbsent(request, newFuture);
+            if (ret == null) {
+              ret = newFuture;
+              ListenableFuture<?> created;
+              try {
+                created = checkNotNull(createAsync(request, checkNotNull(executor)));
+              } catch (RuntimeException | Error e) {
+                created = Futures.immediateFailedFuture(e);
+              }
+              Futures.addCallback(created, new FutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object result) {
+                  newFuture.set(result);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                  registry.remove(request, newFuture);
+                  newFuture.setException(t);
+                }
+              });
+            }
+          }
+          return ret;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The returned {@code Context} gives values created for the requests added to
+         * this object so far. If a value is still being created, {@code lookup} blocks
+         * until it is created.
+         */
+        @Override
+        public Context build() {
+          return new Context() {
+            @Override
+            public <V> V lookup(InjectionRequest request) {
+              InjectionRequest canonical = requests.canonicalize(request);
+              ListenableFuture<Object> value = registry.get(canonical);
+              if (value != null)
+                //noinspection unchecked
+                return (V) await(value);
+              Scope scope = scopes.boundTo(canonical);
+              //noinspection unchecked
+              return scope == null
+                  ? null
+                  : (V) scope.get(canonical, unscoped(canonical, MoreExecutors.sameThreadExecutor()));
+            }
+          };
+        }
+
+        /**
+         * Starts creating a value to be injected the injection points which are
+         * equal to given {@code request}, and returns a future of it.
+         * <p>
+         * Slow creations should be performed on {@code executor}, or on any other executor,
+         * so that other values can be created concurrently. A value can also be created by
+         * a nested asynchronous injection, e.g., {@code Injector.Extended#getInstanceAsync}.
+         *
+         * @param request  A request for which the returned value should be created.
+         * @param executor An executor given to {@code addAsync}.
+         * @see Futures
+         */
+        protected abstract ListenableFuture<?> createAsync(InjectionRequest request, Executor executor);
+
+        /**
+         * Returns a scope of values for {@code request}, which are held by the scope instead
+         * of this object unless it is {@link Scope.None}.
+         * <p>
+         * Override this method to configure scopes without annotations. This method may be
+         * called concurrently.
+         *
+         * @param request A request whose scope is returned.
+         * @see Concurrent#scopeFor(InjectionRequest)
+         */
+        protected Scope scopeFor(InjectionRequest request) {
+          return this.scopes.scopeFor(request);
+        }
+
+        /**
+         * Returns a scope object of {@code scopeClass} held by this object. A scope object
+         * is created only once per class and builder.
+         *
+         * @param scopeClass A class of a scope.
+         */
+        protected Scope scopeOf(Class<? extends Scope> scopeClass) {
+          return this.scopes.scopeOf(scopeClass);
+        }
+
+        /*
+         * Returns a provider which creates a value for a scoped request and waits for it.
+         */
+        private Provider<Object> unscoped(final InjectionRequest request, final Executor executor) {
+          return new Provider<Object>() {
+            @Override
+            public Object get() {
+              return await(checkNotNull(createAsync(request, executor)));
+            }
+          };
+        }
+
+        private static Object await(ListenableFuture<?> future) {
+          try {
+            return Futures.getUnchecked(future);
+          } catch (UncheckedExecutionException | ExecutionError e) {
+            throw Throwables.propagate(e.getCause());
+          }
+        }
+      }
     }
   }
 }
@@ -0,0 +1,13 @@
+package com.github.dakusui.fruitjuice;
+
+/**
+ * An {@link InjectionPoint} created by {@link InjectionPoint.Factory}, which holds its
+ * delivery, so that {@link InjectionPoint.Delivery#of(InjectionPoint)} doesn't examine
+ * its target element on every injection.
+ */
+interface DeliveredInjectionPoint extends InjectionPoint {
+  /**
+   * Returns how a value for this injection point is delivered to its target.
+   */
+  Delivery getDelivery();
+}
@@ -43,4 +43,39 @@ public enum FruitJuice {
   public static Injector createInjector(Context.Builder builder) {
     return new Injector.Impl(builder);
   }
+
+  /**
+   * Creates and returns a new injector which uses {@code engine} to instantiate
+   * target classes and to inject values to their fields.
+   *
+   * @param builder A builder for a context.
+   * @param engine  An engine used by the returned injector.
+   * @see Injector.Engine
+   */
+  public static Injector createInjector(Context.Builder builder, Injector.Engine engine) {
+    return new Injector.Impl(builder, engine);
+  }
+
+  /**
+   * Creates and returns a new injector, which offers the methods of
+   * {@link Injector.Extended} as well.
+   *
+   * @param builder A builder for a context.
+   * @see #createInjector(Context.Builder)
+   */
+  public static Injector.Extended createExtendedInjector(Context.Builder builder) {
+    return new Injector.Impl(builder);
+  }
+
+  /**
+   * Creates and returns a new injector which uses {@code engine}, and which offers the
+   * methods of {@link Injector.Extended} as well.
+   *
+   * @param builder A builder for a context.
+   * @param engine  An engine used by the returned injector.
+   * @see #createInjector(Context.Builder, Injector.Engine)
+   */
+  public static Injector.Extended createExtendedInjector(Context.Builder builder, Injector.Engine engine) {
+    return new Injector.Impl(builder, engine);
+  }
 }
@@ -0,0 +1,129 @@
+package com.github.dakusui.fruitjuice;
+
+import java.util.Arrays;
+
+/**
+ * A context which holds values for an {@link InjectionPlan.Base} in an array indexed
+ * by the slots the plan assigns to its distinct requests. The plan reads a value by
+ * an array load instead of looking it up by a request.
+ * <p>
+ * Values are stored into slots by a {@link Context.Builder.Slotted} as injection points
+ * are added to it, or looked up from the context built by another builder once per slot
+ * by {@link #lookUpValues()}. {@link #lookup(InjectionRequest)} remains available for
+ * plans which don't read slots, and values of {@code int}, {@code long} and {@code double},
+ * which are not held by slots, are looked up from the built context.
+ * <p>
+ * An object of this class is reused by calls of an injector on a thread which are not
+ * nested. It is opened for a plan by {@link #open(InjectionPlan.Base)} and closed by
+ * {@link #close()}, which discards the values it holds.
+ *
+ * @see InjectionPlan.Base
+ */
+final class IndexedContext implements Context.Unboxed {
+  private static final Object[] NO_VALUES = new Object[0];
+
+  InjectionPlan.Base<?> plan;
+  private Object[] values  = NO_VALUES;
+  private Context  context;
+
+  /**
+   * Returns {@code true} if this object is opened for a plan and not closed yet.
+   */
+  boolean isOpen() {
+    return this.plan != null;
+  }
+
+  /**
+   * Opens this object for {@code plan}, and returns an array of which the first
+   * {@code plan.slotPoints.length} elements are the slots of the plan. Deferred injection
+   * points are to be given their values, which are already wrapped, in their slots.
+   *
+   * @param plan A plan whose slots index the returned array.
+   */
+  Object[] open(InjectionPlan.Base<?> plan) {
+    if (this.values.length < plan.slotPoints.length) {
+      this.values = new Object[plan.slotPoints.length];
+    }
+    this.plan = plan;
+    return this.values;
+  }
+
+  /**
+   * Sets a context built by a builder to which the injection points of the plan are
+   * added, which gives values not held by slots.
+   *
+   * @param context A built context.
+   */
+  void bind(Context context) {
+    this.context = context;
+  }
+
+  /**
+   * Looks values of direct injection points up from the bound context once per slot.
+   */
+  void lookUpValues() {
+    InjectionPoint[] points = this.plan.slotPoints;
+    for (int i = 0; i < points.length; i++) {
+      if (InjectionPoint.Delivery.of(points[i]) == InjectionPoint.Delivery.DIRECT) {
+        this.values[i] = this.context.lookup(points[i].getRequest());
+      }
+    }
+  }
+
+  /**
+   * Discards values held by this object, so that it can be opened again.
+   */
+  void close() {
+    Arrays.fill(this.values, 0, this.plan.slotPoints.length, null);
+    this.plan = null;
+    this.context = null;
+  }
+
+  /**
+   * Returns a value held by {@code slot}.
+   *
+   * @param slot A slot assigned by the plan of this object.
+   */
+  Object valueAt(int slot) {
+    return this.values[slot];
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * A request of a deferred injection point is distinguished by identity from an equal
+   * one of a direct injection point, so slots are found by identity of requests.
+   */
+  @Override
+  public <T> T lookup(InjectionRequest request) {
+    Integer slot = this.plan.slotsByRequest.get(request);
+    //noinspection unchecked
+    return slot != null
+        ? (T) this.values[slot]
+        : this.context.<T>lookup(request);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int lookupInt(InjectionRequest request) {
+    return Unboxing.lookupInt(this.context, request);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long lookupLong(InjectionRequest request) {
+    return Unboxing.lookupLong(this.context, request);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double lookupDouble(InjectionRequest request) {
+    return Unboxing.lookupDouble(this.context, request);
+  }
+}
@@ -0,0 +1,358 @@
+package com.github.dakusui.fruitjuice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * A graph of objects built by one call of {@link Injector#getInstance(Class)}, recorded
+ * by {@link #record(Injector, Class)}.
+ * <p>
+ * A graph is a tree whose root is the requested object. Children of an object are the
+ * injection points of it, and children of an injection point are the objects created
+ * by nested calls of {@code getInstance} while its value is created, e.g., ones made
+ * by injectors in {@code create} methods of builders. Each node records when it started
+ * and how long it took, and an injection point records whether its value was cached.
+ *
+ * <pre>
+ *   InjectionGraph&lt;ExampleFixture&gt; graph = InjectionGraph.record(injector, ExampleFixture.class);
+ *   Files.write(path, graph.toDot().getBytes(StandardCharsets.UTF_8));
+ * </pre>
+ *
+ * @param <T> A type of the requested object.
+ */
+public final class InjectionGraph<T> {
+  private final T    instance;
+  private final Node root;
+
+  private InjectionGraph(T instance, Node root) {
+    this.instance = instance;
+    this.root = root;
+  }
+
+  /**
+   * Calls {@code injector.getInstance(targetClass)} and records the graph built by it.
+   * While recording, the listener of {@code injector}, if any, is not notified.
+   *
+   * @param injector    An injector by which an object is requested.
+   * @param targetClass A class of which an object is requested.
+   * @param <T>         A type of the requested object.
+   * @throws IllegalArgumentException {@code injector} does not report what it does,
+   *                                  i.e., it is not an {@link Injector.Impl}.
+   */
+  public static <T> InjectionGraph<T> record(Injector injector, Class<T> targetClass) {
+    checkNotNull(injector);
+    Recorder recorder = new Recorder();
+    T instance;
+    AmbientListener.enter(recorder, checkNotNull(targetClass));
+    try {
+      instance = injector.getInstance(targetClass);
+    } finally {
+      AmbientListener.exit();
+    }
+    checkArgument(recorder.nodes.size() == 1 && recorder.nodes.get(0).kind == Node.Kind.INSTANCE,
+        "'%s' did not report how it built an object of '%s'", injector, targetClass.getCanonicalName());
+    return new InjectionGraph<>(instance, recorder.nodes.get(0));
+  }
+
+  /**
+   * Returns the object requested by {@link #record(Injector, Class)}.
+   */
+  public T getInstance() {
+    return this.instance;
+  }
+
+  /**
+   * Returns the root node of this graph, which is for the requested object.
+   */
+  public Node getRoot() {
+    return this.root;
+  }
+
+  /**
+   * Returns this graph in DOT language of Graphviz. Nodes for injection points whose values
+   * were cached are dashed.
+   */
+  public String toDot() {
+    StringBuilder b = new StringBuilder(format("digraph fruitjuice {%n"));
+    b.append(format("  node [shape=box];%n"));
+    Map<Node, Integer> ids = new IdentityHashMap<>();
+    appendDot(b, this.root, ids);
+    b.append(format("}%n"));
+    return b.toString();
+  }
+
+  /**
+   * Returns this graph in JSON. Each node is an object which has {@code kind},
+   * {@code targetClass}, {@code totalNanos}, {@code selfNanos}, {@code childNanos} and
+   * {@code children}. Nodes for injection points also have {@code injectionPoint},
+   * {@code request}, {@code cached} and {@code createNanos}.
+   */
+  public String toJson() {
+    StringBuilder b = new StringBuilder();
+    appendJson(b, this.root);
+    return b.toString();
+  }
+
+  @Override
+  public String toString() {
+    return format("graph:%s", this.root);
+  }
+
+  private static int appendDot(StringBuilder b, Node node, Map<Node, Integer> ids) {
+    int id = ids.size();
+    ids.put(node, id);
+    String label = node.kind == Node.Kind.INSTANCE
+        ? escape(node.targetClass.getName())
+        : escape(node.describeInjectionPoint()) + "\\n" + escape(String.valueOf(node.request));
+    b.append(format("  n%d [label=\"%s\\ntotal=%dns self=%dns\"%s];%n",
+        id,
+        label,
+        node.getTotalNanos(),
+        node.getSelfNanos(),
+        node.isCached() ? ", style=dashed" : ""));
+    for (Node each : node.children) {
+      int childId = appendDot(b, each, ids);
+      b.append(format("  n%d -> n%d;%n", id, childId));
+    }
+    return id;
+  }
+
+  private static void appendJson(StringBuilder b, Node node) {
+    b.append('{');
+    b.append(format("\"kind\":\"%s\",\"targetClass\":\"%s\"", node.kind, escape(node.targetClass.getName())));
+    if (node.kind == Node.Kind.INJECTION_POINT) {
+      b.append(format(",\"injectionPoint\":\"%s\",\"request\":\"%s\",\"cached\":%s,\"createNanos\":%d",
+          escape(node.describeInjectionPoint()),
+          escape(String.valueOf(node.request)),
+          node.cached,
+          node.createNanos));
+    }
+    b.append(format(",\"totalNanos\":%d,\"selfNanos\":%d,\"childNanos\":%d,\"children\":[",
+        node.getTotalNanos(), node.getSelfNanos(), node.getChildNanos()));
+    for (int i = 0; i < node.children.size(); i++) {
+      if (i > 0)
+        b.append(',');
+      appendJson(b, node.children.get(i));
+    }
+    b.append("]}");
+  }
+
+  private static String escape(String s) {
+    StringBuilder b = new StringBuilder(s.length());
+    for (char c : s.toCharArray()) {
+      switch (c) {
+      case '"':
+        b.append("\\\"");
+        break;
+      case '\\':
+        b.append("\\\\");
+        break;
+      case '\n':
+        b.append("\\n");
+        break;
+      default:
+        if (c < 0x20)
+          b.append(format("\\u%04x", (int) c));
+        else
+          b.append(c);
+      }
+    }
+    return b.toString();
+  }
+
+  /**
+   * A node of an {@link InjectionGraph}.
+   */
+  public static final class Node {
+    /**
+     * Kinds of nodes.
+     */
+    public enum Kind {
+      /**
+       * A node for an object created by a call of {@code getInstance}.
+       */
+      INSTANCE,
+      /**
+       * A node for an injection point of an object.
+       */
+      INJECTION_POINT
+    }
+
+    private final Kind             kind;
+    private final Class<?>         targetClass;
+    private final InjectionPoint   point;
+    private final InjectionRequest request;
+    private final long             start;
+    private final long             totalNanos;
+    private final List<Node>       children = new ArrayList<>();
+    private       boolean          cached   = true;
+    private       long             createNanos;
+
+    private Node(Kind kind, Class<?> targetClass, InjectionPoint point, InjectionRequest request, long start, long totalNanos) {
+      this.kind = kind;
+      this.targetClass = targetClass;
+      this.point = point;
+      this.request = request;
+      this.start = start;
+      this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Returns a kind of this node.
+     */
+    public Kind getKind() {
+      return this.kind;
+    }
+
+    /**
+     * Returns the class of the created object for an {@link Kind#INSTANCE} node, and
+     * the class which has the injection point for an {@link Kind#INJECTION_POINT} node.
+     */
+    public Class<?> getTargetClass() {
+      return this.targetClass;
+    }
+
+    /**
+     * Returns the injection point of this node, or {@code null} if this is an
+     * {@link Kind#INSTANCE} node.
+     */
+    public InjectionPoint getInjectionPoint() {
+      return this.point;
+    }
+
+    /**
+     * Returns the request of the injection point of this node, or {@code null} if this
+     * is an {@link Kind#INSTANCE} node.
+     */
+    public InjectionRequest getRequest() {
+      return this.request;
+    }
+
+    /**
+     * Returns {@code true} if the value of the injection point of this node was not
+     * created but held by a builder or a scope. Builders which don't report
+     * {@link InjectionListener.Event#CREATE} events, i.e., ones not derived from the
+     * builders in {@link Context.Builder}, are regarded as holding all values.
+     * {@code false} is returned for an {@link Kind#INSTANCE} node.
+     */
+    public boolean isCached() {
+      return this.kind == Kind.INJECTION_POINT && this.cached;
+    }
+
+    /**
+     * Returns a value of {@link System#nanoTime()} when this node started.
+     */
+    public long getStartNanos() {
+      return this.start;
+    }
+
+    /**
+     * Returns time this node took in nanoseconds, including its children.
+     */
+    public long getTotalNanos() {
+      return this.totalNanos;
+    }
+
+    /**
+     * Returns time {@code create} took for the injection point of this node in
+     * nanoseconds, or {@code 0} if the value was cached.
+     */
+    public long getCreateNanos() {
+      return this.createNanos;
+    }
+
+    /**
+     * Returns time the children of this node took in nanoseconds.
+     */
+    public long getChildNanos() {
+      long ret = 0;
+      for (Node each : this.children) {
+        ret += each.totalNanos;
+      }
+      return ret;
+    }
+
+    /**
+     * Returns time this node took in nanoseconds, excluding its children.
+     */
+    public long getSelfNanos() {
+      return this.totalNanos - getChildNanos();
+    }
+
+    /**
+     * Returns the children of this node in the order in which they started.
+     */
+    public List<Node> getChildren() {
+      return Collections.unmodifiableList(this.children);
+    }
+
+    @Override
+    public String toString() {
+      return this.kind == Kind.INSTANCE
+          ? format("%s%s", this.targetClass.getName(), this.children)
+          : format("%s%s", describeInjectionPoint(), this.children);
+    }
+
+    private String describeInjectionPoint() {
+      return this.point.getTargetElement().getType() == InjectionPoint.Type.FIELD
+          ? format("%s#%s", this.targetClass.getName(), this.point.getTargetElement().asField().getName())
+          : format("%s(#%d)", this.targetClass.getName(), this.point.getTargetElement().asConstructorParameter().getIndex());
+    }
+  }
+
+  /*
+   * Builds nodes from events. Events are reported when they finish, i.e., in post-order,
+   * and an event's children are the ones on the stack that started after it.
+   */
+  private static class Recorder implements InjectionListener {
+    private final List<Node> nodes = new ArrayList<>();
+
+    @Override
+    public boolean sample(Class<?> targetClass) {
+      return true;
+    }
+
+    @Override
+    public void onEvent(Event event, Class<?> targetClass, InjectionPoint point, InjectionRequest request, long start, long nanos) {
+      Node node;
+      switch (event) {
+      case GET_INSTANCE:
+        node = new Node(Node.Kind.INSTANCE, targetClass, null, null, start, nanos);
+        break;
+      case ADD:
+        node = new Node(Node.Kind.INJECTION_POINT, targetClass, point, request, start, nanos);
+        break;
+      case CREATE:
+        ////
+        // Folded into the ADD node that encloses it.
+        node = new Node(null, targetClass, null, request, start, nanos);
+        break;
+      default:
+        return;
+      }
+      int from = this.nodes.size();
+      while (from > 0 && this.nodes.get(from - 1).start >= start) {
+        from--;
+      }
+      List<Node> children = this.nodes.subList(from, this.nodes.size());
+      for (Node each : children) {
+        if (each.kind == null) {
+          node.cached = false;
+          node.createNanos += each.totalNanos;
+          node.children.addAll(each.children);
+        } else {
+          node.children.add(each);
+        }
+      }
+      children.clear();
+      this.nodes.add(node);
+    }
+  }
+}
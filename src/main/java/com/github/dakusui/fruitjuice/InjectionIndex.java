@@ -0,0 +1,244 @@
+package com.github.dakusui.fruitjuice;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.SetMultimap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * An index of classes which have constructors or fields annotated with {@link Inject},
+ * written to {@value #RESOURCE_NAME} by {@code fruitjuice-processor} at compile time.
+ * <p>
+ * This class answers which classes are injection targets and which values they request
+ * by reading the index only, i.e., without loading the classes. Classes are loaded only
+ * when {@link #prepare(Injector.Extended)} is called.
+ *
+ * <pre>
+ *   InjectionIndex index = InjectionIndex.load(getClass().getClassLoader());
+ *   index.prepare(injector);                                // warms up plans at boot
+ *   index.getClassNamesRequesting(ExecutorService.class);   // classes affected by a change
+ * </pre>
+ */
+public final class InjectionIndex {
+  /**
+   * The name of resources from which indices are read.
+   */
+  public static final String RESOURCE_NAME = "META-INF/fruitjuice/index";
+
+  /**
+   * A descriptor of an injection point recorded in an index.
+   */
+  public static final class Point {
+    private final InjectionPoint.Type type;
+    private final String              name;
+    private final String              typeName;
+    private final List<String>        qualifierTypeNames;
+
+    Point(InjectionPoint.Type type, String name, String typeName, List<String> qualifierTypeNames) {
+      this.type = checkNotNull(type);
+      this.name = checkNotNull(name);
+      this.typeName = checkNotNull(typeName);
+      this.qualifierTypeNames = ImmutableList.copyOf(qualifierTypeNames);
+    }
+
+    /**
+     * Returns a type of this injection point.
+     */
+    public InjectionPoint.Type getType() {
+      return this.type;
+    }
+
+    /**
+     * Returns a name of this injection point. For a constructor parameter, its index is
+     * returned and for a field, its declaring class's name and its name joined by
+     * {@code #} are returned.
+     */
+    public String getName() {
+      return this.name;
+    }
+
+    /**
+     * Returns the name of the type of values requested by this injection point, in
+     * the same form as {@link Class#getName()}.
+     *
+     * @see InjectionRequest#getType()
+     */
+    public String getTypeName() {
+      return this.typeName;
+    }
+
+    /**
+     * Returns names of the types of annotations attached to this injection point other
+     * than {@link Inject}.
+     *
+     * @see InjectionRequest.Utils#qualifierAnnotationsOf(InjectionRequest)
+     */
+    public List<String> getQualifierTypeNames() {
+      return this.qualifierTypeNames;
+    }
+
+    @Override
+    public String toString() {
+      return format("%s:%s:%s%s", this.type, this.name, this.typeName, this.qualifierTypeNames);
+    }
+  }
+
+  private final ClassLoader                 classLoader;
+  private final Map<String, Boolean>        instantiable;
+  private final ListMultimap<String, Point> points;
+  private final SetMultimap<String, String> classNamesByTypeName;
+
+  private InjectionIndex(ClassLoader classLoader, Map<String, Boolean> instantiable, ListMultimap<String, Point> points) {
+    this.classLoader = classLoader;
+    this.instantiable = Collections.unmodifiableMap(instantiable);
+    this.points = points;
+    ImmutableSetMultimap.Builder<String, String> b = ImmutableSetMultimap.builder();
+    for (Map.Entry<String, Point> each : points.entries()) {
+      b.put(each.getValue().getTypeName(), each.getKey());
+    }
+    this.classNamesByTypeName = b.build();
+  }
+
+  /**
+   * Reads all the indices visible from {@code classLoader}.
+   *
+   * @param classLoader A class loader from which indices are read and by which classes
+   *                    are loaded by {@link #prepare(Injector.Extended)}.
+   * @throws IOException              Failed to read an index.
+   * @throws IllegalArgumentException An index is malformed.
+   */
+  public static InjectionIndex load(ClassLoader classLoader) throws IOException {
+    Map<String, Boolean> instantiable = new LinkedHashMap<>();
+    ImmutableListMultimap.Builder<String, Point> points = ImmutableListMultimap.builder();
+    Enumeration<URL> resources = checkNotNull(classLoader).getResources(RESOURCE_NAME);
+    while (resources.hasMoreElements()) {
+      URL each = resources.nextElement();
+      try (Reader r = new InputStreamReader(each.openStream(), StandardCharsets.UTF_8)) {
+        read(each, new BufferedReader(r), instantiable, points);
+      }
+    }
+    return new InjectionIndex(classLoader, instantiable, points.build());
+  }
+
+  /**
+   * Returns names of all the classes in this index.
+   */
+  public Set<String> getClassNames() {
+    return this.instantiable.keySet();
+  }
+
+  /**
+   * Returns {@code true} if a class can be instantiated by an injector, i.e., it is
+   * concrete and has a constructor available for injection.
+   *
+   * @param className A name of a class in this index.
+   */
+  public boolean isInstantiable(String className) {
+    Boolean ret = this.instantiable.get(className);
+    checkArgument(ret != null, "Class '%s' is not found in %s", className, this);
+    return ret;
+  }
+
+  /**
+   * Returns injection points of a class, constructor parameters first and then fields
+   * in the order in which they are injected.
+   *
+   * @param className A name of a class in this index.
+   */
+  public List<Point> getInjectionPoints(String className) {
+    checkArgument(this.instantiable.containsKey(className), "Class '%s' is not found in %s", className, this);
+    return this.points.get(className);
+  }
+
+  /**
+   * Returns names of classes which have injection points requesting values of
+   * {@code type}.
+   *
+   * @param type A type of requested values.
+   */
+  public Set<String> getClassNamesRequesting(Class<?> type) {
+    return this.classNamesByTypeName.get(checkNotNull(type).getName());
+  }
+
+  /**
+   * Loads instantiable classes in this index and prepares plans for them.
+   *
+   * @param injector An injector which prepares plans.
+   * @see Injector.Extended#prepare(Class[])
+   */
+  public void prepare(Injector.Extended injector) {
+    List<Class<?>> classes = new ArrayList<>(this.instantiable.size());
+    for (Map.Entry<String, Boolean> each : this.instantiable.entrySet()) {
+      if (!each.getValue())
+        continue;
+      try {
+        classes.add(Class.forName(each.getKey(), false, this.classLoader));
+      } catch (ClassNotFoundException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+    checkNotNull(injector).prepare(classes.toArray(new Class<?>[classes.size()]));
+  }
+
+  @Override
+  public String toString() {
+    return format("index:%s", this.instantiable.keySet());
+  }
+
+  private static void read(URL url, BufferedReader reader, Map<String, Boolean> instantiable, ImmutableListMultimap.Builder<String, Point> points) throws IOException {
+    Splitter splitter = Splitter.on('\t');
+    String className = null;
+    boolean duplicated = false;
+    String line;
+    for (int lineNumber = 1; (line = reader.readLine()) != null; lineNumber++) {
+      if (line.isEmpty() || line.startsWith("#"))
+        continue;
+      List<String> columns = splitter.splitToList(line);
+      if (!line.startsWith("\t")) {
+        checkArgument(columns.size() == 1 || (columns.size() == 2 && "abstract".equals(columns.get(1))),
+            "Malformed class entry is found at %s:%s: '%s'", url, lineNumber, line);
+        className = columns.get(0);
+        ////
+        // The same class can appear in more than one index, e.g., if it is on the
+        // class path twice. The first one wins as class loading does.
+        duplicated = instantiable.containsKey(className);
+        if (!duplicated)
+          instantiable.put(className, columns.size() == 1);
+        continue;
+      }
+      checkArgument(className != null && columns.size() == 5, "Malformed injection point is found at %s:%s: '%s'", url, lineNumber, line);
+      checkArgument(columns.get(1).equals("parameter") || columns.get(1).equals("field"),
+          "Unknown kind of injection point is found at %s:%s: '%s'", url, lineNumber, columns.get(1));
+      if (duplicated)
+        continue;
+      points.put(className, new Point(
+          "parameter".equals(columns.get(1)) ? InjectionPoint.Type.CONSTRUCTOR_PARAMETER : InjectionPoint.Type.FIELD,
+          columns.get(2),
+          columns.get(3),
+          columns.get(4).isEmpty()
+              ? Collections.<String>emptyList()
+              : Splitter.on(',').splitToList(columns.get(4))));
+    }
+  }
+}
@@ -0,0 +1,400 @@
+package com.github.dakusui.fruitjuice;
+
+import java.lang.annotation.Annotation;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * An interface to observe what an {@link Injector.Impl} does and how long it takes.
+ * <p>
+ * An injector asks a listener whether it observes each call of {@code getInstance}
+ * by {@link #sample(Class)}, and only if it does, the injector measures the call
+ * and reports {@link Event}s of it. Since an injector without a listener uses
+ * {@link #NONE}, which is never asked, it pays nothing for this mechanism.
+ *
+ * @see Injector.Impl#Impl(Context.Builder, Injector.Engine, InjectionPlanStore, InjectionListener)
+ * @see Metrics
+ */
+public interface InjectionListener {
+  /**
+   * A listener that observes nothing.
+   */
+  InjectionListener NONE = new InjectionListener() {
+    @Override
+    public boolean sample(Class<?> targetClass) {
+      return false;
+    }
+
+    @Override
+    public void onEvent(Event event, Class<?> targetClass, InjectionPoint point, InjectionRequest request, long start, long nanos) {
+    }
+  };
+
+  /**
+   * Kinds of events reported to a listener.
+   */
+  enum Event {
+    /**
+     * The metadata of a target class, i.e., its constructor, fields and requests, is
+     * computed by {@link InjectionPlan.Cache}. Since it happens only once per class in
+     * a process, this event is reported regardless of sampling, only to the listener of
+     * the injector which requested the class first. Plans generated at compile time or
+     * read from an {@link InjectionPlanStore} are not reported.
+     */
+    PLAN,
+    /**
+     * An injection point is added to a {@link Context.Builder}, which creates a value
+     * for it unless its scope holds one.
+     */
+    ADD,
+    /**
+     * A value is created by {@code create} method of a builder. This event is reported
+     * by the builders in {@link Context.Builder} only on the thread on which a call of
+     * {@code getInstance} is observed, and nested in an {@link #ADD} event.
+     */
+    CREATE,
+    /**
+     * A value is looked up from a {@link Context}.
+     */
+    LOOKUP,
+    /**
+     * A constructor of a target class is invoked, including lookups of its arguments.
+     */
+    CONSTRUCT,
+    /**
+     * Fields of a target object are injected, including lookups of their values.
+     */
+    INJECT,
+    /**
+     * A call of {@code getInstance} finishes.
+     */
+    GET_INSTANCE
+  }
+
+  /**
+   * Returns {@code true} if a call of {@code getInstance} for {@code targetClass} should
+   * be observed. Called once per call of {@code getInstance}, so it should be cheap.
+   * <p>
+   * While a call is observed, calls of {@code getInstance} of other injectors nested in
+   * it on the same thread, e.g., ones in {@code create} methods of builders, are
+   * observed and reported to the same listener, too.
+   *
+   * @param targetClass A class of which an object is requested.
+   */
+  boolean sample(Class<?> targetClass);
+
+  /**
+   * Called when an {@code event} happens.
+   *
+   * @param event       A kind of the event.
+   * @param targetClass A class of which an object is requested.
+   * @param point       An injection point for which the event happened. Given only for
+   *                    {@link Event#ADD} events, and {@code null} for others.
+   * @param request     A request for which the event happened. {@code null} for events
+   *                    which are not for specific requests.
+   * @param start       A value of {@link System#nanoTime()} when the event started.
+   * @param nanos       Time the event took in nanoseconds.
+   */
+  void onEvent(Event event, Class<?> targetClass, InjectionPoint point, InjectionRequest request, long start, long nanos);
+
+  /**
+   * A factory of listeners.
+   */
+  enum Factory {
+    ;
+
+    private static final String JFR_LISTENER = "com.github.dakusui.fruitjuice.jfr.JfrInjectionListener";
+
+    /**
+     * Returns a listener which emits Java Flight Recorder events, whose names start with
+     * {@code fruitjuice.}. The events are disabled by default and enabled by recordings.
+     * If the runtime is older than JDK 11 or {@code fruitjuice-jfr} is not in the class
+     * path, {@link #NONE} will be returned.
+     */
+    public static InjectionListener createJfrListener() {
+      try {
+        return (InjectionListener) Class.forName(JFR_LISTENER).getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException | LinkageError e) {
+        return NONE;
+      }
+    }
+
+    /**
+     * Returns a listener which reports events to all of {@code listeners}. A call is
+     * sampled if any of them samples it, and then events of it are reported to all of them.
+     *
+     * @param listeners Listeners to which events are reported.
+     */
+    public static InjectionListener compose(InjectionListener... listeners) {
+      final InjectionListener[] composed = listeners.clone();
+      for (InjectionListener each : composed) {
+        checkNotNull(each);
+      }
+      return new InjectionListener() {
+        @Override
+        public boolean sample(Class<?> targetClass) {
+          boolean ret = false;
+          for (InjectionListener each : composed) {
+            ////
+            // Every listener is asked since it may count calls.
+            ret |= each.sample(targetClass);
+          }
+          return ret;
+        }
+
+        @Override
+        public void onEvent(Event event, Class<?> targetClass, InjectionPoint point, InjectionRequest request, long start, long nanos) {
+          for (InjectionListener each : composed) {
+            each.onEvent(event, targetClass, point, request, start, nanos);
+          }
+        }
+      };
+    }
+  }
+
+  /**
+   * A listener which counts calls of {@code getInstance} per target class, and records
+   * latencies of sampled events in {@link Histogram}s per target class and per type of
+   * qualifier annotations.
+   * <p>
+   * Calls are sampled randomly, one out of {@code samplingInterval} on average. This
+   * class is thread-safe.
+   *
+   * <pre>
+   *   InjectionListener.Metrics metrics = new InjectionListener.Metrics(100);
+   *   Injector injector = new Injector.Impl(builder, Injector.Engine.REFLECTIVE, null, metrics);
+   *   ...
+   *   metrics.getTargetStats(Foo.class).getHistogram(Event.ADD).getValueAtPercentile(99);
+   * </pre>
+   */
+  class Metrics implements InjectionListener {
+    private final int                                               samplingInterval;
+    private final ConcurrentMap<Class<?>, Stats>                    targetStats    = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<? extends Annotation>, Stats> qualifierStats = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an object of this class.
+     *
+     * @param samplingInterval One out of this number of calls is sampled on average.
+     *                         {@code 1} to sample all the calls.
+     */
+    public Metrics(int samplingInterval) {
+      checkArgument(samplingInterval > 0, "samplingInterval must be positive but %s was given", samplingInterval);
+      this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean sample(Class<?> targetClass) {
+      statsOf(this.targetStats, targetClass).calls.incrementAndGet();
+      return this.samplingInterval == 1 || ThreadLocalRandom.current().nextInt(this.samplingInterval) == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEvent(Event event, Class<?> targetClass, InjectionPoint point, InjectionRequest request, long start, long nanos) {
+      statsOf(this.targetStats, targetClass).histograms.get(event).record(nanos);
+      if (request == null)
+        return;
+      for (Annotation each : InjectionRequest.Utils.qualifierAnnotationsOf(request)) {
+        statsOf(this.qualifierStats, each.annotationType()).histograms.get(event).record(nanos);
+      }
+    }
+
+    /**
+     * Returns statistics of a target class, or {@code null} if none is recorded.
+     *
+     * @param targetClass A class of which objects are requested.
+     */
+    public Stats getTargetStats(Class<?> targetClass) {
+      return this.targetStats.get(checkNotNull(targetClass));
+    }
+
+    /**
+     * Returns statistics of requests annotated with a type of qualifier annotations, or
+     * {@code null} if none is recorded. Calls of {@code getInstance} are not counted.
+     *
+     * @param qualifierType A type of qualifier annotations.
+     */
+    public Stats getQualifierStats(Class<? extends Annotation> qualifierType) {
+      return this.qualifierStats.get(checkNotNull(qualifierType));
+    }
+
+    /**
+     * Returns statistics of the process-wide cache of plans, which are accumulated over
+     * all the injectors, not only ones reporting to this object.
+     *
+     * @see InjectionPlan.Cache
+     */
+    public InjectionPlan.Cache.Stats getPlanCacheStats() {
+      return InjectionPlan.Cache.getStats();
+    }
+
+    /**
+     * Returns the sampling interval of this object.
+     */
+    public int getSamplingInterval() {
+      return this.samplingInterval;
+    }
+
+    private static <K> Stats statsOf(ConcurrentMap<K, Stats> stats, K key) {
+      Stats ret = stats.get(key);
+      if (ret == null) {
+        Stats newStats = new Stats();
+        ret = stats.putIfAbsent(key, newStats);
+        if (ret == null)
+          ret = newStats;
+      }
+      return ret;
+    }
+
+    /**
+     * Statistics of a target class or a type of qualifier annotations.
+     */
+    public static class Stats {
+      private final AtomicLong            calls      = new AtomicLong();
+      private final Map<Event, Histogram> histograms = new EnumMap<>(Event.class);
+
+      private Stats() {
+        for (Event each : Event.values()) {
+          this.histograms.put(each, new Histogram());
+        }
+      }
+
+      /**
+       * Returns the number of calls of {@code getInstance}, including ones not sampled.
+       */
+      public long getCount() {
+        return this.calls.get();
+      }
+
+      /**
+       * Returns a histogram of latencies of sampled {@code event}s.
+       *
+       * @param event A kind of events.
+       */
+      public Histogram getHistogram(Event event) {
+        return this.histograms.get(checkNotNull(event));
+      }
+
+      @Override
+      public String toString() {
+        return format("count=%s, %s", this.calls.get(), this.histograms);
+      }
+    }
+  }
+
+  /**
+   * A histogram of non-negative values in the same manner as HdrHistogram, whose buckets
+   * are logarithmic and divided into 8 linear sub-buckets each. Recorded values are
+   * distinguished with precision of 1/8 of their magnitude. Recording a value is
+   * lock-free and does not allocate objects.
+   */
+  class Histogram {
+    private static final int SUB_BUCKET_BITS  = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT);
+    private final AtomicLong      count  = new AtomicLong();
+    private final AtomicLong      total  = new AtomicLong();
+    private final AtomicLong      max    = new AtomicLong();
+
+    /**
+     * Records {@code value}. A negative value is recorded as {@code 0}.
+     *
+     * @param value A value to be recorded.
+     */
+    public void record(long value) {
+      long v = Math.max(0, value);
+      this.counts.incrementAndGet(indexOf(v));
+      this.count.incrementAndGet();
+      this.total.addAndGet(v);
+      long cur;
+      while (v > (cur = this.max.get()) && !this.max.compareAndSet(cur, v)) {
+        ////
+        // Retry until the maximum is updated by this or another thread.
+      }
+    }
+
+    /**
+     * Returns the number of recorded values.
+     */
+    public long getCount() {
+      return this.count.get();
+    }
+
+    /**
+     * Returns the mean of recorded values, or {@code 0} if none is recorded.
+     */
+    public double getMean() {
+      long count = this.count.get();
+      return count == 0
+          ? 0
+          : (double) this.total.get() / count;
+    }
+
+    /**
+     * Returns the maximum of recorded values.
+     */
+    public long getMax() {
+      return this.max.get();
+    }
+
+    /**
+     * Returns a value at {@code percentile}, which is the highest value equivalent to
+     * the recorded one, or {@code 0} if none is recorded.
+     *
+     * @param percentile A percentile between 0 and 100.
+     */
+    public long getValueAtPercentile(double percentile) {
+      checkArgument(0 <= percentile && percentile <= 100, "percentile must be between 0 and 100 but %s was given", percentile);
+      long count = this.count.get();
+      if (count == 0)
+        return 0;
+      long threshold = Math.max(1, (long) Math.ceil(count * percentile / 100));
+      long sum = 0;
+      for (int i = 0; i < this.counts.length(); i++) {
+        sum += this.counts.get(i);
+        if (sum >= threshold)
+          return Math.min(lowestValueOf(i + 1) - 1, this.max.get());
+      }
+      return this.max.get();
+    }
+
+    @Override
+    public String toString() {
+      return format("{count=%s, mean=%.1f, p50=%s, p99=%s, max=%s}",
+          getCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(99), getMax());
+    }
+
+    private static int indexOf(long value) {
+      if (value < SUB_BUCKET_COUNT)
+        return (int) value;
+      int magnitude = 63 - Long.numberOfLeadingZeros(value);
+      int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+      return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long lowestValueOf(int index) {
+      if (index < SUB_BUCKET_COUNT)
+        return index;
+      int magnitude = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+      if (magnitude > 62)
+        return Long.MAX_VALUE;
+      return (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << (magnitude - SUB_BUCKET_BITS);
+    }
+  }
+}
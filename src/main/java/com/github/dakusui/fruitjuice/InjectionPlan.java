@@ -0,0 +1,1431 @@
+package com.github.dakusui.fruitjuice;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimap;
+import com.google.common.primitives.Primitives;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Iterables.filter;
+import static com.google.common.collect.Iterables.size;
+import static com.google.common.collect.Iterables.transform;
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+
+/**
+ * An interface that represents a precomputed "injection plan" of a class.
+ * <p>
+ * A plan holds the constructor chosen for instantiation of the target class,
+ * injection points for its parameters in order, and validated injection points
+ * for the fields annotated with {@link Inject}. Since a plan is immutable, it can
+ * be computed once per class and shared by any number of {@code getInstance} calls.
+ *
+ * @param <T> A type of objects instantiated by this plan.
+ * @see Factory
+ */
+public interface InjectionPlan<T> {
+  /**
+   * Returns a class whose objects are instantiated by this plan.
+   */
+  Class<T> getTargetClass();
+
+  /**
+   * Returns a constructor used for instantiation.
+   */
+  Constructor<T> getConstructor();
+
+  /**
+   * Returns injection points for the parameters of the constructor in order.
+   */
+  List<InjectionPoint> getConstructorInjectionPoints();
+
+  /**
+   * Returns injection points for the fields annotated with {@link Inject}, including
+   * ones declared in super classes.
+   */
+  List<InjectionPoint> getFieldInjectionPoints();
+
+  /**
+   * Creates a new object of the target class by invoking the constructor with values
+   * looked up from {@code context}.
+   *
+   * @param context A context from which constructor arguments are looked up.
+   */
+  T newInstance(Context context);
+
+  /**
+   * Injects values looked up from {@code context} to the fields of {@code target}.
+   *
+   * @param target  An object to which values are injected.
+   * @param context A context from which field values are looked up.
+   */
+  void injectMembers(T target, Context context);
+
+  /**
+   * A base class of {@code InjectionPlan}, which holds the injection points of the
+   * plan.
+   * <p>
+   * A plan of this class assigns a slot, a small integer, to each distinct request
+   * of its injection points. If {@link Injector.Impl} gives it a context holding values
+   * in slots, values are read from them instead of being looked up by requests.
+   *
+   * @param <T> A type of objects instantiated by this plan.
+   */
+  abstract class Base<T> implements InjectionPlan<T> {
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final Class<T>             targetClass;
+    private final Constructor<T>       constructor;
+    private final List<InjectionPoint> constructorInjectionPoints;
+    private final List<InjectionPoint> fieldInjectionPoints;
+    private final Class<?>[]           parameterTypes;
+    final         Class<?>[]           fieldTypes;
+    /*
+     * Slots of constructor parameters and fields, which index values of an
+     * IndexedContext. Equal requests of direct injection points share a slot, each
+     * deferred injection point has its own one, and ones of int, long and double are
+     * -1 since they are not held by slots.
+     */
+    final int[]                        constructorSlots;
+    final int[]                        fieldSlots;
+    /*
+     * The first injection point of each slot.
+     */
+    final InjectionPoint[]             slotPoints;
+    /*
+     * Slots of the requests of injection points which have ones, keyed by identity.
+     */
+    final Map<InjectionRequest, Integer> slotsByRequest;
+
+    /**
+     * Creates an object of this class.
+     *
+     * @param targetClass A class whose objects are instantiated by this plan.
+     * @param constructor A constructor used for instantiation.
+     * @param fields      Fields to which values are injected.
+     */
+    protected Base(Class<T> targetClass, Constructor<T> constructor, Iterable<Field> fields) {
+      this.targetClass = checkNotNull(targetClass);
+      this.constructor = checkNotNull(constructor);
+      this.constructorInjectionPoints = ImmutableList.copyOf(InjectionPoint.Factory.createInjectionPointsFromConstructor(constructor));
+      this.fieldInjectionPoints = ImmutableList.copyOf(transform(
+          checkNotNull(fields),
+          new Function<Field, InjectionPoint>() {
+            @Override
+            public InjectionPoint apply(Field each) {
+              return InjectionPoint.Factory.createFromField(each);
+            }
+          }
+      ));
+      this.parameterTypes = constructor.getParameterTypes();
+      this.fieldTypes = fieldTypesOf(this.fieldInjectionPoints);
+      List<InjectionPoint> slotPoints = new ArrayList<>();
+      this.constructorSlots = assignSlots(this.constructorInjectionPoints, slotPoints);
+      this.fieldSlots = assignSlots(this.fieldInjectionPoints, slotPoints);
+      this.slotPoints = slotPoints.toArray(new InjectionPoint[slotPoints.size()]);
+      this.slotsByRequest = slotsByRequest(this.constructorInjectionPoints, this.constructorSlots, this.fieldInjectionPoints, this.fieldSlots);
+    }
+
+    /**
+     * Creates an object of this class which shares the injection points of {@code plan}.
+     *
+     * @param plan A plan whose injection points are shared.
+     */
+    protected Base(InjectionPlan<T> plan) {
+      this.targetClass = plan.getTargetClass();
+      this.constructor = plan.getConstructor();
+      this.constructorInjectionPoints = plan.getConstructorInjectionPoints();
+      this.fieldInjectionPoints = plan.getFieldInjectionPoints();
+      this.parameterTypes = this.constructor.getParameterTypes();
+      this.fieldTypes = fieldTypesOf(this.fieldInjectionPoints);
+      if (plan instanceof Base) {
+        this.constructorSlots = ((Base<T>) plan).constructorSlots;
+        this.fieldSlots = ((Base<T>) plan).fieldSlots;
+        this.slotPoints = ((Base<T>) plan).slotPoints;
+        this.slotsByRequest = ((Base<T>) plan).slotsByRequest;
+      } else {
+        List<InjectionPoint> slotPoints = new ArrayList<>();
+        this.constructorSlots = assignSlots(this.constructorInjectionPoints, slotPoints);
+        this.fieldSlots = assignSlots(this.fieldInjectionPoints, slotPoints);
+        this.slotPoints = slotPoints.toArray(new InjectionPoint[slotPoints.size()]);
+        this.slotsByRequest = slotsByRequest(this.constructorInjectionPoints, this.constructorSlots, this.fieldInjectionPoints, this.fieldSlots);
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Class<T> getTargetClass() {
+      return this.targetClass;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Constructor<T> getConstructor() {
+      return this.constructor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<InjectionPoint> getConstructorInjectionPoints() {
+      return this.constructorInjectionPoints;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<InjectionPoint> getFieldInjectionPoints() {
+      return this.fieldInjectionPoints;
+    }
+
+    @Override
+    public String toString() {
+      return format("plan:%s", this.targetClass.getSimpleName());
+    }
+
+    /**
+     * Looks up arguments for the constructor from {@code context}.
+     *
+     * @param context A context from which arguments are looked up.
+     * @throws IllegalArgumentException Any of the arguments cannot be passed to the constructor.
+     */
+    protected Object[] arguments(Context context) {
+      if (this.parameterTypes.length == 0)
+        return NO_ARGUMENTS;
+      Object[] ret = new Object[this.parameterTypes.length];
+      for (int i = 0; i < ret.length; i++) {
+        ret[i] = lookup(context, this.constructorSlots[i], this.constructorInjectionPoints.get(i));
+        if (!Invokers.isAssignable(this.parameterTypes[i], ret[i])) {
+          throw new IllegalArgumentException(
+              format("Failed to create %s object. (<<init>>/%s(%s)): %s",
+                  this.targetClass.getSimpleName(),
+                  ret.length,
+                  Arrays.toString(ret),
+                  "argument type mismatch"));
+        }
+      }
+      return ret;
+    }
+
+    /**
+     * Looks up an argument for a parameter of the constructor specified by {@code index}
+     * from {@code context}.
+     *
+     * @param context A context from which an argument is looked up.
+     * @param index   An index of a parameter of the constructor.
+     * @throws IllegalArgumentException The argument cannot be passed to the constructor.
+     */
+    protected Object argument(Context context, int index) {
+      Object ret = lookup(context, this.constructorSlots[index], this.constructorInjectionPoints.get(index));
+      if (!Invokers.isAssignable(this.parameterTypes[index], ret)) {
+        throw new IllegalArgumentException(
+            format("Failed to create %s object. (<<init>>/%s[%s]=%s): %s",
+                this.targetClass.getSimpleName(),
+                this.parameterTypes.length,
+                index,
+                ret,
+                "argument type mismatch"));
+      }
+      return ret;
+    }
+
+    /**
+     * Looks up an {@code int} argument for a parameter of the constructor specified by
+     * {@code index} from {@code context} without boxing it.
+     *
+     * @param context A context from which an argument is looked up.
+     * @param index   An index of a parameter whose type is {@code int}.
+     * @throws IllegalArgumentException The argument cannot be converted to {@code int}.
+     */
+    protected int intArgument(Context context, int index) {
+      return Unboxing.lookupInt(context, this.constructorInjectionPoints.get(index).getRequest());
+    }
+
+    /**
+     * Looks up a {@code long} argument for a parameter of the constructor specified by
+     * {@code index} from {@code context} without boxing it.
+     *
+     * @param context A context from which an argument is looked up.
+     * @param index   An index of a parameter whose type is {@code long}.
+     * @throws IllegalArgumentException The argument cannot be converted to {@code long}.
+     */
+    protected long longArgument(Context context, int index) {
+      return Unboxing.lookupLong(context, this.constructorInjectionPoints.get(index).getRequest());
+    }
+
+    /**
+     * Looks up a {@code double} argument for a parameter of the constructor specified by
+     * {@code index} from {@code context} without boxing it.
+     *
+     * @param context A context from which an argument is looked up.
+     * @param index   An index of a parameter whose type is {@code double}.
+     * @throws IllegalArgumentException The argument cannot be converted to {@code double}.
+     */
+    protected double doubleArgument(Context context, int index) {
+      return Unboxing.lookupDouble(context, this.constructorInjectionPoints.get(index).getRequest());
+    }
+
+    /**
+     * Looks up a value for a field specified by {@code index} from {@code context}.
+     *
+     * @param context A context from which a value is looked up.
+     * @param index   An index of a field in the field injection points.
+     * @throws IllegalArgumentException The value cannot be set to the field.
+     */
+    protected Object fieldValue(Context context, int index) {
+      InjectionPoint injectionPoint = this.fieldInjectionPoints.get(index);
+      Object ret = lookup(context, this.fieldSlots[index], injectionPoint);
+      if (!Invokers.isAssignable(this.fieldTypes[index], ret)) {
+        Field f = injectionPoint.getTargetElement().asField();
+        throw new IllegalArgumentException(format(
+            "Can not set %s field %s.%s to %s",
+            f.getType().getName(),
+            f.getDeclaringClass().getName(),
+            f.getName(),
+            ret == null ? "null value" : ret.getClass().getName()));
+      }
+      return ret;
+    }
+
+    /**
+     * Looks up an {@code int} value for a field specified by {@code index} from
+     * {@code context} without boxing it.
+     *
+     * @param context A context from which a value is looked up.
+     * @param index   An index of a field whose type is {@code int}.
+     * @throws IllegalArgumentException The value cannot be converted to {@code int}.
+     */
+    protected int intFieldValue(Context context, int index) {
+      return Unboxing.lookupInt(context, this.fieldInjectionPoints.get(index).getRequest());
+    }
+
+    /**
+     * Looks up a {@code long} value for a field specified by {@code index} from
+     * {@code context} without boxing it.
+     *
+     * @param context A context from which a value is looked up.
+     * @param index   An index of a field whose type is {@code long}.
+     * @throws IllegalArgumentException The value cannot be converted to {@code long}.
+     */
+    protected long longFieldValue(Context context, int index) {
+      return Unboxing.lookupLong(context, this.fieldInjectionPoints.get(index).getRequest());
+    }
+
+    /**
+     * Looks up a {@code double} value for a field specified by {@code index} from
+     * {@code context} without boxing it.
+     *
+     * @param context A context from which a value is looked up.
+     * @param index   An index of a field whose type is {@code double}.
+     * @throws IllegalArgumentException The value cannot be converted to {@code double}.
+     */
+    protected double doubleFieldValue(Context context, int index) {
+      return Unboxing.lookupDouble(context, this.fieldInjectionPoints.get(index).getRequest());
+    }
+
+    /*
+     * Sets a value of an int, long or double field through a setter typed for it, so
+     * that the value is not boxed.
+     */
+    void injectUnboxed(MethodHandle setter, Object target, Context context, int index) {
+      Class<?> type = this.fieldTypes[index];
+      try {
+        if (type == int.class) {
+          setter.invokeExact(target, intFieldValue(context, index));
+        } else if (type == long.class) {
+          setter.invokeExact(target, longFieldValue(context, index));
+        } else {
+          setter.invokeExact(target, doubleFieldValue(context, index));
+        }
+      } catch (Throwable e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    /*
+     * Reads a value from a slot if the context holds values of this plan in slots, and
+     * looks it up by the request of an injection point otherwise.
+     */
+    private Object lookup(Context context, int slot, InjectionPoint injectionPoint) {
+      if (slot >= 0 && context instanceof IndexedContext && ((IndexedContext) context).plan == this)
+        return ((IndexedContext) context).valueAt(slot);
+      return context.lookup(injectionPoint.getRequest());
+    }
+
+    /**
+     * Returns a public constructor of {@code targetClass} whose parameter types are
+     * {@code parameterTypes}. This method is intended to be used by plans generated
+     * at compile time.
+     *
+     * @param targetClass    A class whose constructor is returned.
+     * @param parameterTypes Parameter types of the constructor.
+     * @param <T>            A type of objects instantiated by the constructor.
+     */
+    protected static <T> Constructor<T> constructorOf(Class<T> targetClass, Class<?>... parameterTypes) {
+      try {
+        return targetClass.getConstructor(parameterTypes);
+      } catch (NoSuchMethodException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    /**
+     * Returns a field named {@code name} declared in {@code declaringClass}. This method
+     * is intended to be used by plans generated at compile time.
+     *
+     * @param declaringClass A class which declares the field.
+     * @param name           A name of the field.
+     */
+    protected static Field fieldOf(Class<?> declaringClass, String name) {
+      try {
+        return declaringClass.getDeclaredField(name);
+      } catch (NoSuchFieldException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    private static int[] assignSlots(List<InjectionPoint> injectionPoints, List<InjectionPoint> slotPoints) {
+      int[] ret = new int[injectionPoints.size()];
+      for (int i = 0; i < ret.length; i++) {
+        InjectionPoint each = injectionPoints.get(i);
+        boolean direct = InjectionPoint.Delivery.of(each) == InjectionPoint.Delivery.DIRECT;
+        if (direct && Unboxing.isSpecialized(each.getRequest().getType())) {
+          ret[i] = -1;
+          continue;
+        }
+        int slot = direct
+            ? directSlotOf(each.getRequest(), slotPoints)
+            : -1;
+        if (slot < 0) {
+          slot = slotPoints.size();
+          slotPoints.add(each);
+        }
+        ret[i] = slot;
+      }
+      return ret;
+    }
+
+    private static Map<InjectionRequest, Integer> slotsByRequest(List<InjectionPoint> constructorInjectionPoints, int[] constructorSlots, List<InjectionPoint> fieldInjectionPoints, int[] fieldSlots) {
+      Map<InjectionRequest, Integer> ret = new IdentityHashMap<>();
+      putSlots(ret, constructorInjectionPoints, constructorSlots);
+      putSlots(ret, fieldInjectionPoints, fieldSlots);
+      return ret;
+    }
+
+    private static void putSlots(Map<InjectionRequest, Integer> slotsByRequest, List<InjectionPoint> injectionPoints, int[] slots) {
+      for (int i = 0; i < slots.length; i++) {
+        InjectionRequest request = injectionPoints.get(i).getRequest();
+        ////
+        // The first injection point of a request keeps its slot.
+        if (slots[i] >= 0 && !slotsByRequest.containsKey(request)) {
+          slotsByRequest.put(request, slots[i]);
+        }
+      }
+    }
+
+    private static int directSlotOf(InjectionRequest request, List<InjectionPoint> slotPoints) {
+      for (int i = 0; i < slotPoints.size(); i++) {
+        InjectionPoint each = slotPoints.get(i);
+        if (InjectionPoint.Delivery.of(each) == InjectionPoint.Delivery.DIRECT && each.getRequest().equals(request))
+          return i;
+      }
+      return -1;
+    }
+
+    private static Class<?>[] fieldTypesOf(List<InjectionPoint> fieldInjectionPoints) {
+      Class<?>[] ret = new Class<?>[fieldInjectionPoints.size()];
+      for (int i = 0; i < ret.length; i++) {
+        ret[i] = fieldInjectionPoints.get(i).getTargetElement().asField().getType();
+      }
+      return ret;
+    }
+  }
+
+  /**
+   * An implementation of {@code InjectionPlan} based on method handles.
+   * <p>
+   * The constructor and the fields of the target class are resolved to method handles
+   * by {@link Invokers} when this object is created and reused afterwards. Values of
+   * {@code int}, {@code long} and {@code double} are passed to handles typed for them,
+   * so that they are not boxed.
+   *
+   * @param <T> A type of objects instantiated by this plan.
+   */
+  class Impl<T> extends Base<T> {
+    private final MethodHandle   constructorInvoker;
+    /*
+     * A handle of (Context)Object which looks up arguments by itself, or null if no
+     * parameter of the constructor is int, long or double.
+     */
+    private final MethodHandle   constructorAdapter;
+    /*
+     * Setters of (Object,Object)void, except ones of (Object,int)void, (Object,long)void
+     * and (Object,double)void for fields of those types.
+     */
+    private final MethodHandle[] fieldSetters;
+
+    /**
+     * Creates an object of this class.
+     *
+     * @param targetClass A class whose objects are instantiated by this plan.
+     * @param constructor A constructor used for instantiation.
+     * @param fields      Fields to which values are injected.
+     */
+    public Impl(Class<T> targetClass, Constructor<T> constructor, Iterable<Field> fields) {
+      super(targetClass, constructor, fields);
+      this.constructorInvoker = Invokers.constructorInvoker(constructor);
+      this.constructorAdapter = hasUnboxedParameter(constructor)
+          ? Invokers.constructorAdapter(this)
+          : null;
+      List<InjectionPoint> fieldInjectionPoints = getFieldInjectionPoints();
+      this.fieldSetters = new MethodHandle[fieldInjectionPoints.size()];
+      for (int i = 0; i < this.fieldSetters.length; i++) {
+        Field field = fieldInjectionPoints.get(i).getTargetElement().asField();
+        this.fieldSetters[i] = Unboxing.isSpecialized(field.getType())
+            ? Invokers.unboxedFieldSetter(field)
+            : Invokers.fieldSetter(field);
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T newInstance(Context context) {
+      try {
+        if (this.constructorAdapter != null)
+          //noinspection unchecked
+          return (T) (Object) this.constructorAdapter.invokeExact(context);
+        Object[] args = arguments(context);
+        //noinspection unchecked
+        return (T) (Object) this.constructorInvoker.invokeExact(args);
+      } catch (Throwable e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void injectMembers(T target, Context context) {
+      for (int i = 0; i < this.fieldSetters.length; i++) {
+        if (Unboxing.isSpecialized(this.fieldTypes[i])) {
+          injectUnboxed(this.fieldSetters[i], target, context, i);
+          continue;
+        }
+        Object value = fieldValue(context, i);
+        try {
+          this.fieldSetters[i].invokeExact((Object) target, value);
+        } catch (Throwable e) {
+          throw Throwables.propagate(e);
+        }
+      }
+    }
+
+    private static boolean hasUnboxedParameter(Constructor<?> constructor) {
+      for (Class<?> each : constructor.getParameterTypes()) {
+        if (Unboxing.isSpecialized(each))
+          return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * An implementation of {@code InjectionPlan} which instantiates objects and injects
+   * fields through an {@link Instantiator} generated at runtime by {@link Generator}.
+   * <p>
+   * Injection points are shared with an {@link Impl} from which this object is
+   * created.
+   *
+   * @param <T> A type of objects instantiated by this plan.
+   */
+  class Generated<T> extends Base<T> {
+    private final Instantiator   instantiator;
+    private final MethodHandle   constructorAdapter;
+    private final MethodHandle[] fieldSetters;
+
+    Generated(Impl<T> impl, Instantiator instantiator) {
+      super(impl);
+      this.instantiator = checkNotNull(instantiator);
+      this.constructorAdapter = impl.constructorAdapter;
+      this.fieldSetters = impl.fieldSetters;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If a parameter of the constructor is {@code int}, {@code long} or {@code double},
+     * the constructor is invoked through a method handle instead of the instantiator, so
+     * that arguments are not boxed.
+     */
+    @Override
+    public T newInstance(Context context) {
+      try {
+        if (this.constructorAdapter != null)
+          //noinspection unchecked
+          return (T) (Object) this.constructorAdapter.invokeExact(context);
+        Object[] args = arguments(context);
+        //noinspection unchecked
+        return (T) this.instantiator.newInstance(args);
+      } catch (Throwable e) {
+        ////
+        // A generated instantiator rethrows checked exceptions thrown by a constructor
+        // as they are.
+        throw Throwables.propagate(e);
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Fields of {@code int}, {@code long} and {@code double} are set through method
+     * handles, so that values are not boxed.
+     */
+    @Override
+    public void injectMembers(T target, Context context) {
+      Object[] values = null;
+      for (int i = 0; i < this.fieldSetters.length; i++) {
+        if (Unboxing.isSpecialized(this.fieldTypes[i])) {
+          injectUnboxed(this.fieldSetters[i], target, context, i);
+          continue;
+        }
+        if (values == null) {
+          values = new Object[this.fieldSetters.length];
+        }
+        values[i] = fieldValue(context, i);
+      }
+      if (values != null)
+        this.instantiator.injectMembers(target, values);
+    }
+  }
+
+  /**
+   * A base class of instantiators generated by {@link Generator}. Generated subclasses
+   * invoke the constructor of a target class directly and assign accessible fields
+   * with plain {@code putfield} instructions. The other fields are assigned through
+   * method handles held by {@code fieldSetters}.
+   * <p>
+   * Values given to methods of this class must be validated by the caller beforehand.
+   */
+  abstract class Instantiator {
+    /**
+     * Method handles to set values to the fields which cannot be assigned by generated
+     * code directly. Elements for fields assigned directly, and ones for fields of
+     * {@code int}, {@code long} and {@code double}, are not used.
+     */
+    protected final MethodHandle[] fieldSetters;
+
+    /**
+     * Creates an object of this class.
+     *
+     * @param fieldSetters Method handles to set values to the fields of a target class.
+     */
+    protected Instantiator(MethodHandle[] fieldSetters) {
+      this.fieldSetters = checkNotNull(fieldSetters);
+    }
+
+    /**
+     * Creates a new object of a target class with {@code args}.
+     *
+     * @param args Arguments for the constructor.
+     */
+    public abstract Object newInstance(Object[] args);
+
+    /**
+     * Injects {@code values} to fields of {@code target}.
+     *
+     * @param target An object to which values are injected.
+     * @param values Values to be injected ordered in the same way as field injection points.
+     *               Fields of {@code int}, {@code long} and {@code double} are not
+     *               injected by this method.
+     */
+    public abstract void injectMembers(Object target, Object[] values);
+
+    /**
+     * Unwraps {@code value} as {@code boolean}. Called by generated code.
+     *
+     * @param value A value to be unwrapped.
+     */
+    public static boolean booleanValue(Object value) {
+      return (Boolean) value;
+    }
+
+    /**
+     * Unwraps {@code value} as {@code byte}. Called by generated code.
+     *
+     * @param value A value to be unwrapped.
+     */
+    public static byte byteValue(Object value) {
+      return (Byte) value;
+    }
+
+    /**
+     * Unwraps {@code value} as {@code char}. Called by generated code.
+     *
+     * @param value A value to be unwrapped.
+     */
+    public static char charValue(Object value) {
+      return (Character) value;
+    }
+
+    /**
+     * Unwraps {@code value} as {@code short}. Called by generated code.
+     *
+     * @param value A value to be unwrapped.
+     */
+    public static short shortValue(Object value) {
+      return ((Number) value).shortValue();
+    }
+
+    /**
+     * Unwraps {@code value} as {@code int}. Called by generated code.
+     *
+     * @param value A value to be unwrapped.
+     */
+    public static int intValue(Object value) {
+      return value instanceof Character
+          ? (Character) value
+          : ((Number) value).intValue();
+    }
+
+    /**
+     * Unwraps {@code value} as {@code long}. Called by generated code.
+     *
+     * @param value A value to be unwrapped.
+     */
+    public static long longValue(Object value) {
+      return value instanceof Character
+          ? (Character) value
+          : ((Number) value).longValue();
+    }
+
+    /**
+     * Unwraps {@code value} as {@code float}. Called by generated code.
+     *
+     * @param value A value to be unwrapped.
+     */
+    public static float floatValue(Object value) {
+      return value instanceof Character
+          ? (Character) value
+          : ((Number) value).floatValue();
+    }
+
+    /**
+     * Unwraps {@code value} as {@code double}. Called by generated code.
+     *
+     * @param value A value to be unwrapped.
+     */
+    public static double doubleValue(Object value) {
+      return value instanceof Character
+          ? (Character) value
+          : ((Number) value).doubleValue();
+    }
+  }
+
+  /**
+   * A utility class that generates {@link Instantiator}s at runtime.
+   * <p>
+   * Generated classes are defined by class loaders dedicated to them. Since they
+   * don't belong to the same runtime package as target classes, only public members
+   * of public classes can be accessed from them.
+   */
+  enum Generator {
+    ;
+
+    private static final String INSTANTIATOR_NAME  = Type.getInternalName(Instantiator.class);
+    private static final String MH_ARRAY_DESC      = Type.getDescriptor(MethodHandle[].class);
+    private static final String CONSTRUCTOR_DESC   = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(MethodHandle[].class));
+    private static final String NEW_INSTANCE_DESC  = Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(Object[].class));
+    private static final String INJECT_DESC        = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object.class), Type.getType(Object[].class));
+    private static final String INVOKE_EXACT_DESC  = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object.class), Type.getType(Object.class));
+    private static final String GENERATED_SUFFIX   = "$$FruitJuiceInstantiator";
+
+    /**
+     * Generates an {@link Instantiator} for the target class of {@code plan}. If the
+     * target class or its constructor cannot be accessed from generated code, {@code null}
+     * will be returned.
+     *
+     * @param plan A plan for which an instantiator is generated.
+     */
+    static Instantiator generate(Impl<?> plan) {
+      Class<?> targetClass = plan.getTargetClass();
+      if (!isAccessible(targetClass) || Modifier.isAbstract(targetClass.getModifiers()))
+        return null;
+      for (Class<?> each : plan.getConstructor().getParameterTypes()) {
+        if (!isAccessible(each))
+          return null;
+      }
+      String name = targetClass.getName() + GENERATED_SUFFIX;
+      byte[] bytecode = generateBytecode(name.replace('.', '/'), plan);
+      try {
+        return (Instantiator) new Loader(targetClass.getClassLoader())
+            .define(name, bytecode)
+            .getConstructor(MethodHandle[].class)
+            .newInstance(new Object[] { plan.fieldSetters.clone() });
+      } catch (ReflectiveOperationException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    private static byte[] generateBytecode(String internalName, Impl<?> plan) {
+      ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+      cw.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, internalName, null, INSTANTIATOR_NAME, null);
+
+      MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, null, null);
+      mv.visitCode();
+      mv.visitVarInsn(Opcodes.ALOAD, 0);
+      mv.visitVarInsn(Opcodes.ALOAD, 1);
+      mv.visitMethodInsn(Opcodes.INVOKESPECIAL, INSTANTIATOR_NAME, "<init>", CONSTRUCTOR_DESC, false);
+      mv.visitInsn(Opcodes.RETURN);
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+
+      Constructor<?> constructor = plan.getConstructor();
+      String targetName = Type.getInternalName(plan.getTargetClass());
+      mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "newInstance", NEW_INSTANCE_DESC, null, null);
+      mv.visitCode();
+      mv.visitTypeInsn(Opcodes.NEW, targetName);
+      mv.visitInsn(Opcodes.DUP);
+      Class<?>[] parameterTypes = constructor.getParameterTypes();
+      for (int i = 0; i < parameterTypes.length; i++) {
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        pushInt(mv, i);
+        mv.visitInsn(Opcodes.AALOAD);
+        convert(mv, parameterTypes[i]);
+      }
+      mv.visitMethodInsn(Opcodes.INVOKESPECIAL, targetName, "<init>", Type.getConstructorDescriptor(constructor), false);
+      mv.visitInsn(Opcodes.ARETURN);
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+
+      mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "injectMembers", INJECT_DESC, null, null);
+      mv.visitCode();
+      List<InjectionPoint> fieldInjectionPoints = plan.getFieldInjectionPoints();
+      for (int i = 0; i < fieldInjectionPoints.size(); i++) {
+        Field field = fieldInjectionPoints.get(i).getTargetElement().asField();
+        if (Unboxing.isSpecialized(field.getType()))
+          continue;
+        if (isAccessible(field)) {
+          String ownerName = Type.getInternalName(field.getDeclaringClass());
+          mv.visitVarInsn(Opcodes.ALOAD, 1);
+          mv.visitTypeInsn(Opcodes.CHECKCAST, ownerName);
+          mv.visitVarInsn(Opcodes.ALOAD, 2);
+          pushInt(mv, i);
+          mv.visitInsn(Opcodes.AALOAD);
+          convert(mv, field.getType());
+          mv.visitFieldInsn(Opcodes.PUTFIELD, ownerName, field.getName(), Type.getDescriptor(field.getType()));
+        } else {
+          mv.visitVarInsn(Opcodes.ALOAD, 0);
+          mv.visitFieldInsn(Opcodes.GETFIELD, INSTANTIATOR_NAME, "fieldSetters", MH_ARRAY_DESC);
+          pushInt(mv, i);
+          mv.visitInsn(Opcodes.AALOAD);
+          mv.visitVarInsn(Opcodes.ALOAD, 1);
+          mv.visitVarInsn(Opcodes.ALOAD, 2);
+          pushInt(mv, i);
+          mv.visitInsn(Opcodes.AALOAD);
+          mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(MethodHandle.class), "invokeExact", INVOKE_EXACT_DESC, false);
+        }
+      }
+      mv.visitInsn(Opcodes.RETURN);
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+
+      cw.visitEnd();
+      return cw.toByteArray();
+    }
+
+    private static void convert(MethodVisitor mv, Class<?> type) {
+      if (type.isPrimitive()) {
+        mv.visitMethodInsn(
+            Opcodes.INVOKESTATIC,
+            INSTANTIATOR_NAME,
+            type.getName() + "Value",
+            Type.getMethodDescriptor(Type.getType(type), Type.getType(Object.class)),
+            false);
+      } else if (type != Object.class) {
+        mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
+      }
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+      if (value <= 5) {
+        mv.visitInsn(Opcodes.ICONST_0 + value);
+      } else if (value <= Byte.MAX_VALUE) {
+        mv.visitIntInsn(Opcodes.BIPUSH, value);
+      } else {
+        mv.visitIntInsn(Opcodes.SIPUSH, value);
+      }
+    }
+
+    private static boolean isAccessible(Class<?> type) {
+      while (type.isArray()) {
+        type = type.getComponentType();
+      }
+      return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+    }
+
+    private static boolean isAccessible(Field field) {
+      return Modifier.isPublic(field.getModifiers())
+          && isAccessible(field.getDeclaringClass())
+          && isAccessible(field.getType());
+    }
+
+    private static class Loader extends ClassLoader {
+      Loader(ClassLoader parent) {
+        super(parent);
+      }
+
+      Class<?> define(String name, byte[] bytecode) {
+        return defineClass(name, bytecode, 0, bytecode.length);
+      }
+
+      /**
+       * Resolves classes of FruitJuice itself even if they are not visible from the
+       * class loader of a target class.
+       */
+      @Override
+      protected Class<?> findClass(String name) throws ClassNotFoundException {
+        return Instantiator.class.getClassLoader().loadClass(name);
+      }
+    }
+  }
+
+  /**
+   * A utility class that resolves constructors and fields to method handles.
+   * <p>
+   * Since access checks are performed only once, when a handle is resolved, the
+   * accessibility of a resolved member doesn't need to be toggled on every injection.
+   */
+  enum Invokers {
+    ;
+
+    private static final MethodType CONSTRUCTOR_INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+    private static final MethodType FIELD_SETTER_TYPE        = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_ADAPTER_TYPE = MethodType.methodType(Object.class, Context.class);
+
+    private static final Multimap<Class<?>, Class<?>> WIDENING_CONVERSIONS = ImmutableMultimap.<Class<?>, Class<?>>builder()
+        .putAll(byte.class, short.class, int.class, long.class, float.class, double.class)
+        .putAll(short.class, int.class, long.class, float.class, double.class)
+        .putAll(char.class, int.class, long.class, float.class, double.class)
+        .putAll(int.class, long.class, float.class, double.class)
+        .putAll(long.class, float.class, double.class)
+        .putAll(float.class, double.class)
+        .build();
+
+    /**
+     * Returns a method handle that invokes {@code constructor} with arguments given
+     * as an {@code Object[]}. The type of the returned handle is {@code (Object[])Object}.
+     * <p>
+     * Same as {@link #fieldSetter(Field)}, {@code constructor} will be made accessible
+     * by this method so that public constructors of non-public classes can be invoked.
+     *
+     * @param constructor A constructor to be invoked by the returned handle.
+     */
+    public static MethodHandle constructorInvoker(Constructor<?> constructor) {
+      checkNotNull(constructor).setAccessible(true);
+      try {
+        return MethodHandles.lookup().unreflectConstructor(constructor)
+            .asSpreader(Object[].class, constructor.getParameterTypes().length)
+            .asType(CONSTRUCTOR_INVOKER_TYPE);
+      } catch (IllegalAccessException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    /**
+     * Returns a method handle that sets a value to {@code field} of a given object.
+     * The type of the returned handle is {@code (Object,Object)void}.
+     * <p>
+     * {@code field} will be made accessible by this method. Note that {@code Field}
+     * objects returned by {@code Class#getDeclaredFields()} are copies, and therefore
+     * changing accessibility of them doesn't affect other threads or plans.
+     *
+     * @param field A field to be set by the returned handle.
+     */
+    public static MethodHandle fieldSetter(Field field) {
+      checkNotNull(field).setAccessible(true);
+      try {
+        return MethodHandles.lookup().unreflectSetter(field).asType(FIELD_SETTER_TYPE);
+      } catch (IllegalAccessException e) {
+        ////
+        // This path cannot be tested because the field is set accessible beforehand.
+        throw Throwables.propagate(e);
+      }
+    }
+
+    /**
+     * Returns a method handle that sets a value to {@code field}, whose type is
+     * {@code int}, {@code long} or {@code double}, of a given object without boxing it.
+     * The type of the returned handle is {@code (Object,int)void}, {@code (Object,long)void}
+     * or {@code (Object,double)void}.
+     *
+     * @param field A field to be set by the returned handle.
+     * @see #fieldSetter(Field)
+     */
+    public static MethodHandle unboxedFieldSetter(Field field) {
+      checkArgument(Unboxing.isSpecialized(checkNotNull(field).getType()), "'%s' is not int, long or double", field);
+      field.setAccessible(true);
+      try {
+        return MethodHandles.lookup().unreflectSetter(field)
+            .asType(MethodType.methodType(void.class, Object.class, field.getType()));
+      } catch (IllegalAccessException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    /**
+     * Returns a method handle that invokes the constructor of {@code plan} with
+     * arguments looked up from a given context by {@code plan}. The type of the
+     * returned handle is {@code (Context)Object}.
+     * <p>
+     * Arguments of {@code int}, {@code long} and {@code double} are looked up by
+     * {@code intArgument}, {@code longArgument} and {@code doubleArgument} of {@code plan}
+     * and passed to the constructor without being boxed.
+     *
+     * @param plan A plan whose constructor is invoked by the returned handle.
+     */
+    public static MethodHandle constructorAdapter(Base<?> plan) {
+      Constructor<?> constructor = plan.getConstructor();
+      constructor.setAccessible(true);
+      Class<?>[] parameterTypes = constructor.getParameterTypes();
+      try {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle ret = lookup.unreflectConstructor(constructor);
+        MethodHandle[] arguments = new MethodHandle[parameterTypes.length];
+        for (int i = 0; i < arguments.length; i++) {
+          Class<?> type = parameterTypes[i];
+          MethodHandle argument = Unboxing.isSpecialized(type)
+              ? lookup.findVirtual(Base.class, type.getName() + "Argument", MethodType.methodType(type, Context.class, int.class))
+              : lookup.findVirtual(Base.class, "argument", MethodType.methodType(Object.class, Context.class, int.class));
+          arguments[i] = MethodHandles.insertArguments(argument, 2, i)
+              .bindTo(plan)
+              .asType(MethodType.methodType(type, Context.class));
+        }
+        ret = MethodHandles.filterArguments(ret, 0, arguments);
+        ////
+        // All the parameters are given the same context.
+        return MethodHandles.permuteArguments(
+            ret.asType(MethodType.methodType(Object.class, Collections.<Class<?>>nCopies(parameterTypes.length, Context.class))),
+            CONSTRUCTOR_ADAPTER_TYPE,
+            new int[parameterTypes.length]);
+      } catch (ReflectiveOperationException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    /**
+     * Returns {@code true} if {@code value} can be passed to a handle returned by
+     * this class as a value of {@code type}. Same as Java's core reflection, unwrapping
+     * and widening conversions are taken into account for primitive types.
+     *
+     * @param type  A type of a constructor parameter or a field.
+     * @param value A value to be examined.
+     */
+    public static boolean isAssignable(Class<?> type, Object value) {
+      if (value == null) {
+        return !type.isPrimitive();
+      }
+      if (!type.isPrimitive()) {
+        return type.isInstance(value);
+      }
+      Class<?> valueType = Primitives.unwrap(value.getClass());
+      return valueType == type || WIDENING_CONVERSIONS.containsEntry(valueType, type);
+    }
+  }
+
+  /**
+   * A process-wide cache of plans created by {@link Factory#create(Class)}, which is
+   * shared by all the injectors. A plan holds the metadata of its target class, i.e.,
+   * the constructor used for instantiation, the fields to be injected and the requests
+   * of them, and it is computed only once per class. Errors found in a class are
+   * cached as well, so an invalid class is not scanned again.
+   * <p>
+   * Plans generated at compile time are looked up only once per class, too, so that
+   * injectors don't search class loaders for them every time. Likewise, code for
+   * {@link Injector.Engine#GENERATED} is generated and defined only once per class.
+   * <p>
+   * Plans are held by {@link ClassValue}, so a cached plan doesn't prevent its target
+   * class and the class loader of it from being garbage-collected.
+   *
+   * @see Injector.Engine#REFLECTIVE
+   * @see Injector.Engine#GENERATED
+   */
+  enum Cache {
+    ;
+
+    private static final ClassValue<Entry> PLANS = new ClassValue<Entry>() {
+      @Override
+      protected Entry computeValue(Class<?> type) {
+        long start = System.nanoTime();
+        try {
+          return new Entry(Factory.createImpl(type), null, start);
+        } catch (RuntimeException e) {
+          return new Entry(null, e, start);
+        }
+      }
+    };
+
+    private static final ClassValue<Optional<InjectionPlan<?>>> PRECOMPILED_PLANS = new ClassValue<Optional<InjectionPlan<?>>>() {
+      @Override
+      protected Optional<InjectionPlan<?>> computeValue(Class<?> type) {
+        return Optional.<InjectionPlan<?>>fromNullable(Factory.createPrecompiled(type));
+      }
+    };
+
+    private static final ClassValue<GeneratedEntry> INSTANTIATORS = new ClassValue<GeneratedEntry>() {
+      @Override
+      protected GeneratedEntry computeValue(Class<?> type) {
+        return new GeneratedEntry();
+      }
+    };
+
+    private static final AtomicLong HITS   = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private static class Entry {
+      private final Impl<?>          plan;
+      private final RuntimeException failure;
+      /*
+       * computeValue can run more than once for a class under races, whereas only one
+       * of the entries is cached. The first caller which obtains the cached one counts
+       * the miss.
+       */
+      private final AtomicBoolean    counted = new AtomicBoolean();
+      /*
+       * When computeValue started to create this entry, and how long it took.
+       */
+      private final long             start;
+      private final long             nanos;
+
+      private Entry(Impl<?> plan, RuntimeException failure, long start) {
+        this.plan = plan;
+        this.failure = failure;
+        this.start = start;
+        this.nanos = System.nanoTime() - start;
+      }
+    }
+
+    private static class GeneratedEntry {
+      /*
+       * An instantiator generated for the class, or absent if code cannot be generated
+       * for it. null until it is generated. Written only while holding this object.
+       */
+      private volatile Optional<Instantiator> instantiator;
+    }
+
+    /**
+     * Returns a plan which shares injection points of {@code impl} and whose instantiation
+     * and field injection are performed by code generated at runtime. Code is generated
+     * only once per target class and the generated class is shared by all the injectors,
+     * so that classes are not defined again for each injector. If code cannot be generated
+     * for the class, {@code impl} itself will be returned.
+     *
+     * @param impl A plan from which the returned plan is created.
+     * @param <T>  A type of objects instantiated by the returned plan.
+     * @see Factory#createGenerated(Impl)
+     */
+    public static <T> InjectionPlan<T> getGenerated(Impl<T> impl) {
+      GeneratedEntry entry = INSTANTIATORS.get(checkNotNull(impl).getTargetClass());
+      Optional<Instantiator> instantiator = entry.instantiator;
+      if (instantiator == null) {
+        synchronized (entry) {
+          if ((instantiator = entry.instantiator) == null) {
+            entry.instantiator = instantiator = Optional.fromNullable(Factory.generate(impl));
+          }
+        }
+      }
+      return instantiator.isPresent()
+          ? new Generated<>(impl, instantiator.get())
+          : impl;
+    }
+
+    /**
+     * Returns a plan for {@code targetClass}. If it is not cached yet, it will be
+     * created by {@link Factory#create(Class)} and cached.
+     *
+     * @param targetClass A class for which a plan is returned.
+     * @param <T>         A type of objects instantiated by the returned plan.
+     * @throws RuntimeException Errors are found in {@code targetClass}. The error found
+     *                          first is attached as the cause.
+     */
+    public static <T> Impl<T> get(Class<T> targetClass) {
+      return get(targetClass, InjectionListener.NONE);
+    }
+
+    /**
+     * Returns a plan for {@code targetClass} as {@link #get(Class)} does. If the plan is
+     * created by this call, {@link InjectionListener.Event#PLAN} is reported to
+     * {@code listener} with the time it took to create it. Since a plan is created only
+     * once per class, the event is reported only to the first caller.
+     *
+     * @param targetClass A class for which a plan is returned.
+     * @param listener    A listener to which the creation of the plan is reported.
+     * @param <T>         A type of objects instantiated by the returned plan.
+     */
+    static <T> Impl<T> get(Class<T> targetClass, InjectionListener listener) {
+      Entry entry = PLANS.get(checkNotNull(targetClass));
+      if (!entry.counted.get() && entry.counted.compareAndSet(false, true)) {
+        MISSES.incrementAndGet();
+        if (entry.failure == null && listener != InjectionListener.NONE)
+          listener.onEvent(InjectionListener.Event.PLAN, targetClass, null, null, entry.start, entry.nanos);
+      } else {
+        HITS.incrementAndGet();
+      }
+      if (entry.failure != null)
+        ////
+        // A new exception is thrown every time so that it shows the caller.
+        throw entry.failure instanceof IllegalArgumentException
+            ? new IllegalArgumentException(entry.failure.getMessage(), entry.failure)
+            : new RuntimeException(entry.failure.getMessage(), entry.failure);
+      //noinspection unchecked
+      return (Impl<T>) entry.plan;
+    }
+
+    /**
+     * Returns a plan generated at compile time for {@code targetClass}, or {@code null}
+     * if none is found. Lookups of this method are not counted by {@link #getStats()}.
+     *
+     * @param targetClass A class for which a plan is returned.
+     * @param <T>         A type of objects instantiated by the returned plan.
+     * @see Factory#createPrecompiled(Class)
+     */
+    public static <T> InjectionPlan<T> getPrecompiled(Class<T> targetClass) {
+      //noinspection unchecked
+      return (InjectionPlan<T>) PRECOMPILED_PLANS.get(checkNotNull(targetClass)).orNull();
+    }
+
+    /**
+     * Returns statistics of this cache accumulated over all the injectors in this
+     * process.
+     */
+    public static Stats getStats() {
+      return new Stats(HITS.get(), MISSES.get());
+    }
+
+    /**
+     * Statistics of {@link Cache}. An object of this class is a snapshot taken when it
+     * is created.
+     */
+    public static class Stats {
+      private final long hitCount;
+      private final long missCount;
+
+      private Stats(long hitCount, long missCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+      }
+
+      /**
+       * Returns the number of times cached plans were returned.
+       */
+      public long getHitCount() {
+        return this.hitCount;
+      }
+
+      /**
+       * Returns the number of classes whose plans were created. Creations which failed
+       * are counted as well.
+       */
+      public long getMissCount() {
+        return this.missCount;
+      }
+
+      /**
+       * Returns the ratio of hits to all the requests, or 1.0 if nothing is requested yet.
+       */
+      public double getHitRate() {
+        long requests = this.hitCount + this.missCount;
+        return requests == 0
+            ? 1.0
+            : (double) this.hitCount / requests;
+      }
+
+      @Override
+      public String toString() {
+        return format("hit=%s; miss=%s", getHitCount(), getMissCount());
+      }
+    }
+  }
+
+  /**
+   * A factory class that creates {@code InjectionPlan} objects.
+   */
+  enum Factory {
+    ;
+
+    /**
+     * A suffix of names of plan classes generated at compile time by the annotation
+     * processor of FruitJuice.
+     */
+    public static final String PRECOMPILED_CLASS_SUFFIX = "$$FruitJuiceInjector";
+
+    /**
+     * Creates an {@code InjectionPlan} for {@code targetClass}.
+     * The appropriate constructor is determined and fields to be injected are
+     * validated by this method.
+     *
+     * @param targetClass A class for which a plan is created.
+     * @param <T>         A type of objects instantiated by the returned plan.
+     */
+    public static <T> InjectionPlan<T> create(Class<T> targetClass) {
+      return createImpl(targetClass);
+    }
+
+    /**
+     * Creates an {@code InjectionPlan} for {@code targetClass} whose instantiation
+     * and field injection are performed by code generated at runtime.
+     * If code cannot be generated for the class, e.g., the class is not public or
+     * the bytecode library is not available, a plan created by {@link #create(Class)}
+     * will be returned.
+     *
+     * @param targetClass A class for which a plan is created.
+     * @param <T>         A type of objects instantiated by the returned plan.
+     */
+    public static <T> InjectionPlan<T> createGenerated(Class<T> targetClass) {
+      return createGenerated(createImpl(targetClass));
+    }
+
+    /**
+     * Creates an {@code InjectionPlan} which shares injection points of {@code impl}
+     * and whose instantiation and field injection are performed by code generated at
+     * runtime. If code cannot be generated, {@code impl} itself will be returned.
+     *
+     * @param impl A plan from which the returned plan is created.
+     * @param <T>  A type of objects instantiated by the returned plan.
+     */
+    public static <T> InjectionPlan<T> createGenerated(Impl<T> impl) {
+      Instantiator instantiator = generate(impl);
+      return instantiator == null
+          ? impl
+          : new Generated<>(impl, instantiator);
+    }
+
+    static Instantiator generate(Impl<?> impl) {
+      try {
+        return Generator.generate(impl);
+      } catch (LinkageError e) {
+        return null;
+      }
+    }
+
+    /**
+     * Returns a plan generated at compile time for {@code targetClass}, which is
+     * an instance of a class named {@code targetClass}'s name followed by
+     * {@link #PRECOMPILED_CLASS_SUFFIX}. If no such class is found, {@code null} will
+     * be returned.
+     *
+     * @param targetClass A class for which a plan is returned.
+     * @param <T>         A type of objects instantiated by the returned plan.
+     */
+    public static <T> InjectionPlan<T> createPrecompiled(Class<T> targetClass) {
+      Class<?> planClass;
+      try {
+        planClass = Class.forName(checkNotNull(targetClass).getName() + PRECOMPILED_CLASS_SUFFIX, true, targetClass.getClassLoader());
+      } catch (ClassNotFoundException e) {
+        return null;
+      }
+      checkArgument(
+          InjectionPlan.class.isAssignableFrom(planClass),
+          "'%s' was found but it is not an implementation of '%s'",
+          planClass.getName(),
+          InjectionPlan.class.getSimpleName());
+      try {
+        //noinspection unchecked
+        return (InjectionPlan<T>) planClass.getDeclaredConstructor().newInstance();
+      } catch (InvocationTargetException e) {
+        throw Throwables.propagate(e.getCause());
+      } catch (InstantiationException | IllegalAccessException | NoSuchMethodException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    static <T> Impl<T> createImpl(Class<T> targetClass) {
+      checkNotNull(targetClass);
+      return new Impl<>(
+          targetClass,
+          getAppropriateConstructorFrom(targetClass),
+          validateFields(targetClass, Injector.Utils.getTargetFieldsFromClass(targetClass))
+      );
+    }
+
+    private static <T> Constructor<T> getAppropriateConstructorFrom(Class<T> targetClass) {
+      //noinspection unchecked
+      Iterable<Constructor<T>> constructors = filter(
+          asList((Constructor<T>[]) targetClass.getConstructors()),
+          new Predicate<Constructor<T>>() {
+            @Override
+            public boolean apply(Constructor<T> constructor) {
+              return constructor.isAnnotationPresent(Inject.class);
+            }
+          }
+      );
+      if (size(constructors) == 1) {
+        return Iterables.get(constructors, 0);
+      }
+      if (size(constructors) == 0) {
+        try {
+          return targetClass.getConstructor();
+        } catch (NoSuchMethodException e) {
+          throw new RuntimeException(format("No available constructor for injection is found in '%s'", targetClass.getCanonicalName()), e);
+        }
+      }
+      throw new RuntimeException(format(
+          "More than one constructors annotated with '@%s' are found in '%s'",
+          Inject.class.getSimpleName(),
+          targetClass.getCanonicalName()
+      ));
+    }
+
+    private static Iterable<Field> validateFields(Class<?> targetClass, Iterable<Field> fields) {
+      List<String> errors = new ArrayList<>();
+      for (Field each : fields) {
+        List<String> errorsInField = new ArrayList<>(2);
+        if (Modifier.isFinal(each.getModifiers())) {
+          errorsInField.add(format("Field '%s' is marked final.", each.getName()));
+        }
+        if (Modifier.isStatic(each.getModifiers())) {
+          errorsInField.add(format("Field '%s' is marked static.", each.getName()));
+        }
+        if (!errorsInField.isEmpty()) {
+          errors.add(Injector.Utils.join(",", errorsInField));
+        }
+      }
+      checkArgument(errors.isEmpty(), "Following error(s) are found in class '%s': %s", targetClass.getCanonicalName(), errors);
+      return fields;
+    }
+  }
+}
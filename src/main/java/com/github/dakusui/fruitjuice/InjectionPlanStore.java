@@ -0,0 +1,320 @@
+package com.github.dakusui.fruitjuice;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * A persistent store of injection plans, which lets later runs skip reflective scans
+ * of classes and validations of them.
+ * <p>
+ * A store file is written by {@link #write(File, Iterable)} and holds, per class, the
+ * signature of the constructor used for instantiation and the fields to be injected in
+ * order, including ones defined in super-classes. It also holds a stamp computed from time stamps and sizes of class files of the class
+ * and its super-classes, or of jar files which contain them. A stored plan is used only
+ * if its stamp matches the class loaded at runtime.
+ * <p>
+ * A store file is read through a memory-mapped file and entries are decoded only when
+ * they are requested. An entry is decoded and its stamp is validated only once per class
+ * by a store, and the plan is shared by all the injectors which use the store. Since
+ * injection points hold annotations of fields and constructor parameters, which are
+ * not stored, they are created from the decoded constructor and fields.
+ * <p>
+ * Close a store when no more plans are loaded from it, e.g., after
+ * {@link Injector.Extended#prepare(Class[])}, so that the mapping is released when it
+ * is garbage-collected even if the store itself is still referenced. Plans already loaded remain available after that, and
+ * plans for the other classes are computed by injectors as if they were not stored.
+ *
+ * <pre>
+ *   InjectionPlanStore.write(file, classes);   // e.g., at build time
+ *   ...
+ *   try (InjectionPlanStore store = InjectionPlanStore.open(file)) {
+ *     Injector.Extended injector = new Injector.Impl(builder, Injector.Engine.REFLECTIVE, store);
+ *     injector.prepare(roots);
+ *     ...
+ *   }
+ * </pre>
+ *
+ * @see Injector.Impl#Impl(Context.Builder, Injector.Engine, InjectionPlanStore)
+ */
+public final class InjectionPlanStore implements Closeable {
+  private static final int MAGIC   = 0x464a5053; // "FJPS"
+  private static final int VERSION = 2;
+
+  private static final Map<String, Class<?>> PRIMITIVES = ImmutableMap.<String, Class<?>>builder()
+      .put("boolean", boolean.class)
+      .put("byte", byte.class)
+      .put("char", char.class)
+      .put("short", short.class)
+      .put("int", int.class)
+      .put("long", long.class)
+      .put("float", float.class)
+      .put("double", double.class)
+      .build();
+
+  private final Map<String, Integer>                        offsets;
+  /*
+   * Plans loaded from this store, or absent ones for stale entries.
+   */
+  private final ClassValue<Optional<InjectionPlan.Impl<?>>> plans = new ClassValue<Optional<InjectionPlan.Impl<?>>>() {
+    @Override
+    protected Optional<InjectionPlan.Impl<?>> computeValue(Class<?> type) {
+      return Optional.<InjectionPlan.Impl<?>>fromNullable(decode(type));
+    }
+  };
+  /*
+   * Entries in the mapping, which are guarded by this object and set to null when this
+   * object is closed.
+   */
+  private ByteBuffer                                        buffer;
+  /*
+   * Stamps of jar files, which are examined only once by this object. Guarded by
+   * this object.
+   */
+  private final Map<String, Long>                           jarStamps = new HashMap<>();
+
+  private InjectionPlanStore(ByteBuffer buffer, Map<String, Integer> offsets) {
+    this.buffer = buffer;
+    this.offsets = offsets;
+  }
+
+  /**
+   * Opens a store file written by {@link #write(File, Iterable)}.
+   *
+   * @param file A store file.
+   * @throws IOException              Failed to read the file.
+   * @throws IllegalArgumentException The file is not a store file or its version is not supported.
+   */
+  public static InjectionPlanStore open(File file) throws IOException {
+    MappedByteBuffer buffer;
+    try (RandomAccessFile f = new RandomAccessFile(checkNotNull(file), "r");
+         FileChannel channel = f.getChannel()) {
+      ////
+      // A mapping stays valid after the channel is closed.
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    checkArgument(buffer.remaining() >= 12 && buffer.getInt() == MAGIC, "'%s' is not a plan store", file);
+    int version = buffer.getInt();
+    checkArgument(version == VERSION, "Unsupported version of plan store '%s': %s", file, version);
+    int numEntries = buffer.getInt();
+    Map<String, Integer> offsets = new HashMap<>(numEntries * 2);
+    for (int i = 0; i < numEntries; i++) {
+      String className = readString(buffer);
+      offsets.put(className, buffer.getInt());
+    }
+    return new InjectionPlanStore(buffer.slice(), offsets);
+  }
+
+  /**
+   * Computes plans for {@code classes} and writes them to {@code file}.
+   *
+   * @param file    A file to which plans are written.
+   * @param classes Classes whose plans are written.
+   * @throws IOException Failed to write the file.
+   */
+  public static void write(File file, Iterable<? extends Class<?>> classes) throws IOException {
+    ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    DataOutputStream entriesOut = new DataOutputStream(entries);
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    DataOutputStream headerOut = new DataOutputStream(header);
+    List<Class<?>> classList = new ArrayList<>();
+    for (Class<?> each : classes) {
+      classList.add(checkNotNull(each));
+    }
+    headerOut.writeInt(MAGIC);
+    headerOut.writeInt(VERSION);
+    headerOut.writeInt(classList.size());
+    Map<String, Long> jarStamps = new HashMap<>();
+    for (Class<?> each : classList) {
+      writeString(headerOut, each.getName());
+      headerOut.writeInt(entriesOut.size());
+      writeEntry(entriesOut, InjectionPlan.Factory.create(each), jarStamps);
+    }
+    try (OutputStream os = new FileOutputStream(checkNotNull(file))) {
+      header.writeTo(os);
+      entries.writeTo(os);
+    }
+  }
+
+  /**
+   * Returns a plan for {@code targetClass} stored in this object. If no plan is stored
+   * for it, the stored plan is stale, or this object was closed before the plan was
+   * loaded, {@code null} will be returned. The same plan is returned every time for
+   * a class.
+   *
+   * @param targetClass A class for which a plan is returned.
+   * @param <T>         A type of objects instantiated by the returned plan.
+   */
+  public <T> InjectionPlan.Impl<T> load(Class<T> targetClass) {
+    if (!this.offsets.containsKey(checkNotNull(targetClass).getName()))
+      return null;
+    //noinspection unchecked
+    return (InjectionPlan.Impl<T>) this.plans.get(targetClass).orNull();
+  }
+
+  /**
+   * Drops the reference to the mapping of the store file, which is released when it is
+   * garbage-collected. Plans which are not loaded yet can't be loaded after this method
+   * is called.
+   */
+  @Override
+  public synchronized void close() {
+    this.buffer = null;
+  }
+
+  /*
+   * Decodes an entry for a class, or returns null if it is stale. An entry is read
+   * while this object is locked so that it is not closed meanwhile.
+   */
+  private synchronized <T> InjectionPlan.Impl<T> decode(Class<T> targetClass) {
+    if (this.buffer == null)
+      return null;
+    ByteBuffer entry = this.buffer.duplicate();
+    entry.position(this.offsets.get(targetClass.getName()));
+    long stamp = entry.getLong();
+    if (stamp == -1 || stamp != stampOf(targetClass, this.jarStamps))
+      return null;
+    ClassLoader loader = targetClass.getClassLoader();
+    try {
+      Class<?>[] parameterTypes = new Class<?>[entry.getInt()];
+      for (int i = 0; i < parameterTypes.length; i++) {
+        parameterTypes[i] = classForName(readString(entry), loader);
+      }
+      List<Field> fields = new ArrayList<>();
+      for (int i = entry.getInt(); i > 0; i--) {
+        Class<?> declaringClass = classForName(readString(entry), loader);
+        fields.add(declaringClass.getDeclaredField(readString(entry)));
+      }
+      return new InjectionPlan.Impl<>(targetClass, targetClass.getConstructor(parameterTypes), fields);
+    } catch (ClassNotFoundException | NoSuchMethodException | NoSuchFieldException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the number of plans stored in this object.
+   */
+  public int size() {
+    return this.offsets.size();
+  }
+
+  @Override
+  public String toString() {
+    return format("store:%s", this.offsets.keySet());
+  }
+
+  private static void writeEntry(DataOutputStream out, InjectionPlan<?> plan, Map<String, Long> jarStamps) throws IOException {
+    out.writeLong(stampOf(plan.getTargetClass(), jarStamps));
+    Class<?>[] parameterTypes = plan.getConstructor().getParameterTypes();
+    out.writeInt(parameterTypes.length);
+    for (Class<?> each : parameterTypes) {
+      writeString(out, each.getName());
+    }
+    List<InjectionPoint> fieldInjectionPoints = plan.getFieldInjectionPoints();
+    out.writeInt(fieldInjectionPoints.size());
+    for (InjectionPoint each : fieldInjectionPoints) {
+      Field field = each.getTargetElement().asField();
+      writeString(out, field.getDeclaringClass().getName());
+      writeString(out, field.getName());
+    }
+  }
+
+  /*
+   * Computes a stamp from time stamps and sizes of class files of a class and its
+   * super-classes. A class in a jar file is stamped by the jar file, whose stamp is
+   * held by jarStamps once it is examined. -1 is returned if any file cannot be
+   * examined, which makes stored plans for the class never used.
+   */
+  private static long stampOf(Class<?> targetClass, Map<String, Long> jarStamps) {
+    long ret = 17;
+    for (Class<?> each = targetClass; each != null && each.getClassLoader() != null; each = each.getSuperclass()) {
+      URL classFile = each.getClassLoader().getResource(each.getName().replace('.', '/') + ".class");
+      if (classFile == null)
+        return -1;
+      try {
+        ////
+        // A connection of a jar entry only parses the URL until it is connected.
+        URLConnection connection = "jar".equals(classFile.getProtocol())
+            ? classFile.openConnection()
+            : null;
+        long stamp;
+        if (connection instanceof JarURLConnection) {
+          URL jarFile = ((JarURLConnection) connection).getJarFileURL();
+          Long cached = jarStamps.get(jarFile.toString());
+          if (cached == null) {
+            cached = stampOf(jarFile);
+            jarStamps.put(jarFile.toString(), cached);
+          }
+          stamp = cached;
+        } else {
+          stamp = stampOf(classFile);
+        }
+        if (stamp == -1)
+          return -1;
+        ret = 31 * ret + stamp;
+      } catch (IOException e) {
+        return -1;
+      }
+    }
+    return ret;
+  }
+
+  private static long stampOf(URL url) {
+    try {
+      if ("file".equals(url.getProtocol())) {
+        File file = new File(url.toURI());
+        return 31 * file.lastModified() + file.length();
+      }
+      URLConnection connection = url.openConnection();
+      long ret = 31 * connection.getLastModified() + connection.getContentLengthLong();
+      connection.getInputStream().close();
+      return ret;
+    } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+      return -1;
+    }
+  }
+
+  private static Class<?> classForName(String name, ClassLoader loader) throws ClassNotFoundException {
+    Class<?> ret = PRIMITIVES.get(name);
+    return ret != null
+        ? ret
+        : Class.forName(name, false, loader);
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
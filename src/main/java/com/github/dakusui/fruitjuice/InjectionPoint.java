@@ -2,8 +2,12 @@ package com.github.dakusui.fruitjuice;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
 import java.util.AbstractList;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+
 /**
  * An interface that represents a point at which a dependency injection by the
  * FruitJuice framework happens.
@@ -38,6 +42,125 @@ public interface InjectionPoint {
     FIELD
   }
 
+  /**
+   * Kinds of delivery of values to injection points. A delivery is determined by the
+   * declared type of an injection point, and given by {@link #of(InjectionPoint)}.
+   * <p>
+   * For {@link #LAZY} and {@link #PROVIDER}, the request of an injection point
+   * carries the type argument of the declared type, e.g., {@code ExecutorService} for
+   * {@code Lazy<ExecutorService>}, and values are not created until they are requested.
+   */
+  enum Delivery {
+    /**
+     * A value is created and injected directly.
+     */
+    DIRECT {
+      @Override
+      public Object wrap(Provider<?> provider) {
+        return provider.get();
+      }
+    },
+    /**
+     * A {@link Lazy} is injected, which creates a value on its first call and returns it afterwards.
+     */
+    LAZY {
+      @Override
+      public Object wrap(final Provider<?> provider) {
+        return new Lazy<Object>() {
+          private volatile Provider<?> unresolved = provider;
+          private          Object      value;
+
+          @Override
+          public Object get() {
+            if (this.unresolved != null) {
+              synchronized (this) {
+                if (this.unresolved != null) {
+                  this.value = this.unresolved.get();
+                  this.unresolved = null;
+                }
+              }
+            }
+            return this.value;
+          }
+
+          @Override
+          public String toString() {
+            return format("lazy:%s", this.unresolved == null ? this.value : "(unresolved)");
+          }
+        };
+      }
+    },
+    /**
+     * A {@link Provider} is injected, which requests a value on every call.
+     */
+    PROVIDER {
+      @Override
+      public Object wrap(Provider<?> provider) {
+        return provider;
+      }
+    };
+
+    /**
+     * Returns an object to be injected to an injection point of this delivery.
+     *
+     * @param provider A provider that requests a value from a {@code Context.Builder}.
+     */
+    public abstract Object wrap(Provider<?> provider);
+
+    /**
+     * Returns how a value for {@code injectionPoint} is delivered to its target, which
+     * is determined by the declared type of its target element.
+     *
+     * @param injectionPoint An injection point.
+     */
+    public static Delivery of(InjectionPoint injectionPoint) {
+      if (injectionPoint instanceof DeliveredInjectionPoint)
+        return ((DeliveredInjectionPoint) injectionPoint).getDelivery();
+      TargetElement targetElement = injectionPoint.getTargetElement();
+      return of(targetElement.getType() == Type.FIELD
+          ? targetElement.asField().getType()
+          : targetElement.asConstructorParameter().getType());
+    }
+
+    /**
+     * Returns a delivery of an injection point whose declared type is {@code type}.
+     *
+     * @param type A declared type of an injection point.
+     */
+    public static Delivery of(Class<?> type) {
+      if (Lazy.class.equals(type))
+        return LAZY;
+      if (Provider.class.equals(type))
+        return PROVIDER;
+      return DIRECT;
+    }
+
+    /**
+     * Returns a type of values requested by an injection point whose declared type
+     * is {@code genericType}.
+     *
+     * @param type        An erased declared type of an injection point.
+     * @param genericType A declared type of an injection point.
+     * @throws IllegalArgumentException {@code Lazy} or {@code Provider} is declared
+     *                                  without a concrete type argument.
+     */
+    static Class<?> requestedTypeOf(Class<?> type, java.lang.reflect.Type genericType) {
+      if (of(type) == DIRECT)
+        return type;
+      java.lang.reflect.Type ret = genericType instanceof ParameterizedType
+          ? ((ParameterizedType) genericType).getActualTypeArguments()[0]
+          : null;
+      if (ret instanceof ParameterizedType)
+        ret = ((ParameterizedType) ret).getRawType();
+      checkArgument(
+          ret instanceof Class,
+          "A concrete type argument is required for '%s' but '%s' was given",
+          type.getSimpleName(),
+          genericType);
+      return (Class<?>) ret;
+    }
+  }
+
   /**
    * An interface that represents an element an {@code InjectionPoint} targets.
    */
@@ -111,10 +234,17 @@ public interface InjectionPoint {
      * @param targetField A field for which an {@code InjectionPoint} is created.
      */
     public static InjectionPoint createFromField(final Field targetField) {
-      return new InjectionPoint() {
+      final InjectionRequest request = InjectionRequest.Factory.createFromField(targetField);
+      final Delivery delivery = Delivery.of(targetField.getType());
+      return new DeliveredInjectionPoint() {
         @Override
         public InjectionRequest getRequest() {
-          return InjectionRequest.Factory.createFromField(targetField);
+          return request;
+        }
+
+        @Override
+        public Delivery getDelivery() {
+          return delivery;
         }
 
         @Override
@@ -153,12 +283,19 @@ public interface InjectionPoint {
 
         @Override
         public InjectionPoint get(final int index) {
-          return new InjectionPoint() {
+          final InjectionRequest request = InjectionRequest.Factory.createFromConstructorParameter(
+              targetConstructor,
+              index);
+          final Delivery delivery = Delivery.of(targetConstructor.getParameterTypes()[index]);
+          return new DeliveredInjectionPoint() {
             @Override
             public InjectionRequest getRequest() {
-              return InjectionRequest.Factory.createFromConstructorParameter(
-                  targetConstructor,
-                  index);
+              return request;
+            }
+
+            @Override
+            public Delivery getDelivery() {
+              return delivery;
             }
 
             @Override
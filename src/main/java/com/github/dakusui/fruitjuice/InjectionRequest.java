@@ -1,16 +1,20 @@
 package com.github.dakusui.fruitjuice;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Iterables;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.util.Arrays;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
 
-import static com.google.common.collect.Iterables.filter;
-import static com.google.common.collect.Iterables.isEmpty;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.String.format;
 
 /**
@@ -69,7 +73,14 @@ public interface InjectionRequest {
    * @see Factory
    */
   abstract class Base implements InjectionRequest {
-    final Iterable<Annotation> annotations;
+    final List<Annotation> annotations;
+    /*
+     * Annotations indexed by their types. Since an element can't have more than one
+     * annotation of the same type, lookups by annotation types are exact.
+     */
+    private final Map<Class<? extends Annotation>, Annotation> annotationsByType;
+    private final List<Annotation>                             qualifierAnnotations;
+    private volatile Key key;
 
     /**
      * Creates an object of this class.
@@ -77,7 +88,16 @@ public interface InjectionRequest {
      * @param annotations annotation objects.
      */
     protected Base(Annotation[] annotations) {
-      this.annotations = Arrays.asList(annotations);
+      this.annotations = ImmutableList.copyOf(annotations);
+      ImmutableMap.Builder<Class<? extends Annotation>, Annotation> byType = ImmutableMap.builder();
+      ImmutableList.Builder<Annotation> qualifiers = ImmutableList.builder();
+      for (Annotation each : annotations) {
+        byType.put(each.annotationType(), each);
+        if (!(each instanceof Inject))
+          qualifiers.add(each);
+      }
+      this.annotationsByType = byType.build();
+      this.qualifierAnnotations = qualifiers.build();
     }
 
     /**
@@ -85,13 +105,7 @@ public interface InjectionRequest {
      */
     @Override
     public boolean isAnnotationPresent(final Class<? extends Annotation> annotationClass) {
-      //noinspection unchecked
-      return !isEmpty(filter(this.annotations, new Predicate<Annotation>() {
-        @Override
-        public boolean apply(Annotation annotation) {
-          return annotationClass.isInstance(annotation);
-        }
-      }));
+      return this.annotationsByType.containsKey(annotationClass);
     }
 
     /**
@@ -100,15 +114,7 @@ public interface InjectionRequest {
     @Override
     public <T extends Annotation> T getAnnotation(final Class<T> annotationClass) {
       //noinspection unchecked
-      return isAnnotationPresent(annotationClass)
-          ? (T) Iterables.find(this.annotations,
-          new Predicate<Annotation>() {
-            @Override
-            public boolean apply(Annotation annotation) {
-              return annotationClass.isInstance(annotation);
-            }
-          })
-          : null;
+      return (T) this.annotationsByType.get(annotationClass);
     }
 
     /**
@@ -119,8 +125,41 @@ public interface InjectionRequest {
       return this.annotations;
     }
 
+    /**
+     * Returns annotations that are <em>present</em> on this element except {@code @Inject},
+     * in declaration order. Those are the annotations that qualify what value should be
+     * injected.
+     *
+     * The returned list is unmodifiable.
+     *
+     * @see Utils#qualifierAnnotationsOf(InjectionRequest)
+     */
+    public List<Annotation> getQualifierAnnotations() {
+      return this.qualifierAnnotations;
+    }
+
+    /**
+     * Returns a canonical key of this request. Keys of requests equal to each other
+     * are the same instance.
+     *
+     * @see Key
+     */
+    public Key getKey() {
+      Key ret = this.key;
+      if (ret == null) {
+        ////
+        // Racy but safe. Since keys are interned, all threads see the same instance.
+        this.key = ret = Key.of(this.getType(), this.annotations);
+      }
+      return ret;
+    }
+
     @Override
     public boolean equals(Object anotherObject) {
+      if (this == anotherObject)
+        return true;
+      if (anotherObject instanceof Base)
+        return this.getKey() == ((Base) anotherObject).getKey();
       if (!(anotherObject instanceof InjectionRequest))
         return false;
       InjectionRequest another = (InjectionRequest) anotherObject;
@@ -130,7 +169,106 @@ public interface InjectionRequest {
 
     @Override
     public int hashCode() {
-      return this.getType().hashCode();
+      return this.getKey().hashCode();
+    }
+  }
+
+  /**
+   * A canonical key of an {@code InjectionRequest}, which consists of the type of
+   * a requested value and the annotations of the request.
+   * <p>
+   * The hash code of a key is computed only once from the type, the annotation types,
+   * and the attribute values of the annotations. Keys are interned by {@link #of(Class, Iterable)},
+   * therefore equal keys are the same instance and equality of keys can be examined
+   * by identity. Keys no longer referenced are garbage-collected.
+   */
+  final class Key {
+    private static final Interner<Key> INTERNER = Interners.newWeakInterner();
+
+    private final Class<?>         type;
+    private final List<Annotation> annotations;
+    private final int              hashCode;
+
+    private Key(Class<?> type, List<Annotation> annotations) {
+      this.type = type;
+      this.annotations = annotations;
+      this.hashCode = 31 * type.hashCode() + annotations.hashCode();
+    }
+
+    /**
+     * Returns a canonical key for a given {@code type} and {@code annotations}.
+     *
+     * @param type        A type of requested values.
+     * @param annotations Annotations of a request.
+     */
+    public static Key of(Class<?> type, Iterable<Annotation> annotations) {
+      return INTERNER.intern(new Key(checkNotNull(type), ImmutableList.copyOf(annotations)));
+    }
+
+    /**
+     * Returns a type of requested values.
+     */
+    public Class<?> getType() {
+      return this.type;
+    }
+
+    /**
+     * Returns annotations of a request.
+     */
+    public List<Annotation> getAnnotations() {
+      return this.annotations;
+    }
+
+    /**
+     * Compares types and annotations of keys. Since keys are interned, this
+     * is called practically only when keys are interned.
+     */
+    @Override
+    public boolean equals(Object anotherObject) {
+      if (this == anotherObject)
+        return true;
+      if (!(anotherObject instanceof Key))
+        return false;
+      Key another = (Key) anotherObject;
+      return this.hashCode == another.hashCode
+          && this.type.equals(another.type)
+          && this.annotations.equals(another.annotations);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hashCode;
+    }
+
+    @Override
+    public String toString() {
+      return format("%s:%s", this.type.getSimpleName(), this.annotations);
+    }
+  }
+
+  /**
+   * A utility class for {@code InjectionRequest} objects.
+   */
+  enum Utils {
+    ;
+
+    /**
+     * Returns annotations that are <em>present</em> on {@code request} except
+     * {@code @Inject}, in declaration order. The returned list is unmodifiable.
+     * Annotations of a {@link Base} are not copied.
+     *
+     * @param request A request whose qualifier annotations are returned.
+     * @see Base#getQualifierAnnotations()
+     */
+    public static List<Annotation> qualifierAnnotationsOf(InjectionRequest request) {
+      if (checkNotNull(request) instanceof Base)
+        return ((Base) request).getQualifierAnnotations();
+      ImmutableList.Builder<Annotation> ret = ImmutableList.builder();
+      for (Annotation each : request.getAnnotations()) {
+        if (!(each instanceof Inject))
+          ret.add(each);
+      }
+      return ret.build();
     }
   }
 
@@ -147,10 +285,11 @@ public interface InjectionRequest {
      */
     static InjectionRequest createFromField(final Field field) {
       Preconditions.checkNotNull(field);
+      final Class<?> type = InjectionPoint.Delivery.requestedTypeOf(field.getType(), field.getGenericType());
       return new InjectionRequest.Base(field.getAnnotations()) {
         @Override
         public Class<?> getType() {
-          return field.getType();
+          return type;
         }
 
         @Override
@@ -174,10 +313,22 @@ public interface InjectionRequest {
      * @param index An index that specify a parameter of the constructor.
      */
     static InjectionRequest createFromConstructorParameter(final Constructor<?> constructor, final int index) {
+      ////
+      // Constructor#getParameterTypes() copies an array on every call.
+      Class<?>[] parameterTypes = constructor.getParameterTypes();
+      Type[] genericParameterTypes = constructor.getGenericParameterTypes();
+      ////
+      // Generic parameter types don't contain synthetic parameters, e.g., enclosing
+      // instances of inner classes.
+      final Class<?> type = InjectionPoint.Delivery.requestedTypeOf(
+          parameterTypes[index],
+          genericParameterTypes.length == parameterTypes.length
+              ? genericParameterTypes[index]
+              : parameterTypes[index]);
       return new InjectionRequest.Base(constructor.getParameterAnnotations()[index]) {
         @Override
         public Class<?> getType() {
-          return constructor.getParameterTypes()[index];
+          return type;
         }
 
         @Override
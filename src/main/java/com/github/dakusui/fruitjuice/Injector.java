@@ -1,20 +1,43 @@
 package com.github.dakusui.fruitjuice;
 
-import com.google.common.base.*;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.SettableFuture;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Iterables.*;
+import static com.google.common.collect.Iterables.filter;
 import static java.lang.String.format;
 import static java.util.Arrays.asList;
 
@@ -30,11 +53,292 @@ public interface Injector {
    */
   <T> T getInstance(Class<T> targetClass);
 
+  /**
+   * An injector which has operations added to {@link Injector} after its first release.
+   * They are declared by this interface rather than {@code Injector}, so that existing
+   * implementations of {@code Injector} don't need to implement them.
+   * <p>
+   * Injectors created by {@link FruitJuice} and {@link Impl} implement this interface.
+   * {@link FruitJuice#createExtendedInjector(Context.Builder)} returns one typed as this
+   * interface.
+   */
+  interface Extended extends Injector {
+    /**
+     * Returns {@code n} instances of {@code targetClass}.
+     * <p>
+     * Unlike calling {@link #getInstance(Class)} {@code n} times, values to be injected
+     * are resolved only once, and then shared by all the returned objects.
+     *
+     * @param <T>         A class of the returned objects.
+     * @param targetClass A class from which returned objects are created.
+     * @param n           The number of objects to be created.
+     */
+    <T> List<T> getInstances(Class<T> targetClass, int n);
+
+    /**
+     * Returns {@code n} instances of {@code targetClass} created by tasks run on
+     * {@code executorService}. Objects are created in chunks, one per available processor.
+     * <p>
+     * Values to be injected are resolved only once on the calling thread, and then shared
+     * by all the returned objects.
+     * <p>
+     * Objects can look values up from the builder of this injector while they are created,
+     * e.g., through {@link Lazy} or {@link Provider}. Unless the builder is
+     * thread-safe, i.e., a {@link Context.Builder.Concurrent}, {@link Context.Builder.Caching}
+     * or {@link Context.Builder.Async}, all the objects are created by a single task.
+     *
+     * @param <T>             A class of the returned objects.
+     * @param targetClass     A class from which returned objects are created.
+     * @param n               The number of objects to be created.
+     * @param executorService An executor service which runs tasks to create objects.
+     */
+    <T> List<T> getInstances(Class<T> targetClass, int n, ExecutorService executorService);
+
+    /**
+     * Returns instances of {@code targetClasses} in the same order as them.
+     * <p>
+     * Values to be injected are resolved only once for all the classes, and objects
+     * equal requests are made for are given the same values.
+     *
+     * @param targetClasses Classes from which returned objects are created.
+     */
+    List<Object> getInstances(Collection<Class<?>> targetClasses);
+
+    /**
+     * Injects values to fields of an existing {@code instance}, which are annotated with
+     * {@link Inject}. Constructors are not called by this method.
+     * <p>
+     * The class of {@code instance} needs to be a valid injection target, i.e., it must
+     * have a constructor available for injection and its fields to be injected must not
+     * be final or static.
+     *
+     * @param <T>      A type of {@code instance}.
+     * @param instance An object to which values are injected.
+     * @return {@code instance} itself.
+     */
+    <T> T injectMembers(T instance);
+
+    /**
+     * Returns a future of an instance of {@code targetClass}, which is created on
+     * {@code executor}.
+     * <p>
+     * If the builder of this injector is a {@link Context.Builder.Async}, values for
+     * the injection points are created concurrently, and the target is instantiated once
+     * all of them are created. Otherwise, the target is created by {@link #getInstance(Class)}
+     * on {@code executor}.
+     * <p>
+     * Errors, including ones found in {@code targetClass}, are reported by the returned
+     * future rather than thrown. As {@code getInstance}, injection points are added and
+     * the target is instantiated within graphs of {@link Scope.Graph}, and events are
+     * reported to the listener of this injector.
+     *
+     * @param <T>         A class of the returned object.
+     * @param targetClass A class from which returned object is created.
+     * @param executor    An executor on which values and the object are created.
+     */
+    <T> ListenableFuture<T> getInstanceAsync(Class<T> targetClass, Executor executor);
+
+    /**
+     * Computes and caches plans for {@code roots} and all the classes reachable from them
+     * through injection points, so that the first calls of {@link #getInstance(Class)} don't
+     * pay for it. Plans are computed in parallel.
+     * <p>
+     * A class is regarded reachable if it is a type requested by an injection point and
+     * it is a concrete class which has a constructor or a field annotated with {@link Inject}.
+     *
+     * @param roots Classes from which reachable classes are searched.
+     * @throws IllegalArgumentException Any of the classes is not a valid injection target.
+     *                                  Errors found in each class are attached to it as
+     *                                  suppressed exceptions.
+     */
+    void prepare(Class<?>... roots);
+
+    /**
+     * Creates a child injector, which resolves values by {@code builder} if it accepts
+     * their requests, and by the builder of this injector otherwise.
+     * <p>
+     * {@code builder} must be a {@link Context.Builder.Partial}. Requests it accepts are
+     * resolved only by it, and the others only by this injector.
+     * <p>
+     * A child shares plans of classes with this injector, and values held by the builder
+     * of this injector, e.g., ones in {@link Scope.Singleton}, with this injector and the
+     * other children of it. Since a child only holds references to them, creating one
+     * costs almost nothing, and an injector can be created per request to inject
+     * per-request values, e.g., tenants, credentials or trace ids. Children can be used
+     * concurrently, so the builder of this injector should be thread-safe, e.g.,
+     * {@link Context.Builder.Concurrent}.
+     *
+     * @param builder A builder of values specific to the returned injector.
+     * @throws IllegalArgumentException {@code builder} is not a {@link Context.Builder.Partial}.
+     */
+    Injector.Extended createChild(Context.Builder builder);
+  }
+
+  /**
+   * A pool of objects of a class, which recycles released objects. An object taken
+   * from a pool is re-injected by an injector before it is returned, so that it has the
+   * values a newly created object would have. If no object is available in a pool, a new
+   * one is created.
+   * <p>
+   * This class is thread-safe.
+   *
+   * @param <T> A type of pooled objects.
+   */
+  class Pool<T> {
+    private final Injector.Extended injector;
+    private final Class<T>          targetClass;
+    private final int               maxIdle;
+    private final Queue<T>          idle;
+    private final AtomicInteger     numIdle;
+
+    /**
+     * Creates an object of this class.
+     *
+     * @param injector    An injector which creates and re-injects objects.
+     * @param targetClass A class of pooled objects.
+     * @param maxIdle     The maximum number of released objects held by this pool.
+     *                    Objects released when the pool is full are discarded.
+     */
+    public Pool(Injector.Extended injector, Class<T> targetClass, int maxIdle) {
+      checkArgument(maxIdle >= 0, "maxIdle must not be negative but %s was given", maxIdle);
+      this.injector = checkNotNull(injector);
+      this.targetClass = checkNotNull(targetClass);
+      this.maxIdle = maxIdle;
+      this.idle = new ConcurrentLinkedQueue<>();
+      this.numIdle = new AtomicInteger(0);
+    }
+
+    /**
+     * Returns a recycled object re-injected by the injector of this pool, or a new object
+     * if none is available.
+     */
+    public T acquire() {
+      T ret = this.idle.poll();
+      if (ret == null)
+        return this.injector.getInstance(this.targetClass);
+      this.numIdle.decrementAndGet();
+      return this.injector.injectMembers(ret);
+    }
+
+    /**
+     * Returns {@code instance} to this pool. The caller must not use {@code instance}
+     * after calling this method.
+     *
+     * @param instance An object acquired from this pool.
+     */
+    public void release(T instance) {
+      checkArgument(this.targetClass.isInstance(checkNotNull(instance)),
+          "'%s' is not an instance of '%s'", instance, this.targetClass.getCanonicalName());
+      if (this.numIdle.incrementAndGet() > this.maxIdle) {
+        this.numIdle.decrementAndGet();
+        return;
+      }
+      this.idle.offer(instance);
+    }
+
+    /**
+     * Returns the number of released objects held by this pool.
+     */
+    public int getNumIdle() {
+      return this.numIdle.get();
+    }
+  }
+
+  /**
+   * Engines which create {@link InjectionPlan}s. An engine determines how target
+   * classes are instantiated and how values are injected to their fields.
+   */
+  enum Engine {
+    /**
+     * Instantiates objects and injects fields through method handles.
+     * Plans are shared by all the injectors through {@link InjectionPlan.Cache}.
+     */
+    REFLECTIVE {
+      @Override
+      <T> InjectionPlan<T> createPlan(Class<T> targetClass, InjectionListener listener) {
+        return InjectionPlan.Cache.get(targetClass, listener);
+      }
+
+      @Override
+      <T> InjectionPlan<T> createPlan(InjectionPlan.Impl<T> plan) {
+        return plan;
+      }
+    },
+    /**
+     * Instantiates objects and injects fields through classes generated at runtime.
+     * Falls back to {@link #REFLECTIVE} for classes code cannot be generated for.
+     * The bytecode library (ASM) needs to be present in the class path to use this.
+     * Generated classes, as well as the injection points they are generated from, are
+     * shared by all the injectors through {@link InjectionPlan.Cache}.
+     */
+    GENERATED {
+      @Override
+      <T> InjectionPlan<T> createPlan(Class<T> targetClass, InjectionListener listener) {
+        return InjectionPlan.Cache.getGenerated(InjectionPlan.Cache.get(targetClass, listener));
+      }
+
+      @Override
+      <T> InjectionPlan<T> createPlan(InjectionPlan.Impl<T> plan) {
+        return InjectionPlan.Cache.getGenerated(plan);
+      }
+    };
+
+    /**
+     * Creates an {@link InjectionPlan} for {@code targetClass}.
+     *
+     * @param targetClass A class for which a plan is created.
+     * @param <T>         A type of objects instantiated by the returned plan.
+     */
+    public <T> InjectionPlan<T> createPlan(Class<T> targetClass) {
+      return createPlan(targetClass, InjectionListener.NONE);
+    }
+
+    /**
+     * Creates an {@link InjectionPlan} for {@code targetClass}, and reports
+     * {@link InjectionListener.Event#PLAN} to {@code listener} if the metadata of the
+     * class is computed by this call.
+     *
+     * @param targetClass A class for which a plan is created.
+     * @param listener    A listener to which the computation is reported.
+     * @param <T>         A type of objects instantiated by the returned plan.
+     */
+    abstract <T> InjectionPlan<T> createPlan(Class<T> targetClass, InjectionListener listener);
+
+    /**
+     * Creates an {@link InjectionPlan} from {@code plan}, whose injection points are
+     * already resolved.
+     *
+     * @param plan A plan from which the returned plan is created.
+     * @param <T>  A type of objects instantiated by the returned plan.
+     */
+    abstract <T> InjectionPlan<T> createPlan(InjectionPlan.Impl<T> plan);
+  }
+
   /**
    * A simple implementation of {@link Injector} interface.
+   * <p>
+   * An {@link InjectionPlan} is computed only once per target class and cached
+   * in a thread-safe manner by an object of this class.
+   * <p>
+   * Each call of {@link #getInstance(Class)} forms a graph of objects for {@link Scope.Graph},
+   * which nested calls on the same thread belong to.
    */
-  class Impl implements Injector {
-    private final Context.Builder builder;
+  class Impl implements Injector.Extended {
+    private final Context.Builder                           builder;
+    private final Engine                                    engine;
+    private final InjectionPlanStore                        store;
+    private final InjectionListener                         listener;
+    private final ConcurrentMap<Class<?>, InjectionPlan<?>> plans;
+    /*
+     * The injector this object is a child of, or null if this is not a child.
+     */
+    private final Impl                                      parent;
+    /*
+     * Indexed contexts reused by calls of this injector on each thread. Children share
+     * the ones of their root injector, as well as its plans, so that creating a child
+     * doesn't add an entry to the thread-local map of each thread which uses it.
+     */
+    private final ThreadLocal<IndexedContext>               contexts;
 
     /**
      * Creates an object of this class.
@@ -42,7 +346,64 @@ public interface Injector {
      * @param builder A builder object of {@link Context.Builder}.
      */
     public Impl(Context.Builder builder) {
+      this(builder, Engine.REFLECTIVE);
+    }
+
+    /**
+     * Creates an object of this class.
+     *
+     * @param builder A builder object of {@link Context.Builder}.
+     * @param engine  An engine which creates plans for target classes.
+     */
+    public Impl(Context.Builder builder, Engine engine) {
+      this(builder, engine, null);
+    }
+
+    /**
+     * Creates an object of this class which reads plans from {@code store} before
+     * computing them.
+     *
+     * @param builder A builder object of {@link Context.Builder}.
+     * @param engine  An engine which creates plans for target classes.
+     * @param store   A store from which plans are read. Can be {@code null}.
+     * @see InjectionPlanStore
+     */
+    public Impl(Context.Builder builder, Engine engine, InjectionPlanStore store) {
+      this(builder, engine, store, InjectionListener.NONE);
+    }
+
+    /**
+     * Creates an object of this class which reports what it does to {@code listener}.
+     *
+     * @param builder  A builder object of {@link Context.Builder}.
+     * @param engine   An engine which creates plans for target classes.
+     * @param store    A store from which plans are read. Can be {@code null}.
+     * @param listener A listener to which events are reported.
+     * @see InjectionListener
+     */
+    public Impl(Context.Builder builder, Engine engine, InjectionPlanStore store, InjectionListener listener) {
       this.builder = Preconditions.checkNotNull(builder);
+      this.engine = Preconditions.checkNotNull(engine);
+      this.store = store;
+      this.listener = Preconditions.checkNotNull(listener);
+      this.plans = new ConcurrentHashMap<>();
+      this.parent = null;
+      this.contexts = new ThreadLocal<IndexedContext>() {
+        @Override
+        protected IndexedContext initialValue() {
+          return new IndexedContext();
+        }
+      };
+    }
+
+    private Impl(Impl parent, Context.Builder.Partial builder) {
+      this.builder = new Hierarchy(builder, parent.builder);
+      this.engine = parent.engine;
+      this.store = parent.store;
+      this.listener = parent.listener;
+      this.plans = parent.plans;
+      this.parent = parent;
+      this.contexts = parent.contexts;
     }
 
     /**
@@ -50,165 +411,677 @@ public interface Injector {
      */
     @Override
     public <T> T getInstance(Class<T> targetClass) {
-      Preconditions.checkNotNull(targetClass);
-      Constructor<T> constructor = getAppropriateConstructorFrom(targetClass);
-      Iterable<InjectionPoint> constructorInjectionPoints = getConstructorInjectionPoints(constructor);
-      Iterable<InjectionPoint> fieldInjectionPoints = validateFieldInjectionPoints(targetClass, getFieldInjectionPoints(targetClass));
-      for (InjectionPoint each : Iterables.concat(constructorInjectionPoints, fieldInjectionPoints)) {
-        this.builder.add(each);
-      }
-      Context context = this.builder.build();
-      T ret = createObject(context, constructor, constructorInjectionPoints);
-      injectFields(context, ret, fieldInjectionPoints);
+      InjectionListener ambient = AmbientListener.current();
+      if (ambient != null)
+        return getInstanceObserved(Preconditions.checkNotNull(targetClass), ambient);
+      if (this.listener != InjectionListener.NONE && this.listener.sample(Preconditions.checkNotNull(targetClass)))
+        return getInstanceObserved(targetClass, this.listener);
+      InjectionPlan<T> plan = getPlan(Preconditions.checkNotNull(targetClass));
+      Scope.Graph.enter();
+      Context context = null;
+      try {
+        context = resolve(plan);
+        return instantiate(plan, context);
+      } finally {
+        release(context);
+        Scope.Graph.exit();
+      }
+    }
+
+    /*
+     * Does the same as getInstance, reporting events to a listener. The listener is
+     * entered as the ambient one so that nested calls are reported to it, too.
+     */
+    private <T> T getInstanceObserved(final Class<T> targetClass, final InjectionListener listener) {
+      long start = System.nanoTime();
+      InjectionPlan<T> plan = getPlan(targetClass);
+      AmbientListener.enter(listener, targetClass);
+      Scope.Graph.enter();
+      try {
+        Map<InjectionRequest, Object> deferred = Collections.emptyMap();
+        for (InjectionPoint each : Iterables.concat(plan.getConstructorInjectionPoints(), plan.getFieldInjectionPoints())) {
+          long t = System.nanoTime();
+          deferred = addInjectionPoint(each, deferred);
+          listener.onEvent(InjectionListener.Event.ADD, targetClass, each, each.getRequest(), t, System.nanoTime() - t);
+        }
+        return instantiateObserved(plan, buildContext(deferred), listener);
+      } finally {
+        Scope.Graph.exit();
+        AmbientListener.exit();
+        listener.onEvent(InjectionListener.Event.GET_INSTANCE, targetClass, null, null, start, System.nanoTime() - start);
+      }
+    }
+
+    /*
+     * Instantiates the target of a plan, reporting lookups, construction and injection
+     * to a listener.
+     */
+    private static <T> T instantiateObserved(InjectionPlan<T> plan, final Context context, final InjectionListener listener) {
+      final Class<T> targetClass = plan.getTargetClass();
+      Context observed = new Context() {
+        @Override
+        public <V> V lookup(InjectionRequest request) {
+          long t = System.nanoTime();
+          try {
+            return context.lookup(request);
+          } finally {
+            listener.onEvent(InjectionListener.Event.LOOKUP, targetClass, null, request, t, System.nanoTime() - t);
+          }
+        }
+      };
+      long t = System.nanoTime();
+      T ret = plan.newInstance(observed);
+      listener.onEvent(InjectionListener.Event.CONSTRUCT, targetClass, null, null, t, System.nanoTime() - t);
+      t = System.nanoTime();
+      plan.injectMembers(ret, observed);
+      listener.onEvent(InjectionListener.Event.INJECT, targetClass, null, null, t, System.nanoTime() - t);
       return ret;
     }
 
-    private <T> T createObject(final Context context, final Constructor<T> constructor, Iterable<InjectionPoint> constructorInjectionPoints) {
-      Object[] args = null;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> List<T> getInstances(Class<T> targetClass, int n) {
+      checkArgument(n >= 0, "n must not be negative but %s was given", n);
+      InjectionPlan<T> plan = getPlan(Preconditions.checkNotNull(targetClass));
+      Scope.Graph.enter();
+      Context context = null;
       try {
-        ////
-        //Actually used in catch clause.
-        //noinspection UnusedAssignment
-        return constructor.newInstance(args = toArray(
-            transform(
-                filter(constructorInjectionPoints,
-                    new Predicate<InjectionPoint>() {
-                      @Override
-                      public boolean apply(InjectionPoint injectionPoint) {
-                        return constructor.equals(injectionPoint.getTargetElement().asConstructorParameter().getDeclaringConstructor());
-                      }
-                    }
-                ),
-                new Function<InjectionPoint, Object>() {
-                  @Override
-                  public Object apply(InjectionPoint injectionPoint) {
-                    return getInstanceFor(injectionPoint, context);
-                  }
-                }),
-            Object.class
-        ));
-      } catch (IllegalArgumentException e) {
-        throw new IllegalArgumentException(
-            format("Failed to create %s object. (<<init>>/%s(%s)): %s",
-                constructor.getDeclaringClass().getSimpleName(),
-                constructor.getParameterTypes().length,
-                Arrays.toString(args),
-                e.getMessage()),
-            e);
-      } catch (InstantiationException | IllegalAccessException e) {
+        context = resolve(plan);
+        return instantiate(plan, context, n);
+      } finally {
+        release(context);
+        Scope.Graph.exit();
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> List<T> getInstances(Class<T> targetClass, int n, ExecutorService executorService) {
+      checkArgument(n >= 0, "n must not be negative but %s was given", n);
+      checkNotNull(executorService);
+      final InjectionPlan<T> plan = getPlan(Preconditions.checkNotNull(targetClass));
+      final Context context;
+      Scope.Graph.enter();
+      try {
+        context = resolve(plan);
+      } finally {
+        Scope.Graph.exit();
+      }
+      int numChunks = isThreadSafe(this.builder)
+          ? Math.max(1, Math.min(n, Runtime.getRuntime().availableProcessors()))
+          : 1;
+      List<Callable<List<T>>> chunks = new ArrayList<>(numChunks);
+      for (int i = 0; i < numChunks; i++) {
+        final int chunkSize = n / numChunks + (i < n % numChunks ? 1 : 0);
+        chunks.add(new Callable<List<T>>() {
+          @Override
+          public List<T> call() throws Exception {
+            return instantiate(plan, context, chunkSize);
+          }
+        });
+      }
+      List<T> ret = new ArrayList<>(n);
+      try {
+        for (Future<List<T>> each : executorService.invokeAll(chunks)) {
+          ret.addAll(each.get());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
         throw Throwables.propagate(e);
-      } catch (InvocationTargetException e) {
-        throw Throwables.propagate(e.getTargetException());
+      } catch (ExecutionException e) {
+        throw Throwables.propagate(e.getCause());
+      } finally {
+        release(context);
+      }
+      return ret;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Object> getInstances(Collection<Class<?>> targetClasses) {
+      List<InjectionPlan<?>> plans = new ArrayList<>(targetClasses.size());
+      for (Class<?> each : targetClasses) {
+        plans.add(getPlan(Preconditions.checkNotNull(each)));
+      }
+      Scope.Graph.enter();
+      try {
+        Map<InjectionRequest, Object> deferred = new IdentityHashMap<>();
+        for (InjectionPlan<?> each : plans) {
+          deferred.putAll(addInjectionPoints(each));
+        }
+        Context context = buildContext(deferred);
+        List<Object> ret = new ArrayList<>(plans.size());
+        for (InjectionPlan<?> each : plans) {
+          ret.add(instantiate(each, context));
+        }
+        return ret;
+      } finally {
+        Scope.Graph.exit();
+      }
+    }
+
+    /**
+     * Returns an {@link InjectionPlan} for {@code targetClass}. If it is not computed
+     * yet, it will be created and cached by this method.
+     *
+     * @param targetClass A class for which a plan is returned.
+     * @param <T>         A type of objects instantiated by the returned plan.
+     */
+    protected <T> InjectionPlan<T> getPlan(Class<T> targetClass) {
+      //noinspection unchecked
+      InjectionPlan<T> ret = (InjectionPlan<T>) this.plans.get(targetClass);
+      if (ret == null) {
+        ret = createPlan(targetClass);
+        //noinspection unchecked
+        InjectionPlan<T> existing = (InjectionPlan<T>) this.plans.putIfAbsent(targetClass, ret);
+        if (existing != null) {
+          ret = existing;
+        }
       }
+      return ret;
     }
 
-    private <T> Constructor<T> getAppropriateConstructorFrom(Class<T> targetClass) {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> ListenableFuture<T> getInstanceAsync(final Class<T> targetClass, Executor executor) {
+      checkNotNull(executor);
       Preconditions.checkNotNull(targetClass);
+      if (!(this.builder instanceof Context.Builder.Async)) {
+        ListenableFutureTask<T> ret = ListenableFutureTask.create(new Callable<T>() {
+          @Override
+          public T call() throws Exception {
+            return getInstance(targetClass);
+          }
+        });
+        executor.execute(ret);
+        return ret;
+      }
+      final long start = System.nanoTime();
+      final InjectionPlan<T> plan;
+      try {
+        plan = getPlan(targetClass);
+      } catch (RuntimeException e) {
+        return Futures.immediateFailedFuture(e);
+      }
+      InjectionListener ambient = AmbientListener.current();
+      final InjectionListener listener = ambient != null
+          ? ambient
+          : this.listener != InjectionListener.NONE && this.listener.sample(targetClass)
+          ? this.listener
+          : null;
+      Context.Builder.Async builder = (Context.Builder.Async) this.builder;
+      List<ListenableFuture<?>> values = new ArrayList<>();
+      Map<InjectionRequest, Object> deferred = Collections.emptyMap();
+      final Map<Scope.Graph, Map<InjectionRequest, Object>> graph;
+      if (listener != null)
+        AmbientListener.enter(listener, targetClass);
+      Scope.Graph.enter();
+      try {
+        for (InjectionPoint each : Iterables.concat(plan.getConstructorInjectionPoints(), plan.getFieldInjectionPoints())) {
+          long t = System.nanoTime();
+          if (InjectionPoint.Delivery.of(each) == InjectionPoint.Delivery.DIRECT) {
+            values.add(builder.addAsync(each, executor));
+          } else {
+            deferred = addInjectionPoint(each, deferred);
+          }
+          if (listener != null)
+            listener.onEvent(InjectionListener.Event.ADD, targetClass, each, each.getRequest(), t, System.nanoTime() - t);
+        }
+        ////
+        // The target is instantiated on another thread, where the graph is continued.
+        graph = Scope.Graph.capture();
+      } catch (RuntimeException e) {
+        if (listener != null)
+          listener.onEvent(InjectionListener.Event.GET_INSTANCE, targetClass, null, null, start, System.nanoTime() - start);
+        return Futures.immediateFailedFuture(e);
+      } finally {
+        Scope.Graph.exit();
+        if (listener != null)
+          AmbientListener.exit();
+      }
+      final Map<InjectionRequest, Object> finalDeferred = deferred;
+      final SettableFuture<T> ret = SettableFuture.create();
+      ////
+      // GET_INSTANCE is reported before the future completes, so that it is observed by
+      // whoever waits for the future.
+      Futures.addCallback(allOf(values), new FutureCallback<Object>() {
+        @Override
+        public void onSuccess(Object result) {
+          T value;
+          if (listener != null)
+            AmbientListener.enter(listener, targetClass);
+          Scope.Graph.enter(graph);
+          try {
+            Context context = buildContext(finalDeferred);
+            value = listener == null
+                ? instantiate(plan, context)
+                : instantiateObserved(plan, context, listener);
+          } catch (Throwable t) {
+            onFailure(t);
+            return;
+          } finally {
+            Scope.Graph.exit();
+            if (listener != null)
+              AmbientListener.exit();
+          }
+          if (listener != null)
+            listener.onEvent(InjectionListener.Event.GET_INSTANCE, targetClass, null, null, start, System.nanoTime() - start);
+          ret.set(value);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          if (listener != null)
+            listener.onEvent(InjectionListener.Event.GET_INSTANCE, targetClass, null, null, start, System.nanoTime() - start);
+          ret.setException(t);
+        }
+      }, executor);
+      return ret;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T injectMembers(T instance) {
       //noinspection unchecked
-      Iterable<Constructor<T>> constructors = filter(
-          asList((Constructor<T>[]) targetClass.getConstructors()),
-          new Predicate<Constructor<T>>() {
-            @Override
-            public boolean apply(Constructor<T> constructor) {
-              return constructor.isAnnotationPresent(Inject.class);
-            }
+      InjectionPlan<T> plan = getPlan((Class<T>) Preconditions.checkNotNull(instance).getClass());
+      Scope.Graph.enter();
+      try {
+        Map<InjectionRequest, Object> deferred = Collections.emptyMap();
+        for (InjectionPoint each : plan.getFieldInjectionPoints()) {
+          deferred = addInjectionPoint(each, deferred);
+        }
+        plan.injectMembers(instance, buildContext(deferred));
+        return instance;
+      } finally {
+        Scope.Graph.exit();
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Injector.Extended createChild(Context.Builder builder) {
+      checkArgument(
+          Preconditions.checkNotNull(builder) instanceof Context.Builder.Partial,
+          "A builder of a child injector must be a '%s' but '%s' was given",
+          Context.Builder.Partial.class.getCanonicalName(),
+          builder);
+      return new Impl(this, (Context.Builder.Partial) builder);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepare(Class<?>... roots) {
+      final Set<Class<?>> visited = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+      final Queue<RuntimeException> errors = new ConcurrentLinkedQueue<>();
+      final List<ForkJoinTask<?>> tasks = new ArrayList<>(roots.length);
+      for (Class<?> each : roots) {
+        tasks.add(new Preparation(Preconditions.checkNotNull(each), visited, errors));
+      }
+      ForkJoinPool pool = new ForkJoinPool();
+      try {
+        pool.invoke(new RecursiveAction() {
+          @Override
+          protected void compute() {
+            invokeAll(tasks);
           }
-      );
-      if (size(constructors) == 1) {
-        return Iterables.get(constructors, 0);
+        });
+      } finally {
+        pool.shutdown();
       }
-      if (size(constructors) == 0) {
-        try {
-          return targetClass.getConstructor();
-        } catch (NoSuchMethodException e) {
-          throw new RuntimeException(format("No available constructor for injection is found in '%s'", targetClass.getCanonicalName()), e);
+      if (errors.isEmpty())
+        return;
+      List<String> messages = new ArrayList<>(errors.size());
+      for (RuntimeException each : errors) {
+        messages.add(each.getMessage());
+      }
+      Collections.sort(messages);
+      IllegalArgumentException ret = new IllegalArgumentException(format(
+          "Following error(s) are found while preparing %s: %s",
+          asList(roots),
+          Utils.join("; ", messages)));
+      for (RuntimeException each : errors) {
+        ret.addSuppressed(each);
+      }
+      throw ret;
+    }
+
+    /*
+     * Adds injection points of a plan to the builder and returns values for deferred
+     * injection points, which are not added, keyed by their requests.
+     */
+    private Map<InjectionRequest, Object> addInjectionPoints(InjectionPlan<?> plan) {
+      Map<InjectionRequest, Object> ret = Collections.emptyMap();
+      ////
+      // Indexed loops don't allocate iterators.
+      List<InjectionPoint> points = plan.getConstructorInjectionPoints();
+      for (int i = 0; i < points.size(); i++) {
+        ret = addInjectionPoint(points.get(i), ret);
+      }
+      points = plan.getFieldInjectionPoints();
+      for (int i = 0; i < points.size(); i++) {
+        ret = addInjectionPoint(points.get(i), ret);
+      }
+      return ret;
+    }
+
+    private Map<InjectionRequest, Object> addInjectionPoint(final InjectionPoint injectionPoint, Map<InjectionRequest, Object> deferred) {
+      if (InjectionPoint.Delivery.of(injectionPoint) == InjectionPoint.Delivery.DIRECT) {
+        this.builder.add(injectionPoint);
+        return deferred;
+      }
+      ////
+      // Requests of deferred injection points can be equal to ones of direct injection
+      // points. They are distinguished by identity.
+      Map<InjectionRequest, Object> ret = deferred.isEmpty()
+          ? new IdentityHashMap<InjectionRequest, Object>()
+          : deferred;
+      ret.put(injectionPoint.getRequest(), deferredValueOf(injectionPoint));
+      return ret;
+    }
+
+    /*
+     * Adds injection points of a plan to the builder and returns a context which gives
+     * values for them. If the plan assigns slots to its requests, the values are held
+     * in an array indexed by the slots, which the plan reads without looking them up.
+     * A returned context must be released by release after the plan reads it.
+     */
+    private Context resolve(InjectionPlan<?> plan) {
+      if (!(plan instanceof InjectionPlan.Base))
+        return buildContext(addInjectionPoints(plan));
+      InjectionPlan.Base<?> base = (InjectionPlan.Base<?>) plan;
+      if (base.slotPoints.length == 0) {
+        ////
+        // Only values of int, long and double are injected, which are never deferred.
+        addInjectionPoints(plan);
+        return this.builder.build();
+      }
+      ////
+      // A context in use is open if this is a nested call, e.g., from a provider.
+      IndexedContext ret = this.contexts.get();
+      if (ret.isOpen())
+        ret = new IndexedContext();
+      Object[] values = ret.open(base);
+      try {
+        addInjectionPoints(base.getConstructorInjectionPoints(), base.constructorSlots, values);
+        addInjectionPoints(base.getFieldInjectionPoints(), base.fieldSlots, values);
+        ret.bind(this.builder.build());
+        if (!(this.builder instanceof Context.Builder.Slotted))
+          ret.lookUpValues();
+      } catch (RuntimeException | Error e) {
+        ret.close();
+        throw e;
+      }
+      return ret;
+    }
+
+    /*
+     * Releases a context returned by resolve, so that it can be reused.
+     */
+    private static void release(Context context) {
+      if (context instanceof IndexedContext)
+        ((IndexedContext) context).close();
+    }
+
+    private void addInjectionPoints(List<InjectionPoint> points, int[] slots, Object[] values) {
+      for (int i = 0; i < points.size(); i++) {
+        InjectionPoint each = points.get(i);
+        if (InjectionPoint.Delivery.of(each) != InjectionPoint.Delivery.DIRECT) {
+          values[slots[i]] = deferredValueOf(each);
+        } else if (slots[i] >= 0 && this.builder instanceof Context.Builder.Slotted) {
+          ((Context.Builder.Slotted) this.builder).add(each, values, slots[i]);
+        } else {
+          this.builder.add(each);
         }
       }
-      throw new RuntimeException(format(
-          "More than one constructors annotated with '@%s' are found in '%s'",
-          Inject.class.getSimpleName(),
-          targetClass.getCanonicalName()
-      ));
-    }
-
-    private <T> void injectFields(Context context, T target, Iterable<InjectionPoint> injectionPoints) {
-      for (InjectionPoint eachInjectionPoint : injectionPoints) {
-        InjectionPoint.TargetElement eachTargetElement = eachInjectionPoint.getTargetElement();
-        if (InjectionPoint.Type.FIELD.equals(eachInjectionPoint.getTargetElement().getType())) {
-          Field f = eachTargetElement.asField();
-          if (f.getDeclaringClass().isInstance(target)) {
-            boolean accessible = f.isAccessible();
-            f.setAccessible(true);
-            try {
-              f.set(target, getInstanceFor(eachInjectionPoint, context));
-            } catch (IllegalAccessException e) {
-              ////
-              // This path cannot be tested because the field is set accessible beforehand.
-              throw Throwables.propagate(e);
-            } finally {
-              f.setAccessible(accessible);
-            }
+    }
+
+    private Object deferredValueOf(final InjectionPoint injectionPoint) {
+      return InjectionPoint.Delivery.of(injectionPoint).wrap(new Provider<Object>() {
+        @Override
+        public Object get() {
+          ////
+          // A graph lets the lookup find a value which a scope created for the add.
+          Scope.Graph.enter();
+          try {
+            return builder.add(injectionPoint).build().lookup(injectionPoint.getRequest());
+          } finally {
+            Scope.Graph.exit();
           }
         }
+      });
+    }
+
+    private Context buildContext(final Map<InjectionRequest, Object> deferred) {
+      final Context context = this.builder.build();
+      if (deferred.isEmpty())
+        return context;
+      return new Context.Unboxed() {
+        @Override
+        public <V> V lookup(InjectionRequest request) {
+          //noinspection unchecked
+          return deferred.containsKey(request)
+              ? (V) deferred.get(request)
+              : context.<V>lookup(request);
+        }
+
+        ////
+        // Values of int, long and double are never deferred.
+        @Override
+        public int lookupInt(InjectionRequest request) {
+          return Unboxing.lookupInt(context, request);
+        }
+
+        @Override
+        public long lookupLong(InjectionRequest request) {
+          return Unboxing.lookupLong(context, request);
+        }
+
+        @Override
+        public double lookupDouble(InjectionRequest request) {
+          return Unboxing.lookupDouble(context, request);
+        }
+      };
+    }
+
+    /*
+     * Returns a future which completes when all the values do, or fails with the first
+     * failure of them. Unlike Futures.allAsList, other failures are not logged, since
+     * values of one request often fail for the same reason.
+     */
+    private static ListenableFuture<?> allOf(List<ListenableFuture<?>> values) {
+      final SettableFuture<Object> ret = SettableFuture.create();
+      final AtomicInteger remaining = new AtomicInteger(values.size());
+      if (values.isEmpty())
+        ret.set(null);
+      for (ListenableFuture<?> each : values) {
+        Futures.addCallback(each, new FutureCallback<Object>() {
+          @Override
+          public void onSuccess(Object result) {
+            if (remaining.decrementAndGet() == 0)
+              ret.set(null);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            ret.setException(t);
+          }
+        });
       }
+      return ret;
     }
 
-    private Object getInstanceFor(InjectionPoint injectionPoint, Context context) {
-      return context.lookup(injectionPoint.getRequest());
+    private static <T> T instantiate(InjectionPlan<T> plan, Context context) {
+      T ret = plan.newInstance(context);
+      plan.injectMembers(ret, context);
+      return ret;
     }
 
-    private <T> Iterable<InjectionPoint> getFieldInjectionPoints(Class<T> targetClass) {
-      return Iterables.transform(
-          Utils.getTargetFieldsFromClass(targetClass),
-          new Function<Field, InjectionPoint>() {
-            @Override
-            public InjectionPoint apply(Field each) {
-              return InjectionPoint.Factory.createFromField(each);
-            }
+    /*
+     * Returns true if builders of this library known to be thread-safe resolve all the
+     * values of an injector whose builder is given.
+     */
+    private static boolean isThreadSafe(Context.Builder builder) {
+      if (builder instanceof Hierarchy)
+        return isThreadSafe(((Hierarchy) builder).child) && isThreadSafe(((Hierarchy) builder).parent);
+      return builder instanceof Context.Builder.Concurrent
+          || builder instanceof Context.Builder.Caching
+          || builder instanceof Context.Builder.Async;
+    }
+
+    private static <T> List<T> instantiate(InjectionPlan<T> plan, Context context, int n) {
+      List<T> ret = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        ret.add(instantiate(plan, context));
+      }
+      return ret;
+    }
+
+    /*
+     * A task which computes a plan for a class and the classes reachable from it.
+     */
+    private class Preparation extends RecursiveAction {
+      /*
+       * ForkJoinTask is Serializable, but tasks of this class are never serialized.
+       */
+      private static final long             serialVersionUID = 1L;
+      private final Class<?>                targetClass;
+      private final Set<Class<?>>           visited;
+      private final Queue<RuntimeException> errors;
+
+      private Preparation(Class<?> targetClass, Set<Class<?>> visited, Queue<RuntimeException> errors) {
+        this.targetClass = targetClass;
+        this.visited = visited;
+        this.errors = errors;
+      }
+
+      @Override
+      protected void compute() {
+        if (!this.visited.add(this.targetClass))
+          return;
+        InjectionPlan<?> plan;
+        try {
+          plan = getPlan(this.targetClass);
+        } catch (RuntimeException e) {
+          this.errors.add(new IllegalArgumentException(format("'%s': %s", this.targetClass.getCanonicalName(), e.getMessage()), e));
+          return;
+        }
+        List<Preparation> reachable = new ArrayList<>();
+        for (InjectionPoint each : Iterables.concat(plan.getConstructorInjectionPoints(), plan.getFieldInjectionPoints())) {
+          Class<?> type = each.getRequest().getType();
+          if (Utils.isInjectionTarget(type) && !this.visited.contains(type)) {
+            reachable.add(new Preparation(type, this.visited, this.errors));
           }
-      );
+        }
+        invokeAll(reachable);
+      }
     }
 
-    private Iterable<InjectionPoint> validateFieldInjectionPoints(Class<?> targetClass, Iterable<InjectionPoint> fieldInjectionPoints) {
-      Iterable<String> errors =
-          transform(
-              filter(
-                  transform(
-                      fieldInjectionPoints,
-                      new Function<InjectionPoint, Iterable<String>>() {
-                        @Override
-                        public Iterable<String> apply(InjectionPoint input) {
-                          Field targetField = input.getTargetElement().asField();
-                          List<String> errors = new ArrayList<>(2);
-                          if (Modifier.isFinal(targetField.getModifiers())) {
-                            errors.add(format("Field '%s' is marked final.", targetField.getName()));
-                          }
-                          if (Modifier.isStatic(targetField.getModifiers())) {
-                            errors.add(format("Field '%s' is marked static.", targetField.getName()));
-                          }
-                          return errors.isEmpty()
-                              ? null
-                              : errors;
-                        }
-                      }
-                  ),
-                  Predicates.<Iterable<String>>notNull()
-              ),
-              new Function<Iterable<String>, String>() {
-                @Override
-                public String apply(Iterable<String> input) {
-                  return Utils.join(",", input);
-                }
-              }
-          );
-      checkArgument(Iterables.isEmpty(errors), "Following error(s) are found in class '%s': %s", targetClass.getCanonicalName(), errors);
-      return fieldInjectionPoints;
-    }
-
-    private <T> Iterable<InjectionPoint> getConstructorInjectionPoints(final Constructor<T> targetConstructor) {
-      return InjectionPoint.Factory.createInjectionPointsFromConstructor(targetConstructor);
+    /**
+     * Creates a new {@link InjectionPlan} for {@code targetClass}.
+     * If a plan generated at compile time by FruitJuice's annotation processor is
+     * available for the class, it will be used. Next, if this object has a store
+     * and it holds a valid plan for the class, it will be used. Otherwise, a plan
+     * created by the engine of this object will be returned.
+     *
+     * <p>
+     * A child injector delegates this method to its parent.
+     *
+     * @param targetClass A class for which a plan is created.
+     * @param <T>         A type of objects instantiated by the returned plan.
+     * @see InjectionPlan.Cache#getPrecompiled(Class)
+     * @see InjectionPlanStore#load(Class)
+     */
+    protected <T> InjectionPlan<T> createPlan(Class<T> targetClass) {
+      if (this.parent != null)
+        return this.parent.createPlan(targetClass);
+      InjectionPlan<T> ret = InjectionPlan.Cache.getPrecompiled(targetClass);
+      if (ret != null)
+        return ret;
+      InjectionPlan.Impl<T> stored = this.store == null
+          ? null
+          : this.store.load(targetClass);
+      return stored != null
+          ? this.engine.createPlan(stored)
+          : this.engine.createPlan(targetClass, this.listener);
     }
 
+    /*
+     * A builder of a child injector, which resolves values by the child's builder if it
+     * accepts their requests, and by the parent's builder otherwise.
+     */
+    private static class Hierarchy implements Context.Builder.Slotted {
+      private final Context.Builder.Partial child;
+      private final Context.Builder         parent;
+      private final Context         context = new Context.Unboxed() {
+        @Override
+        public <V> V lookup(InjectionRequest request) {
+          return builderFor(request).build().lookup(request);
+        }
+
+        @Override
+        public int lookupInt(InjectionRequest request) {
+          return Unboxing.lookupInt(builderFor(request).build(), request);
+        }
+
+        @Override
+        public long lookupLong(InjectionRequest request) {
+          return Unboxing.lookupLong(builderFor(request).build(), request);
+        }
+
+        @Override
+        public double lookupDouble(InjectionRequest request) {
+          return Unboxing.lookupDouble(builderFor(request).build(), request);
+        }
+      };
+
+      private Hierarchy(Context.Builder.Partial child, Context.Builder parent) {
+        this.child = Preconditions.checkNotNull(child);
+        this.parent = parent;
+      }
+
+      @Override
+      public Context.Builder add(InjectionPoint injectionPoint) {
+        builderFor(injectionPoint.getRequest()).add(injectionPoint);
+        return this;
+      }
+
+      @Override
+      public Context.Builder add(InjectionPoint injectionPoint, Object[] values, int slot) {
+        InjectionRequest request = injectionPoint.getRequest();
+        Context.Builder builder = builderFor(request);
+        if (builder instanceof Context.Builder.Slotted) {
+          ((Context.Builder.Slotted) builder).add(injectionPoint, values, slot);
+        } else {
+          values[slot] = builder.add(injectionPoint).build().lookup(request);
+        }
+        return this;
+      }
+
+      @Override
+      public Context build() {
+        return this.context;
+      }
+
+      private Context.Builder builderFor(InjectionRequest request) {
+        return this.child.accepts(request)
+            ? this.child
+            : this.parent;
+      }
+    }
   }
 
   /**
@@ -217,7 +1090,7 @@ public interface Injector {
   enum Utils {
     ;
 
-    private static String join(String s, Iterable<String> input) {
+    static String join(String s, Iterable<String> input) {
       StringBuilder b = null;
       for (String each : input) {
         if (b == null) {
@@ -232,6 +1105,39 @@ public interface Injector {
           : b.toString();
     }
 
+    /**
+     * Returns true if {@code type} overrides a public method of {@code base}, which is
+     * specified by {@code name} and {@code parameterTypes}.
+     *
+     * @param type           A subclass of {@code base}.
+     * @param base           A class which declares the method.
+     * @param name           A name of the method.
+     * @param parameterTypes Parameter types of the method.
+     */
+    static boolean overrides(Class<?> type, Class<?> base, String name, Class<?>... parameterTypes) {
+      try {
+        return type.getMethod(name, parameterTypes).getDeclaringClass() != base;
+      } catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException(format("'%s' is not declared by '%s'", name, base.getCanonicalName()), e);
+      }
+    }
+
+    /**
+     * Returns true if {@code type} is a concrete class which has a constructor or a field
+     * annotated with {@link Inject}.
+     *
+     * @param type A class to be examined.
+     */
+    static boolean isInjectionTarget(Class<?> type) {
+      if (type.isPrimitive() || type.isArray() || type.isInterface() || Modifier.isAbstract(type.getModifiers()))
+        return false;
+      for (Constructor<?> each : type.getConstructors()) {
+        if (each.isAnnotationPresent(Inject.class))
+          return true;
+      }
+      return !Iterables.isEmpty(getTargetFieldsFromClass(type));
+    }
+
     /**
      * Returns all the "target" fields in {@code targetClass}, which are annotated
      * with {@link Inject}.
@@ -250,7 +1156,6 @@ public interface Injector {
       );
     }
 
-
     /**
      * Returns all the fields in {@code targetClass} defined directly in it and its
      * all the super-classes.
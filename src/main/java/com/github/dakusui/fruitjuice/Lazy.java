@@ -0,0 +1,26 @@
+package com.github.dakusui.fruitjuice;
+
+/**
+ * An interface that represents a value created when it is requested first time.
+ * <p>
+ * If a field or a constructor parameter of type {@code Lazy<T>} is injected, a value
+ * of type {@code T} is not created by {@code getInstance} but by the first call
+ * of {@link #get()}, and the same value is returned afterwards. This interface is
+ * thread-safe.
+ *
+ * <pre>
+ *   {@literal @}Inject
+ *   {@literal @}MultiThreaded(poolSize = 4)
+ *   Lazy&lt;ExecutorService&gt; executorService;
+ * </pre>
+ *
+ * @param <T> A type of the value.
+ * @see Provider
+ * @see InjectionPoint.Delivery
+ */
+public interface Lazy<T> {
+  /**
+   * Returns the value. It is created on the first call of this method.
+   */
+  T get();
+}
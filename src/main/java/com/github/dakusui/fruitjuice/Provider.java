@@ -0,0 +1,15 @@
+package com.github.dakusui.fruitjuice;
+
+/**
+ * An interface that provides values of type {@code T}.
+ *
+ * @param <T> A type of provided values.
+ * @see Scope
+ */
+public interface Provider<T> {
+  /**
+   * Returns a value. Whether a new value is created on each call or not depends
+   * on the implementation.
+   */
+  T get();
+}
@@ -0,0 +1,258 @@
+package com.github.dakusui.fruitjuice;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * An interface that determines which requests share a value created by a
+ * {@link Context.Builder}.
+ * <p>
+ * By default, requests share a value only if they are equal, i.e., their types and all
+ * their annotations, including {@code @Inject} and annotations irrelevant to what value
+ * is injected, are equal. Thus a field and a constructor parameter annotated with the
+ * same qualifier don't share a value. A strategy maps requests to keys, and requests
+ * whose keys are equal share a value.
+ *
+ * <pre>
+ *   new Context.Builder.Concurrent(RequestKeyStrategy.Standard.QUALIFIERS_ONLY) {
+ *     protected Object create(InjectionRequest request) {
+ *       ...
+ *     }
+ *   };
+ * </pre>
+ *
+ * @see Context.Builder.Base
+ * @see Context.Builder.Concurrent
+ * @see Context.Builder.Caching
+ * @see Context.Builder.Async.Base
+ */
+public interface RequestKeyStrategy {
+  /**
+   * Returns a key of {@code request}. Keys of equal requests must be equal, i.e., a
+   * strategy can only make more requests share a value.
+   * <p>
+   * A builder calls this method only once for equal requests.
+   *
+   * @param request A request whose key is returned.
+   */
+  Object keyOf(InjectionRequest request);
+
+  /**
+   * Built-in strategies.
+   */
+  enum Standard implements RequestKeyStrategy {
+    /**
+     * Requests share a value only if they are equal. This is the default strategy.
+     */
+    FULL {
+      @Override
+      public Object keyOf(InjectionRequest request) {
+        return request;
+      }
+    },
+    /**
+     * Requests share a value if their types and qualifier annotations are equal,
+     * i.e., {@code @Inject} is ignored.
+     *
+     * @see InjectionRequest.Utils#qualifierAnnotationsOf(InjectionRequest)
+     */
+    QUALIFIERS_ONLY {
+      @Override
+      public Object keyOf(InjectionRequest request) {
+        return InjectionRequest.Key.of(request.getType(), InjectionRequest.Utils.qualifierAnnotationsOf(request));
+      }
+    },
+    /**
+     * Requests share a value if their types are equal. All the annotations are ignored.
+     */
+    TYPE_ONLY {
+      @Override
+      public Object keyOf(InjectionRequest request) {
+        return request.getType();
+      }
+    }
+  }
+
+  /**
+   * A strategy where requests share a value if their types and significant annotations
+   * are equal. Only the annotation types declared by {@link #annotation(Class, String...)}
+   * are significant, and if attributes are given for an annotation type, only those
+   * attributes of it are compared.
+   *
+   * <pre>
+   *   new RequestKeyStrategy.Significant()
+   *       .annotation(MultiThreaded.class, "poolSize")
+   *       .annotation(Named.class);
+   * </pre>
+   * <p>
+   * An object of this class is mutable and methods return the object itself to
+   * chain calls. It should not be modified once it is given to a builder.
+   */
+  class Significant implements RequestKeyStrategy {
+    /*
+     * An empty list of attributes means all the attributes are significant.
+     */
+    private final Map<Class<? extends Annotation>, List<Method>> attributes = new LinkedHashMap<>();
+
+    /**
+     * Declares {@code annotationType} to be significant. If no {@code attributeNames}
+     * are given, all the attributes of it are compared.
+     *
+     * @param annotationType An annotation type to be compared.
+     * @param attributeNames Names of attributes of {@code annotationType} to be compared.
+     * @throws IllegalArgumentException {@code annotationType} doesn't have an attribute
+     *                                  named one of {@code attributeNames}.
+     */
+    public Significant annotation(Class<? extends Annotation> annotationType, String... attributeNames) {
+      checkNotNull(annotationType);
+      ImmutableList.Builder<Method> methods = ImmutableList.builder();
+      for (String each : attributeNames) {
+        Method method;
+        try {
+          method = annotationType.getDeclaredMethod(checkNotNull(each));
+        } catch (NoSuchMethodException e) {
+          throw new IllegalArgumentException(format("'%s' doesn't have an attribute '%s'", annotationType.getCanonicalName(), each), e);
+        }
+        ////
+        // Annotation types declared in non-public classes are not accessible otherwise.
+        method.setAccessible(true);
+        methods.add(method);
+      }
+      this.attributes.put(annotationType, methods.build());
+      return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Returns a list of the type of {@code request} and a set of its significant
+     * annotations or their significant attribute values.
+     */
+    @Override
+    public Object keyOf(InjectionRequest request) {
+      ImmutableSet.Builder<Object> annotations = ImmutableSet.builder();
+      for (Annotation each : request.getAnnotations()) {
+        List<Method> methods = this.attributes.get(each.annotationType());
+        if (methods == null)
+          continue;
+        if (methods.isEmpty()) {
+          annotations.add(each);
+          continue;
+        }
+        List<Object> values = new ArrayList<>(methods.size() + 1);
+        values.add(each.annotationType());
+        for (Method method : methods) {
+          values.add(valueOf(each, method));
+        }
+        annotations.add(values);
+      }
+      return ImmutableList.of(request.getType(), annotations.build());
+    }
+
+    private static Object valueOf(Annotation annotation, Method method) {
+      Object ret;
+      try {
+        ret = method.invoke(annotation);
+      } catch (IllegalAccessException e) {
+        throw Throwables.propagate(e);
+      } catch (InvocationTargetException e) {
+        throw Throwables.propagate(e.getCause());
+      }
+      if (!ret.getClass().isArray())
+        return ret;
+      ////
+      // Arrays are compared by identity otherwise.
+      int length = Array.getLength(ret);
+      List<Object> elements = new ArrayList<>(length);
+      for (int i = 0; i < length; i++) {
+        elements.add(Array.get(ret, i));
+      }
+      return Collections.unmodifiableList(elements);
+    }
+  }
+
+  /**
+   * A class that maps requests to representatives of them determined by a strategy,
+   * which builders use as keys of their registries. Requests whose keys are equal are
+   * mapped to the same representative, which is the first one of them given to this
+   * object.
+   * <p>
+   * This class is thread-safe. A key of a request is computed only once per request
+   * object, and mapping a request already seen is a lookup of a hash map.
+   * <p>
+   * Requests and keys are held weakly. A mapping is kept as long as its representative
+   * is reachable, e.g., from a registry of a builder or from a plan, so this object
+   * doesn't keep values evicted by {@link Context.Builder.Caching} or requests of
+   * unloaded classes alive.
+   */
+  class Canonicalizer {
+    private final RequestKeyStrategy                               strategy;
+    /*
+     * Compares requests by identity, since weak keys are.
+     */
+    private final ConcurrentMap<InjectionRequest, InjectionRequest> byRequest = CacheBuilder.newBuilder()
+        .weakKeys()
+        .weakValues()
+        .<InjectionRequest, InjectionRequest>build()
+        .asMap();
+    private final ConcurrentMap<Object, InjectionRequest>           byKey     = CacheBuilder.newBuilder()
+        .weakValues()
+        .<Object, InjectionRequest>build()
+        .asMap();
+
+    /**
+     * Creates an object of this class.
+     *
+     * @param strategy A strategy which determines keys of requests.
+     */
+    public Canonicalizer(RequestKeyStrategy strategy) {
+      this.strategy = checkNotNull(strategy);
+    }
+
+    /**
+     * Returns the representative of requests whose keys are equal to the one of
+     * {@code request}. If the strategy is {@link Standard#FULL}, {@code request} itself
+     * is returned.
+     *
+     * @param request A request to be mapped.
+     */
+    public InjectionRequest canonicalize(InjectionRequest request) {
+      if (this.strategy == Standard.FULL)
+        return request;
+      InjectionRequest ret = this.byRequest.get(request);
+      if (ret == null) {
+        Object key = this.strategy.keyOf(request);
+        checkArgument(key != null, "'%s' returned null for '%s'", this.strategy, request);
+        ret = this.byKey.putIfAbsent(key, request);
+        if (ret == null)
+          ret = request;
+        this.byRequest.putIfAbsent(request, ret);
+      }
+      return ret;
+    }
+
+    /**
+     * Returns the strategy of this object.
+     */
+    public RequestKeyStrategy getStrategy() {
+      return this.strategy;
+    }
+  }
+}
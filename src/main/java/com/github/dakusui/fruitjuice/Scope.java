@@ -0,0 +1,282 @@
+package com.github.dakusui.fruitjuice;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * An interface that determines how long a value created for an {@link InjectionRequest}
+ * is reused.
+ * <p>
+ * A scope is attached to a request by annotating one of its qualifier annotations with
+ * {@link Scoped}, or by overriding {@code scopeFor} of a builder, e.g.,
+ * {@link Context.Builder.Base#scopeFor(InjectionRequest)}. An object of a scope is created
+ * per {@code Context.Builder}, which is usually per {@code Injector}.
+ * <p>
+ * Thread-safe builders, e.g., {@link Context.Builder.Concurrent}, call a scope from more
+ * than one thread at once, so implementations of this interface should be thread-safe.
+ *
+ * @see Scoped
+ */
+public interface Scope {
+  /**
+   * Returns a value for {@code request}. If this scope holds a value for an equal request,
+   * it will be returned. Otherwise, a value is created by {@code unscoped}.
+   *
+   * @param request  A request for which a value is returned.
+   * @param unscoped A provider that creates a new value for {@code request}.
+   * @param <T>      A type of returned value.
+   */
+  <T> T get(InjectionRequest request, Provider<T> unscoped);
+
+  /**
+   * A scope in which a new value is created every time it is requested.
+   * This is the default scope.
+   */
+  class None implements Scope {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T get(InjectionRequest request, Provider<T> unscoped) {
+      return unscoped.get();
+    }
+  }
+
+  /**
+   * A scope in which a value is created only once and reused as long as this
+   * object is alive, which is usually as long as the injector.
+   * <p>
+   * Values for different requests are created concurrently, and ones for equal requests
+   * only once at a time. If creation fails, the value is created again next time.
+   */
+  class Singleton implements Scope {
+    private final ConcurrentMap<InjectionRequest, Holder> values = new ConcurrentHashMap<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T get(InjectionRequest request, Provider<T> unscoped) {
+      Holder holder = this.values.get(request);
+      if (holder == null) {
+        Holder newHolder = new Holder();
+        holder = this.values.putIfAbsent(request, newHolder);
+        if (holder == null) {
+          holder = newHolder;
+        }
+      }
+      return holder.get(unscoped);
+    }
+
+    /*
+     * Holds a value for a request, which is created by the first caller.
+     */
+    private static class Holder {
+      private volatile boolean created;
+      private          Object  value;
+
+      private <T> T get(Provider<T> unscoped) {
+        if (!this.created) {
+          synchronized (this) {
+            if (!this.created) {
+              this.value = unscoped.get();
+              this.created = true;
+            }
+          }
+        }
+        //noinspection unchecked
+        return (T) this.value;
+      }
+    }
+  }
+
+  /**
+   * A scope in which a value is shared within a graph of objects created by one call
+   * of {@code Injector#getInstance}, including ones created by nested calls on the same
+   * thread.
+   * <p>
+   * Outside of {@code Injector#getInstance}, this scope behaves as {@link None}.
+   */
+  class Graph implements Scope {
+    private static final ThreadLocal<State> STATE = new ThreadLocal<State>() {
+      @Override
+      protected State initialValue() {
+        return new State();
+      }
+    };
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T get(InjectionRequest request, Provider<T> unscoped) {
+      State state = STATE.get();
+      if (state.depth == 0)
+        return unscoped.get();
+      Map<InjectionRequest, Object> values = state.values.get(this);
+      if (values == null) {
+        state.values.put(this, values = new HashMap<>());
+      }
+      if (values.containsKey(request)) {
+        //noinspection unchecked
+        return (T) values.get(request);
+      }
+      T ret = unscoped.get();
+      values.put(request, ret);
+      return ret;
+    }
+
+    /**
+     * Marks a beginning of a graph on the current thread. Calls can be nested.
+     */
+    static void enter() {
+      STATE.get().depth++;
+    }
+
+    /**
+     * Marks a beginning of a graph on the current thread, which continues a graph
+     * captured by {@link #capture()} on another thread. If the current thread is already
+     * in a graph, the captured one is not continued and the call is nested.
+     *
+     * @param captured Values held by a graph, returned by {@code capture}.
+     */
+    static void enter(Map<Graph, Map<InjectionRequest, Object>> captured) {
+      State state = STATE.get();
+      if (state.depth++ == 0) {
+        state.values.putAll(captured);
+      }
+    }
+
+    /**
+     * Returns a copy of values held by the graph on the current thread, with which
+     * {@link #enter(Map)} continues the graph on another thread.
+     */
+    static Map<Graph, Map<InjectionRequest, Object>> capture() {
+      Map<Graph, Map<InjectionRequest, Object>> ret = new IdentityHashMap<>();
+      for (Map.Entry<Graph, Map<InjectionRequest, Object>> each : STATE.get().values.entrySet()) {
+        ret.put(each.getKey(), new HashMap<>(each.getValue()));
+      }
+      return ret;
+    }
+
+    /**
+     * Marks an end of a graph on the current thread. Values held in the graph are
+     * discarded when the outermost graph ends.
+     */
+    static void exit() {
+      State state = STATE.get();
+      ////
+      // The state itself is kept so that a graph doesn't allocate one every time.
+      if (--state.depth == 0 && !state.values.isEmpty()) {
+        state.values.clear();
+      }
+    }
+
+    private static class State {
+      private int depth = 0;
+      private final Map<Graph, Map<InjectionRequest, Object>> values = new IdentityHashMap<>();
+    }
+  }
+
+  /**
+   * A scope in which a value is created once per thread.
+   * <p>
+   * Values are held by this object rather than by threads, so they are released with this
+   * object or their threads. Values of a thread which lives longer, e.g., one in a pool,
+   * are released by {@link #clear()}.
+   */
+  class PerThread implements Scope {
+    /*
+     * Threads are compared by identity, since weak keys are.
+     */
+    private final ConcurrentMap<Thread, Map<InjectionRequest, Object>> values = CacheBuilder.newBuilder()
+        .weakKeys()
+        .<Thread, Map<InjectionRequest, Object>>build()
+        .asMap();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T get(InjectionRequest request, Provider<T> unscoped) {
+      Thread thread = Thread.currentThread();
+      Map<InjectionRequest, Object> values = this.values.get(thread);
+      if (values == null) {
+        ////
+        // Only the current thread puts values for itself.
+        this.values.put(thread, values = new HashMap<>());
+      }
+      if (values.containsKey(request)) {
+        //noinspection unchecked
+        return (T) values.get(request);
+      }
+      T ret = unscoped.get();
+      values.put(request, ret);
+      return ret;
+    }
+
+    /**
+     * Discards values held for the current thread. Values are created again when
+     * they are requested by the thread next time.
+     */
+    public void clear() {
+      this.values.remove(Thread.currentThread());
+    }
+  }
+
+  /**
+   * A factory class of {@code Scope}s.
+   */
+  enum Factory {
+    ;
+
+    /**
+     * Creates a new scope object of {@code scopeClass}.
+     *
+     * @param scopeClass A class of a scope. It must have a public constructor with no parameter.
+     */
+    public static Scope create(Class<? extends Scope> scopeClass) {
+      try {
+        return checkNotNull(scopeClass).getDeclaredConstructor().newInstance();
+      } catch (InvocationTargetException e) {
+        throw Throwables.propagate(e.getCause());
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalArgumentException(format("Failed to instantiate scope '%s'", scopeClass.getCanonicalName()), e);
+      }
+    }
+
+    /**
+     * Returns a class of a scope specified by {@link Scoped} on qualifier annotations
+     * of {@code request}, or {@code null} if no scope is specified.
+     *
+     * @param request A request whose scope is returned.
+     */
+    public static Class<? extends Scope> scopeClassOf(InjectionRequest request) {
+      Class<? extends Scope> ret = null;
+      for (Annotation each : InjectionRequest.Utils.qualifierAnnotationsOf(request)) {
+        Scoped scoped = each.annotationType().getAnnotation(Scoped.class);
+        if (scoped == null)
+          continue;
+        checkArgument(
+            ret == null || ret.equals(scoped.value()),
+            "More than one scopes are specified for '%s': %s, %s",
+            request, ret, scoped.value()
+        );
+        ret = scoped.value();
+      }
+      return ret;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package com.github.dakusui.fruitjuice;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A meta-annotation to specify a {@link Scope} of values requested by injection points
+ * annotated with an annotation annotated with this.
+ *
+ * For instance, values for injection points annotated with {@code @MultiThreaded} below
+ * are created only once per injector.
+ *
+ * <pre>
+ * {@literal @}Retention(RetentionPolicy.RUNTIME)
+ * {@literal @}Scoped(Scope.Singleton.class)
+ * public {@literal @}interface MultiThreaded {
+ *   int poolSize() default 2;
+ * }
+ * </pre>
+ *
+ * A scope class must have a public constructor with no parameter.
+ *
+ * @see Scope
+ * @see Context.Builder.Base#scopeFor(InjectionRequest)
+ */
+@Target(ElementType.ANNOTATION_TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Scoped {
+  /**
+   * Returns a class of a scope.
+   */
+  Class<? extends Scope> value();
+}
@@ -0,0 +1,87 @@
+package com.github.dakusui.fruitjuice;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Scopes of values created by a {@link Context.Builder}, which are shared by all the
+ * builders of this library. An object of this class is held by a builder and creates
+ * a scope object once per class.
+ * <p>
+ * This class is thread-safe, so that thread-safe builders can resolve scopes of requests
+ * added concurrently.
+ *
+ * @see Context.Builder.Base#scopeFor(InjectionRequest)
+ */
+final class Scopes {
+  /**
+   * A scope given to requests for which no scope is specified. A builder holds values
+   * of such requests by itself.
+   */
+  static final Scope NONE = new Scope.None();
+
+  private final ConcurrentMap<Class<? extends Scope>, Scope> byClass   = new ConcurrentHashMap<>();
+  private final ConcurrentMap<InjectionRequest, Scope>       byRequest = new ConcurrentHashMap<>();
+  private final ConcurrentMap<InjectionRequest, Scope>       bound     = new ConcurrentHashMap<>();
+
+  /**
+   * Returns a scope specified by {@link Scoped} on qualifier annotations of {@code request},
+   * or {@link #NONE} if none is specified.
+   *
+   * @param request A canonical request whose scope is returned.
+   */
+  Scope scopeFor(InjectionRequest request) {
+    Scope ret = this.byRequest.get(request);
+    if (ret == null) {
+      Class<? extends Scope> scopeClass = Scope.Factory.scopeClassOf(request);
+      ret = scopeClass == null
+          ? NONE
+          : scopeOf(scopeClass);
+      this.byRequest.put(request, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns a scope object of {@code scopeClass} held by this object. A scope object
+   * is created only once per class, and {@link Scope.None} is always {@link #NONE}.
+   *
+   * @param scopeClass A class of a scope.
+   */
+  Scope scopeOf(Class<? extends Scope> scopeClass) {
+    if (scopeClass == Scope.None.class)
+      return NONE;
+    Scope ret = this.byClass.get(scopeClass);
+    if (ret == null) {
+      Scope newScope = Scope.Factory.create(scopeClass);
+      ret = this.byClass.putIfAbsent(scopeClass, newScope);
+      if (ret == null) {
+        ret = newScope;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Records that values of {@code request} are held by {@code scope} rather than by
+   * a builder, so that a context can find them by {@link #boundTo(InjectionRequest)}.
+   *
+   * @param request A canonical request added to a builder.
+   * @param scope   A scope other than {@link #NONE}.
+   */
+  void bind(InjectionRequest request, Scope scope) {
+    if (this.bound.get(request) != scope) {
+      this.bound.put(request, scope);
+    }
+  }
+
+  /**
+   * Returns a scope which holds values of {@code request}, or {@code null} if it is
+   * not bound to any scope.
+   *
+   * @param request A canonical request.
+   */
+  Scope boundTo(InjectionRequest request) {
+    return this.bound.get(request);
+  }
+}
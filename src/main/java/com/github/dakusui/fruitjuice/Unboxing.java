@@ -0,0 +1,124 @@
+package com.github.dakusui.fruitjuice;
+
+import static java.lang.String.format;
+
+/**
+ * A utility class for values of {@code int}, {@code long} and {@code double}, which
+ * are injected without being boxed.
+ * <p>
+ * A primitive value held by a builder is encoded into a {@code long}: an {@code int}
+ * is sign-extended and a {@code double} is converted by {@link Double#doubleToRawLongBits(double)}.
+ *
+ * @see Context.Unboxed
+ */
+enum Unboxing {
+  ;
+
+  /**
+   * Returns {@code true} if values of {@code type} are injected without being boxed.
+   *
+   * @param type A type of requested values.
+   */
+  static boolean isSpecialized(Class<?> type) {
+    return type == int.class || type == long.class || type == double.class;
+  }
+
+  /**
+   * Returns a boxed value of {@code bits} encoded from a value of {@code type}.
+   *
+   * @param type A type of the encoded value, which is {@code int}, {@code long} or {@code double}.
+   * @param bits An encoded value.
+   */
+  static Object box(Class<?> type, long bits) {
+    if (type == int.class)
+      return (int) bits;
+    if (type == long.class)
+      return bits;
+    return Double.longBitsToDouble(bits);
+  }
+
+  /**
+   * Looks up an {@code int} value for {@code request} from {@code context}. If the
+   * context is not {@link Context.Unboxed}, a boxed value is looked up and unboxed.
+   *
+   * @param context A context from which a value is looked up.
+   * @param request A request whose type is {@code int}.
+   */
+  static int lookupInt(Context context, InjectionRequest request) {
+    return context instanceof Context.Unboxed
+        ? ((Context.Unboxed) context).lookupInt(request)
+        : intValue(request, context.lookup(request));
+  }
+
+  /**
+   * Looks up a {@code long} value for {@code request} from {@code context}.
+   *
+   * @param context A context from which a value is looked up.
+   * @param request A request whose type is {@code long}.
+   * @see #lookupInt(Context, InjectionRequest)
+   */
+  static long lookupLong(Context context, InjectionRequest request) {
+    return context instanceof Context.Unboxed
+        ? ((Context.Unboxed) context).lookupLong(request)
+        : longValue(request, context.lookup(request));
+  }
+
+  /**
+   * Looks up a {@code double} value for {@code request} from {@code context}.
+   *
+   * @param context A context from which a value is looked up.
+   * @param request A request whose type is {@code double}.
+   * @see #lookupInt(Context, InjectionRequest)
+   */
+  static double lookupDouble(Context context, InjectionRequest request) {
+    return context instanceof Context.Unboxed
+        ? ((Context.Unboxed) context).lookupDouble(request)
+        : doubleValue(request, context.lookup(request));
+  }
+
+  /**
+   * Unwraps {@code value} created for {@code request} as {@code int}. Same as Java's
+   * core reflection, widening conversions are applied.
+   *
+   * @param request A request for which {@code value} is created.
+   * @param value   A value to be unwrapped.
+   * @throws IllegalArgumentException {@code value} cannot be converted to {@code int}.
+   */
+  static int intValue(InjectionRequest request, Object value) {
+    return InjectionPlan.Instantiator.intValue(check(int.class, request, value));
+  }
+
+  /**
+   * Unwraps {@code value} created for {@code request} as {@code long}.
+   *
+   * @param request A request for which {@code value} is created.
+   * @param value   A value to be unwrapped.
+   * @throws IllegalArgumentException {@code value} cannot be converted to {@code long}.
+   * @see #intValue(InjectionRequest, Object)
+   */
+  static long longValue(InjectionRequest request, Object value) {
+    return InjectionPlan.Instantiator.longValue(check(long.class, request, value));
+  }
+
+  /**
+   * Unwraps {@code value} created for {@code request} as {@code double}.
+   *
+   * @param request A request for which {@code value} is created.
+   * @param value   A value to be unwrapped.
+   * @throws IllegalArgumentException {@code value} cannot be converted to {@code double}.
+   * @see #intValue(InjectionRequest, Object)
+   */
+  static double doubleValue(InjectionRequest request, Object value) {
+    return InjectionPlan.Instantiator.doubleValue(check(double.class, request, value));
+  }
+
+  private static Object check(Class<?> type, InjectionRequest request, Object value) {
+    if (!InjectionPlan.Invokers.isAssignable(type, value))
+      throw new IllegalArgumentException(format(
+          "Can not inject %s to %s '%s'",
+          value == null ? "null value" : value.getClass().getName(),
+          type.getName(),
+          request));
+    return value;
+  }
+}
@@ -102,6 +102,7 @@
  * @see com.github.dakusui.fruitjuice.Injector
  * @see com.github.dakusui.fruitjuice.InjectionPoint
  * @see com.github.dakusui.fruitjuice.InjectionRequest
+ * @see com.github.dakusui.fruitjuice.InjectionPlan
  * @see <a href="https://github.com/google/guice/wiki/CustomInjections">Custom injections of Guice</a>
  */
 package com.github.dakusui.fruitjuice;
\ No newline at end of file
@@ -1,9 +1,13 @@
 package com.github.dakusui.fruitjuice.examples.executorservice;
 
+import com.github.dakusui.fruitjuice.Scope;
+import com.github.dakusui.fruitjuice.Scoped;
+
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
 @Retention(RetentionPolicy.RUNTIME)
+@Scoped(Scope.Singleton.class)
 public @interface MultiThreaded {
   int poolSize() default 2;
 }
@@ -0,0 +1,205 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionListener;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.examples.calc.Add;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.InjectionType;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncInjectionTest {
+  public static class Independent {
+    @Inject
+    @Add({ 1 })
+    public int first;
+
+    @Inject
+    @Add({ 1, 2 })
+    public int second;
+
+    private final int third;
+
+    @Inject
+    public Independent(@Add({ 1, 2, 3 }) int third) {
+      this.third = third;
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void givenIndependentValues$whenInjectedAsynchronously$thenCreatedConcurrently() throws Exception {
+    final CountDownLatch allStarted = new CountDownLatch(3);
+    Injector.Extended injector = FruitJuice.createExtendedInjector(new Context.Builder.Async.Base() {
+      @Override
+      protected ListenableFuture<?> createAsync(final InjectionRequest request, Executor executor) {
+        ListenableFutureTask<Integer> ret = ListenableFutureTask.create(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            allStarted.countDown();
+            ////
+            // Completes only if all the values are being created at the same time.
+            assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+            return request.getAnnotation(Add.class).value().length;
+          }
+        });
+        executor.execute(ret);
+        return ret;
+      }
+    });
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      Independent independent = injector.getInstanceAsync(Independent.class, executorService).get();
+
+      assertEquals(1, independent.first);
+      assertEquals(2, independent.second);
+      assertEquals(3, independent.third);
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void givenNestedFixture$whenInjectedAsynchronously$thenInjectedCorrectly() throws Exception {
+    final ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      ExampleFixture fixture = FruitJuice.createExtendedInjector(new Context.Builder.Async.Base() {
+        @Override
+        protected ListenableFuture<?> createAsync(InjectionRequest request, Executor executor) {
+          if (InjectionType.typeOf(request) == InjectionType.NESTED_FIXTURE)
+            return FruitJuice.createExtendedInjector(this).getInstanceAsync(ExampleFixture.NestedFixture.class, executor);
+          return Futures.immediateFuture(InjectionType.typeOf(request).create(this, request));
+        }
+      }).getInstanceAsync(ExampleFixture.class, executorService).get();
+
+      assertEquals("component:PATROCLUS({controller=hostname:80})", fixture.getPatroclus().toString());
+      assertEquals("component:PRIAMOS({})", fixture.getNestedFixture().priamos.toString());
+      assertEquals("HelloSystem", fixture.getMessage());
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class, timeout = 10000)
+  public void givenFailingCreation$whenInjectedAsynchronously$thenFutureFails() throws Throwable {
+    Injector.Extended injector = FruitJuice.createExtendedInjector(new Context.Builder.Async.Base() {
+      @Override
+      protected ListenableFuture<?> createAsync(InjectionRequest request, Executor executor) {
+        throw new IllegalStateException();
+      }
+    });
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      injector.getInstanceAsync(Independent.class, executorService).get();
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class, timeout = 10000)
+  public void givenInvalidClass$whenInjectedAsynchronously$thenFutureFails() throws Throwable {
+    ListenableFuture<Invalid> future = createCountingInjector(new InjectionListener.Metrics(1)).getInstanceAsync(Invalid.class, MoreExecutors.sameThreadExecutor());
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void givenListener$whenInjectedAsynchronously$thenEventsAreReportedAsGetInstance() throws Exception {
+    InjectionListener.Metrics metrics = new InjectionListener.Metrics(1);
+    ExecutorService executorService = Executors.newFixedThreadPool(2);
+    try {
+      Independent independent = createCountingInjector(metrics).getInstanceAsync(Independent.class, executorService).get();
+
+      assertEquals(3, independent.third);
+    } finally {
+      executorService.shutdown();
+    }
+    InjectionListener.Metrics.Stats stats = metrics.getTargetStats(Independent.class);
+    assertEquals(1, stats.getCount());
+    assertEquals(3, stats.getHistogram(InjectionListener.Event.ADD).getCount());
+    assertEquals(1, stats.getHistogram(InjectionListener.Event.CONSTRUCT).getCount());
+    assertEquals(1, stats.getHistogram(InjectionListener.Event.GET_INSTANCE).getCount());
+  }
+
+  @Test(timeout = 10000)
+  public void givenFailingCreations$whenInjectedAsynchronously$thenFailuresAreNotLogged() throws Exception {
+    final List<LogRecord> records = new CopyOnWriteArrayList<>();
+    Handler handler = new Handler() {
+      @Override
+      public void publish(LogRecord record) {
+        records.add(record);
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    ////
+    // Guava logs failures of futures combined by Futures.allAsList except the first one.
+    Logger logger = Logger.getLogger(Futures.class.getPackage().getName());
+    logger.addHandler(handler);
+    try {
+      FruitJuice.createExtendedInjector(new Context.Builder.Async.Base() {
+        @Override
+        protected ListenableFuture<?> createAsync(InjectionRequest request, Executor executor) {
+          throw new IllegalStateException();
+        }
+      }).getInstanceAsync(Independent.class, MoreExecutors.sameThreadExecutor()).get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    } finally {
+      logger.removeHandler(handler);
+    }
+
+    assertEquals(Collections.emptyList(), records);
+  }
+
+  private static Injector.Extended createCountingInjector(InjectionListener listener) {
+    return new Injector.Impl(new Context.Builder.Async.Base() {
+      @Override
+      protected ListenableFuture<?> createAsync(InjectionRequest request, Executor executor) {
+        return Futures.immediateFuture(request.getAnnotation(Add.class).value().length);
+      }
+    }, Injector.Engine.REFLECTIVE, null, listener);
+  }
+
+  public static class Invalid {
+    @Inject
+    @Add({ 1 })
+    public final int value = 0;
+  }
+}
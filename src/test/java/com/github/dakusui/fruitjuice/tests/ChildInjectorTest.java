@@ -0,0 +1,156 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.Lazy;
+import com.github.dakusui.fruitjuice.Scope;
+import com.github.dakusui.fruitjuice.Scoped;
+import org.junit.Test;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ChildInjectorTest {
+  @Test
+  public void givenPartialChildren$whenInstancesAreRequested$thenPerRequestValuesAreFromChildren() {
+    Injector.Extended parent = new Injector.Impl(new ParentBuilder());
+    Handler first = parent.createChild(new TenantBuilder("first")).getInstance(Handler.class);
+    Handler second = parent.createChild(new TenantBuilder("second")).getInstance(Handler.class);
+
+    assertEquals("first", first.tenant);
+    assertEquals("second", second.tenant);
+    assertEquals(8080, first.port);
+    assertSame(first.service, second.service);
+  }
+
+  @Test
+  public void givenChildren$whenInstancesAreRequested$thenPlansAreSharedWithParent() {
+    final AtomicInteger count = new AtomicInteger(0);
+    Injector.Extended parent = new Injector.Impl(new ParentBuilder()) {
+      @Override
+      protected <T> InjectionPlan<T> createPlan(Class<T> targetClass) {
+        count.incrementAndGet();
+        return super.createPlan(targetClass);
+      }
+    };
+    for (int i = 0; i < 100; i++) {
+      assertEquals("tenant-" + i, parent.createChild(new TenantBuilder("tenant-" + i)).getInstance(Handler.class).tenant);
+    }
+    parent.getInstance(Service.class);
+
+    ////
+    // Handler and Service.
+    assertEquals(2, count.get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void givenNonPartialChild$whenCreated$thenExceptionThrown() {
+    new Injector.Impl(new ParentBuilder()).createChild(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return "child";
+      }
+    });
+  }
+
+  @Test
+  public void givenGrandchild$whenInstanceIsRequested$thenResolvedByNearestBuilder() {
+    Injector.Extended child = new Injector.Impl(new ParentBuilder()).createChild(new TenantBuilder("child"));
+    Handler handler = child.createChild(new TenantBuilder("grandchild")).getInstance(Handler.class);
+
+    assertEquals("grandchild", handler.tenant);
+    assertEquals(8080, handler.port);
+    assertSame(handler.service, child.getInstance(Handler.class).service);
+  }
+
+  @Test
+  public void givenChildCalledWhileAnotherIsInjecting$whenInstanceIsRequested$thenValuesAreNotMixed() {
+    final Injector.Extended parent = new Injector.Impl(new ParentBuilder());
+    Handler handler = parent.createChild(new TenantBuilder("outer") {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return parent.createChild(new TenantBuilder("inner")).getInstance(Handler.class).tenant + "/outer";
+      }
+    }).getInstance(Handler.class);
+
+    assertEquals("inner/outer", handler.tenant);
+    assertEquals(8080, handler.port);
+  }
+
+  @Test
+  public void givenPartialChild$whenLazyValueIsInjected$thenResolvedByChild() {
+    LazyHandler handler = new Injector.Impl(new ParentBuilder()).createChild(new TenantBuilder("lazy")).getInstance(LazyHandler.class);
+
+    assertEquals("lazy", handler.tenant.get());
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  public @interface Tenant {
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  @Scoped(Scope.Singleton.class)
+  public @interface Shared {
+  }
+
+  public static class Service {
+  }
+
+  public static class Handler {
+    @Inject
+    @Tenant
+    public String tenant;
+
+    @Inject
+    public int port;
+
+    @Inject
+    @Shared
+    public Service service;
+  }
+
+  public static class LazyHandler {
+    @Inject
+    @Tenant
+    public Lazy<String> tenant;
+  }
+
+  private static class ParentBuilder extends Context.Builder.Base {
+    @Override
+    protected Object create(InjectionRequest request) {
+      if (request.getType() == Service.class)
+        return new Service();
+      throw new IllegalArgumentException(String.valueOf(request));
+    }
+
+    @Override
+    protected int createInt(InjectionRequest request) {
+      return 8080;
+    }
+  }
+
+  private static class TenantBuilder extends Context.Builder.Base implements Context.Builder.Partial {
+    private final String tenant;
+
+    private TenantBuilder(String tenant) {
+      this.tenant = tenant;
+    }
+
+    @Override
+    public boolean accepts(InjectionRequest request) {
+      return request.isAnnotationPresent(Tenant.class);
+    }
+
+    @Override
+    protected Object create(InjectionRequest request) {
+      return this.tenant;
+    }
+  }
+}
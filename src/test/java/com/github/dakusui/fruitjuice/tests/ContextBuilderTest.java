@@ -0,0 +1,187 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.InjectionType;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ContextBuilderTest {
+  @Test
+  public void givenConcurrentBuilder$whenSameRequestIsAddedByManyThreads$thenCreatedOnlyOnce() throws Exception {
+    final int numThreads = 8;
+    final AtomicInteger count = new AtomicInteger(0);
+    final CountDownLatch started = new CountDownLatch(numThreads);
+    final Context.Builder builder = new Context.Builder.Concurrent() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        count.incrementAndGet();
+        try {
+          ////
+          // Give the other threads a chance to request the same value.
+          started.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return new Object();
+      }
+    };
+    final InjectionPoint point = pointOf(ExampleFixture.class);
+    ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Object>> values = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        values.add(executorService.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            started.countDown();
+            return builder.add(point).build().lookup(point.getRequest());
+          }
+        }));
+      }
+      for (Future<Object> each : values) {
+        assertSame(values.get(0).get(), each.get());
+      }
+    } finally {
+      executorService.shutdown();
+    }
+    assertEquals(1, count.get());
+  }
+
+  @Test
+  public void givenConcurrentBuilder$whenCreationFails$thenRetriedByNextAdd() {
+    final AtomicInteger count = new AtomicInteger(0);
+    Context.Builder builder = new Context.Builder.Concurrent() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        if (count.incrementAndGet() == 1)
+          throw new IllegalStateException("first");
+        return "second";
+      }
+    };
+    InjectionPoint point = pointOf(ExampleFixture.class);
+    try {
+      builder.add(point);
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("first", e.getMessage());
+    }
+    assertEquals("second", builder.add(point).build().lookup(point.getRequest()));
+    assertEquals(2, count.get());
+  }
+
+  @Test
+  public void givenConcurrentBuilder$whenExampleFixtureIsInjected$thenInjectedCorrectly() {
+    Injector injector = FruitJuice.createInjector(new Context.Builder.Concurrent() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return InjectionType.typeOf(request).create(this, request);
+      }
+    });
+    ExampleFixture fixture = injector.getInstance(ExampleFixture.class);
+
+    assertEquals("component:PATROCLUS({controller=hostname:80})", fixture.getPatroclus().toString());
+    assertEquals("component:PRIAMOS({})", fixture.getNestedFixture().priamos.toString());
+    assertSame(fixture.getPatroclus(), injector.getInstance(ExampleFixture.class).getPatroclus());
+  }
+
+  @Test
+  public void givenCachingBuilderWithMaximumSize$whenMoreValuesAreAdded$thenEvictedAndCounted() {
+    final AtomicInteger count = new AtomicInteger(0);
+    Context.Builder.Caching builder = new Context.Builder.Caching(new Context.Builder.Caching.Policy().maximumSize(1)) {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return count.incrementAndGet();
+      }
+    };
+    List<InjectionPoint> points = InjectionPlan.Factory.create(ExampleFixture.class).getFieldInjectionPoints();
+    builder.add(points.get(0));
+    builder.add(points.get(0));
+    builder.add(points.get(1));
+    Context context = builder.add(points.get(0)).build();
+
+    assertEquals(3, context.lookup(points.get(0).getRequest()));
+    assertEquals(1, builder.getStats().getHitCount());
+    assertEquals(3, builder.getStats().getMissCount());
+    assertEquals(2, builder.getStats().getEvictionCount());
+  }
+
+  @Test
+  public void givenCachingBuilderWithNullValue$whenLookedUp$thenNullIsCachedAndReturned() {
+    final AtomicInteger count = new AtomicInteger(0);
+    Context.Builder.Caching builder = new Context.Builder.Caching(new Context.Builder.Caching.Policy()) {
+      @Override
+      protected Object create(InjectionRequest request) {
+        count.incrementAndGet();
+        return null;
+      }
+    };
+    InjectionPoint point = pointOf(ExampleFixture.class);
+
+    assertNull(builder.add(point).add(point).build().lookup(point.getRequest()));
+    assertEquals(1, count.get());
+  }
+
+  @Test
+  public void givenCachingBuilderWithRefresh$whenValueIsStale$thenRefreshedByExecutor() throws Exception {
+    final AtomicInteger count = new AtomicInteger(0);
+    Context.Builder.Caching builder = new Context.Builder.Caching(
+        new Context.Builder.Caching.Policy()
+            .values(Context.Builder.Caching.Policy.References.SOFT)
+            .refreshAfterWrite(500, TimeUnit.MILLISECONDS, MoreExecutors.sameThreadExecutor())
+    ) {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return count.incrementAndGet();
+      }
+    };
+    InjectionPoint point = pointOf(ExampleFixture.class);
+
+    assertEquals(1, builder.add(point).build().lookup(point.getRequest()));
+    TimeUnit.MILLISECONDS.sleep(600);
+    assertEquals(2, builder.add(point).build().lookup(point.getRequest()));
+  }
+
+  @Test
+  public void givenCachingBuilderWithExpiration$whenValueIsExpired$thenCreatedAgain() {
+    final AtomicInteger count = new AtomicInteger(0);
+    Context.Builder.Caching builder = new Context.Builder.Caching(
+        new Context.Builder.Caching.Policy().expireAfterWrite(0, TimeUnit.SECONDS)
+    ) {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return count.incrementAndGet();
+      }
+    };
+    InjectionPoint point = pointOf(ExampleFixture.class);
+    builder.add(point);
+    builder.add(point);
+
+    assertEquals(2, count.get());
+    assertEquals(0, builder.getStats().getHitCount());
+  }
+
+  private static InjectionPoint pointOf(Class<?> targetClass) {
+    return InjectionPlan.Factory.create(targetClass).getFieldInjectionPoints().get(0);
+  }
+}
@@ -0,0 +1,153 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.Lazy;
+import org.junit.Test;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class IndexedLookupTest {
+  @Test
+  public void givenEqualRequests$whenInstancesAreRequested$thenLookedUpOncePerDistinctRequest() {
+    CountingBuilder builder = new CountingBuilder();
+    List<Target> targets = FruitJuice.createExtendedInjector(builder).getInstances(Target.class, 10);
+
+    assertEquals(10, targets.size());
+    for (Target each : targets) {
+      assertSame(each.first, each.second);
+      assertEquals("parameter", each.parameter);
+    }
+    ////
+    // The fields share a request, and the constructor parameter has another one.
+    assertEquals(2, builder.lookups.get());
+  }
+
+  @Test
+  public void givenGeneratedPlan$whenInstanceIsRequested$thenValuesAreReadFromSlots() {
+    CountingBuilder builder = new CountingBuilder();
+    Target target = FruitJuice.createInjector(builder, Injector.Engine.GENERATED).getInstance(Target.class);
+
+    assertSame(target.first, target.second);
+    assertEquals(2, builder.lookups.get());
+  }
+
+  @Test
+  public void givenLazyAndDirectPointsWithEqualRequests$whenInstanceIsRequested$thenBothAreInjected() {
+    Mixed mixed = FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return new StringBuilder("value");
+      }
+    }).getInstance(Mixed.class);
+
+    assertEquals("value", mixed.direct.toString());
+    assertEquals("value", mixed.lazy.get().toString());
+    assertNotSame(mixed.direct, mixed.lazy.get());
+  }
+
+  @Test
+  public void givenBuilderCallingInjector$whenInstancesAreRequested$thenNestedCallsDoNotShareSlots() {
+    final Injector[] injector = new Injector[1];
+    injector[0] = FruitJuice.createInjector(new Context.Builder.Concurrent() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return request.getType() == Target.class
+            ? injector[0].getInstance(Target.class)
+            : request.getType() == String.class
+            ? request.getAnnotation(Named.class).value()
+            : new Object();
+      }
+    });
+    for (int i = 0; i < 2; i++) {
+      Outer outer = injector[0].getInstance(Outer.class);
+
+      assertEquals("parameter", outer.target.parameter);
+      assertSame(outer.target.first, outer.target.second);
+      assertEquals("outer", outer.name);
+    }
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  public @interface Named {
+    String value();
+  }
+
+  public static class Target {
+    @Inject
+    @Named("field")
+    public Object first;
+
+    @Inject
+    @Named("field")
+    public Object second;
+
+    public final String parameter;
+
+    @Inject
+    public Target(@Named("parameter") String parameter) {
+      this.parameter = parameter;
+    }
+  }
+
+  public static class Outer {
+    @Inject
+    public Target target;
+
+    @Inject
+    @Named("outer")
+    public String name;
+  }
+
+  public static class Mixed {
+    @Inject
+    public StringBuilder direct;
+
+    @Inject
+    public Lazy<StringBuilder> lazy;
+  }
+
+  /*
+   * Counts lookups made through the context it builds.
+   */
+  private static class CountingBuilder implements Context.Builder {
+    private final AtomicInteger   lookups = new AtomicInteger();
+    private final Context.Builder builder = new Context.Builder.Concurrent() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return request.getType() == String.class
+            ? request.getAnnotation(Named.class).value()
+            : new Object();
+      }
+    };
+
+    @Override
+    public Context.Builder add(InjectionPoint injectionPoint) {
+      this.builder.add(injectionPoint);
+      return this;
+    }
+
+    @Override
+    public Context build() {
+      final Context context = this.builder.build();
+      return new Context() {
+        @Override
+        public <T> T lookup(InjectionRequest request) {
+          lookups.incrementAndGet();
+          return context.lookup(request);
+        }
+      };
+    }
+  }
+}
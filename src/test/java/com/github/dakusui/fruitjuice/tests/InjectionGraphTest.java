@@ -0,0 +1,96 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.InjectionGraph;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.InjectionType;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InjectionGraphTest {
+  @Test
+  public void givenExampleFixture$whenRecorded$thenNestedGraphIsCaptured() {
+    InjectionGraph<ExampleFixture> graph = InjectionGraph.record(createFixtureInjector(), ExampleFixture.class);
+    InjectionGraph.Node root = graph.getRoot();
+
+    assertEquals("HelloSystem", graph.getInstance().getMessage());
+    assertEquals(InjectionGraph.Node.Kind.INSTANCE, root.getKind());
+    assertEquals(ExampleFixture.class, root.getTargetClass());
+    assertNull(root.getInjectionPoint());
+    List<InjectionGraph.Node> points = root.getChildren();
+    assertEquals(5, points.size());
+    assertEquals(InjectionPoint.Type.CONSTRUCTOR_PARAMETER, points.get(0).getInjectionPoint().getTargetElement().getType());
+    assertEquals(1, points.get(1).getInjectionPoint().getTargetElement().asConstructorParameter().getIndex());
+    assertEquals("nestedFixture", points.get(2).getInjectionPoint().getTargetElement().asField().getName());
+    for (InjectionGraph.Node each : points) {
+      assertFalse(each.isCached());
+      assertTrue(each.getCreateNanos() <= each.getTotalNanos());
+      assertEquals(each.getTotalNanos(), each.getSelfNanos() + each.getChildNanos());
+    }
+    InjectionGraph.Node nested = points.get(2).getChildren().get(0);
+    assertEquals(ExampleFixture.NestedFixture.class, nested.getTargetClass());
+    assertEquals("priamos", nested.getChildren().get(0).getInjectionPoint().getTargetElement().asField().getName());
+    assertTrue(root.getChildNanos() <= root.getTotalNanos());
+  }
+
+  @Test
+  public void givenSharedValues$whenRecordedTwice$thenSecondGraphIsCached() {
+    Injector injector = FruitJuice.createInjector(new Context.Builder.Concurrent() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return InjectionType.typeOf(request).create(this, request);
+      }
+    });
+    InjectionGraph.record(injector, ExampleFixture.class);
+    InjectionGraph<ExampleFixture> graph = InjectionGraph.record(injector, ExampleFixture.class);
+
+    for (InjectionGraph.Node each : graph.getRoot().getChildren()) {
+      assertTrue(each.toString(), each.isCached());
+      assertEquals(0, each.getCreateNanos());
+      assertTrue(each.getChildren().isEmpty());
+    }
+  }
+
+  @Test
+  public void givenGraph$whenExported$thenDotAndJsonDescribeNodes() {
+    InjectionGraph<ExampleFixture> graph = InjectionGraph.record(createFixtureInjector(), ExampleFixture.class);
+    String dot = graph.toDot();
+    String json = graph.toJson();
+
+    assertTrue(dot, dot.startsWith("digraph fruitjuice {"));
+    assertTrue(dot, dot.contains("n0 -> n1;"));
+    assertTrue(dot, dot.contains(ExampleFixture.NestedFixture.class.getName() + "\\ntotal="));
+    assertTrue(json, json.startsWith("{\"kind\":\"INSTANCE\",\"targetClass\":\"" + ExampleFixture.class.getName() + "\""));
+    assertTrue(json, json.contains("\"injectionPoint\":\"" + ExampleFixture.class.getName() + "#patroclus\""));
+    assertTrue(json, json.contains("\"cached\":false"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void givenInjectorNotReporting$whenRecorded$thenExceptionThrown() {
+    InjectionGraph.record(new Injector() {
+      @Override
+      public <T> T getInstance(Class<T> targetClass) {
+        return null;
+      }
+    }, ExampleFixture.class);
+  }
+
+  private static Injector createFixtureInjector() {
+    return FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return InjectionType.typeOf(request).create(this, request);
+      }
+    });
+  }
+}
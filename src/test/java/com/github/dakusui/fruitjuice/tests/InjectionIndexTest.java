@@ -0,0 +1,96 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.InjectionIndex;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.examples.calc.Add;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InjectionIndexTest {
+  private static final String LEAF   = InjectorTest.Leaf.class.getName();
+  private static final String BRANCH = InjectorTest.Branch.class.getName();
+  private static final String ROOT   = InjectorTest.Root.class.getName();
+
+  @Test
+  public void givenIndex$whenLoaded$thenInjectionPointsAreDescribed() throws IOException {
+    InjectionIndex index = InjectionIndex.load(createClassLoader(""
+        + "# comment\n"
+        + ROOT + "\n"
+        + "\tparameter\t0\t" + BRANCH + "\t\n"
+        + "\tparameter\t1\t" + LEAF + "\t" + Add.class.getName() + "\n"
+        + LEAF + "\n"
+        + "\tfield\t" + LEAF + "#value\tjava.lang.String\t\n"
+        + "com.example.Abstract\tabstract\n"
+        + "\tfield\tcom.example.Abstract#value\tjava.lang.String\t\n"));
+
+    assertEquals(new HashSet<>(Arrays.asList(ROOT, LEAF, "com.example.Abstract")), index.getClassNames());
+    assertTrue(index.isInstantiable(ROOT));
+    assertFalse(index.isInstantiable("com.example.Abstract"));
+    List<InjectionIndex.Point> points = index.getInjectionPoints(ROOT);
+    assertEquals(2, points.size());
+    assertEquals(InjectionPoint.Type.CONSTRUCTOR_PARAMETER, points.get(1).getType());
+    assertEquals("1", points.get(1).getName());
+    assertEquals(LEAF, points.get(1).getTypeName());
+    assertEquals(Collections.singletonList(Add.class.getName()), points.get(1).getQualifierTypeNames());
+    assertEquals(InjectionPoint.Type.FIELD, index.getInjectionPoints(LEAF).get(0).getType());
+    assertEquals(new HashSet<>(Arrays.asList(LEAF, "com.example.Abstract")), index.getClassNamesRequesting(String.class));
+    assertEquals(Collections.singleton(ROOT), index.getClassNamesRequesting(InjectorTest.Leaf.class));
+  }
+
+  @Test
+  public void givenIndex$whenPrepared$thenPlansForInstantiableClassesAreCreated() throws IOException {
+    InjectionIndex index = InjectionIndex.load(createClassLoader(""
+        + ROOT + "\n"
+        + "\tparameter\t0\t" + BRANCH + "\t\n"
+        + "\tparameter\t1\t" + LEAF + "\t\n"
+        + "com.example.Abstract\tabstract\n"));
+    final Set<Class<?>> planned = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+    index.prepare(new Injector.Impl(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return null;
+      }
+    }) {
+      @Override
+      protected <T> InjectionPlan<T> createPlan(Class<T> targetClass) {
+        planned.add(targetClass);
+        return super.createPlan(targetClass);
+      }
+    });
+
+    assertEquals(new HashSet<Class<?>>(Arrays.<Class<?>>asList(InjectorTest.Root.class, InjectorTest.Branch.class, InjectorTest.Leaf.class)), planned);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void givenMalformedIndex$whenLoaded$thenExceptionThrown() throws IOException {
+    InjectionIndex.load(createClassLoader("\tfield\tFoo#bar\tjava.lang.String\t\n"));
+  }
+
+  private static ClassLoader createClassLoader(String index) throws IOException {
+    File dir = Files.createTempDirectory("fruitjuice-index").toFile();
+    File file = new File(dir, InjectionIndex.RESOURCE_NAME);
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), index.getBytes(StandardCharsets.UTF_8));
+    return new URLClassLoader(new URL[] { dir.toURI().toURL() }, InjectionIndexTest.class.getClassLoader());
+  }
+}
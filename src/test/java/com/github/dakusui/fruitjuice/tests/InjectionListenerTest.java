@@ -0,0 +1,140 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionListener;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.examples.calc.Add;
+import com.github.dakusui.fruitjuice.examples.calc.Calc;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InjectionListenerTest {
+  @Test
+  public void givenListener$whenInstanceIsRequested$thenEventsAreReportedInOrder() {
+    final List<InjectionListener.Event> events = new ArrayList<>();
+    Injector injector = createCalcInjector(new InjectionListener() {
+      @Override
+      public boolean sample(Class<?> targetClass) {
+        return true;
+      }
+
+      @Override
+      public void onEvent(Event event, Class<?> targetClass, InjectionPoint point, InjectionRequest request, long start, long nanos) {
+        assertEquals(Ordered.class, targetClass);
+        assertTrue(nanos >= 0);
+        events.add(event);
+      }
+    });
+
+    assertEquals(6, injector.getInstance(Ordered.class).sum);
+    assertEquals(
+        asList(
+            InjectionListener.Event.PLAN,
+            InjectionListener.Event.CREATE,
+            InjectionListener.Event.ADD,
+            InjectionListener.Event.CONSTRUCT,
+            InjectionListener.Event.LOOKUP,
+            InjectionListener.Event.INJECT,
+            InjectionListener.Event.GET_INSTANCE),
+        events);
+  }
+
+  @Test
+  public void givenMetrics$whenInstancesAreRequested$thenCountedPerTargetAndQualifier() {
+    InjectionListener.Metrics metrics = new InjectionListener.Metrics(1);
+    Injector injector = createCalcInjector(metrics);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(6, injector.getInstance(Counted.class).sum);
+    }
+
+    InjectionListener.Metrics.Stats stats = metrics.getTargetStats(Counted.class);
+    assertEquals(10, stats.getCount());
+    assertEquals(1, stats.getHistogram(InjectionListener.Event.PLAN).getCount());
+    assertEquals(10, stats.getHistogram(InjectionListener.Event.GET_INSTANCE).getCount());
+    assertEquals(10, metrics.getQualifierStats(Add.class).getHistogram(InjectionListener.Event.ADD).getCount());
+    assertEquals(0, metrics.getQualifierStats(Add.class).getCount());
+    assertNull(metrics.getTargetStats(String.class));
+  }
+
+  @Test
+  public void givenTwoInjectors$whenSameClassIsRequested$thenPlanIsReportedOnlyWhenComputed() {
+    InjectionListener.Metrics first = new InjectionListener.Metrics(1);
+    InjectionListener.Metrics second = new InjectionListener.Metrics(1);
+    createCalcInjector(first).getInstance(Planned.class);
+    createCalcInjector(first).getInstance(Planned.class);
+    createCalcInjector(second).getInstance(Planned.class);
+
+    assertEquals(1, first.getTargetStats(Planned.class).getHistogram(InjectionListener.Event.PLAN).getCount());
+    assertEquals(0, second.getTargetStats(Planned.class).getHistogram(InjectionListener.Event.PLAN).getCount());
+  }
+
+  @Test
+  public void givenSampledMetrics$whenInstancesAreRequested$thenAllCountedButSomeMeasured() {
+    InjectionListener.Metrics metrics = new InjectionListener.Metrics(1000);
+    Injector injector = createCalcInjector(metrics);
+    for (int i = 0; i < 1000; i++) {
+      injector.getInstance(Calc.class);
+    }
+
+    InjectionListener.Metrics.Stats stats = metrics.getTargetStats(Calc.class);
+    assertEquals(1000, stats.getCount());
+    assertTrue(stats.toString(), stats.getHistogram(InjectionListener.Event.GET_INSTANCE).getCount() < 100);
+  }
+
+  @Test
+  public void givenHistogram$whenValuesAreRecorded$thenPercentilesAreWithinPrecision() {
+    InjectionListener.Histogram histogram = new InjectionListener.Histogram();
+    for (long i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000);
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertEquals(500500.0, histogram.getMean(), 0.0);
+    assertEquals(1000000, histogram.getMax());
+    assertEquals(500000, histogram.getValueAtPercentile(50), 500000 / 8);
+    assertEquals(990000, histogram.getValueAtPercentile(99), 990000 / 8);
+    assertEquals(1000000, histogram.getValueAtPercentile(100));
+    assertEquals(0, new InjectionListener.Histogram().getValueAtPercentile(99));
+  }
+
+  public static class Ordered {
+    @Inject
+    @Add({ 1, 2, 3 })
+    public int sum;
+  }
+
+  public static class Counted {
+    @Inject
+    @Add({ 1, 2, 3 })
+    public int sum;
+  }
+
+  public static class Planned {
+    @Inject
+    @Add({ 1, 2, 3 })
+    public int sum;
+  }
+
+  private static Injector createCalcInjector(InjectionListener listener) {
+    return new Injector.Impl(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        int ret = 0;
+        for (int each : request.getAnnotation(Add.class).value()) {
+          ret += each;
+        }
+        return ret;
+      }
+    }, Injector.Engine.REFLECTIVE, null, listener);
+  }
+}
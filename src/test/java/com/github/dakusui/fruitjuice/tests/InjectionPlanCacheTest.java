@@ -0,0 +1,194 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionListener;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.examples.calc.Calc;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class InjectionPlanCacheTest {
+  @Test
+  public void givenTwoInjectors$whenPlansAreCreated$thenMetadataIsShared() {
+    InjectionPlan<Shared> plan = Injector.Engine.REFLECTIVE.createPlan(Shared.class);
+
+    assertSame(plan, Injector.Engine.REFLECTIVE.createPlan(Shared.class));
+    assertSame(plan.getConstructorInjectionPoints(), Injector.Engine.GENERATED.createPlan(Shared.class).getConstructorInjectionPoints());
+  }
+
+  @Test
+  public void givenTwoGeneratedInjectors$whenPlansAreCreated$thenInstantiatorClassIsShared() throws Exception {
+    final List<InjectionPlan<?>> plans = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      new Injector.Impl(new FixedBuilder(), Injector.Engine.GENERATED) {
+        @Override
+        protected <T> InjectionPlan<T> createPlan(Class<T> targetClass) {
+          InjectionPlan<T> ret = super.createPlan(targetClass);
+          plans.add(ret);
+          return ret;
+        }
+      }.getInstance(GeneratedTarget.class);
+    }
+
+    assertEquals(2, plans.size());
+    assertThat(plans.get(0), instanceOf(InjectionPlan.Generated.class));
+    assertNotSame(plans.get(0), plans.get(1));
+    assertSame(instantiatorOf(plans.get(0)).getClass(), instantiatorOf(plans.get(1)).getClass());
+  }
+
+  @Test
+  public void givenTwoInjectors$whenSameClassIsRequested$thenCountedAsOneMissAndOneHit() {
+    InjectionPlan.Cache.Stats before = InjectionPlan.Cache.getStats();
+    InjectionListener.Metrics metrics = new InjectionListener.Metrics(1);
+    for (int i = 0; i < 2; i++) {
+      assertEquals("hello", new Injector.Impl(new FixedBuilder(), Injector.Engine.REFLECTIVE, null, metrics).getInstance(Counted.class).value);
+    }
+    InjectionPlan.Cache.Stats after = metrics.getPlanCacheStats();
+
+    assertEquals(1, after.getMissCount() - before.getMissCount());
+    assertEquals(1, after.getHitCount() - before.getHitCount());
+  }
+
+  @Test
+  public void givenInvalidClass$whenPlanIsRequestedTwice$thenErrorIsCachedAndThrownAgain() {
+    InjectionPlan.Cache.Stats before = InjectionPlan.Cache.getStats();
+    for (int i = 0; i < 2; i++) {
+      try {
+        Injector.Engine.REFLECTIVE.createPlan(Invalid.class);
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertThat(e.getMessage(), containsString("Field 'value' is marked final."));
+      }
+    }
+    InjectionPlan.Cache.Stats after = InjectionPlan.Cache.getStats();
+
+    assertEquals(1, after.getMissCount() - before.getMissCount());
+    assertEquals(1, after.getHitCount() - before.getHitCount());
+  }
+
+  @Test
+  public void givenClassWithoutPrecompiledPlan$whenLookedUp$thenNullIsReturned() {
+    assertNull(InjectionPlan.Cache.getPrecompiled(Shared.class));
+    assertNull(InjectionPlan.Cache.getPrecompiled(Shared.class));
+  }
+
+  @Test
+  public void givenClassLoader$whenItIsUnreachable$thenItIsCollectedWithCachedPlan() throws Exception {
+    WeakReference<ClassLoader> loader = injectInIsolatedLoader();
+    for (int i = 0; i < 50 && loader.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+
+    assertNull(loader.get());
+  }
+
+  @Test
+  public void givenClassLoader$whenItIsUnreachable$thenItIsCollectedWithGeneratedInstantiator() throws Exception {
+    WeakReference<ClassLoader> loader = injectInIsolatedLoader(Injector.Engine.GENERATED);
+    for (int i = 0; i < 50 && loader.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+
+    assertNull(loader.get());
+  }
+
+  private static WeakReference<ClassLoader> injectInIsolatedLoader() throws Exception {
+    return injectInIsolatedLoader(Injector.Engine.REFLECTIVE);
+  }
+
+  private static WeakReference<ClassLoader> injectInIsolatedLoader(Injector.Engine engine) throws Exception {
+    ClassLoader loader = new IsolatedLoader(Calc.class.getName());
+    Class<?> targetClass = loader.loadClass(Calc.class.getName());
+    FruitJuice.createInjector(new FixedBuilder(), engine).getInstance(targetClass);
+    return new WeakReference<>(loader);
+  }
+
+  private static Object instantiatorOf(InjectionPlan<?> plan) throws Exception {
+    Field field = InjectionPlan.Generated.class.getDeclaredField("instantiator");
+    field.setAccessible(true);
+    return field.get(plan);
+  }
+
+  public static class Shared {
+    @Inject
+    public Shared() {
+    }
+  }
+
+  public static class Invalid {
+    @Inject
+    public final String value = "invalid";
+  }
+
+  public static class Counted {
+    @Inject
+    public String value;
+  }
+
+  public static class GeneratedTarget {
+    @Inject
+    public String value;
+  }
+
+  private static class FixedBuilder extends Context.Builder.Base {
+    @Override
+    protected Object create(InjectionRequest request) {
+      return request.getType() == int.class
+          ? (Object) 6
+          : "hello";
+    }
+  }
+
+  /*
+   * Defines a class of a given name by itself, so that the class is distinct from
+   * the one loaded by the parent.
+   */
+  private static class IsolatedLoader extends ClassLoader {
+    private final String name;
+
+    private IsolatedLoader(String name) {
+      super(IsolatedLoader.class.getClassLoader());
+      this.name = name;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!this.name.equals(name))
+        return super.loadClass(name, resolve);
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> ret = findLoadedClass(name);
+        if (ret == null) {
+          try (InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+            byte[] bytes = ByteStreams.toByteArray(is);
+            ret = defineClass(name, bytes, 0, bytes.length);
+          } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+          }
+        }
+        return ret;
+      }
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionPlanStore;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.examples.calc.Calc;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.InjectionType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class InjectionPlanStoreTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void givenStoredPlans$whenLoaded$thenSameInjectionPointsAreResolved() throws IOException {
+    File file = temporaryFolder.newFile();
+    InjectionPlanStore.write(file, Arrays.asList(ExampleFixture.class, Calc.class));
+    InjectionPlanStore store = InjectionPlanStore.open(file);
+    InjectionPlan<ExampleFixture> stored = store.load(ExampleFixture.class);
+    InjectionPlan<ExampleFixture> computed = InjectionPlan.Factory.create(ExampleFixture.class);
+
+    assertEquals(2, store.size());
+    assertEquals(computed.getConstructor(), stored.getConstructor());
+    assertEquals(computed.getFieldInjectionPoints().size(), stored.getFieldInjectionPoints().size());
+    for (int i = 0; i < computed.getFieldInjectionPoints().size(); i++) {
+      assertEquals(
+          computed.getFieldInjectionPoints().get(i).getTargetElement().asField(),
+          stored.getFieldInjectionPoints().get(i).getTargetElement().asField());
+      assertEquals(
+          computed.getFieldInjectionPoints().get(i).getRequest(),
+          stored.getFieldInjectionPoints().get(i).getRequest());
+    }
+    assertNull(store.load(ExampleFixture.NestedFixture.class));
+  }
+
+  @Test
+  public void givenStore$whenInjectorUsesIt$thenInjectedCorrectly() throws IOException {
+    File file = temporaryFolder.newFile();
+    InjectionPlanStore.write(file, Arrays.asList(ExampleFixture.class, ExampleFixture.NestedFixture.class));
+    Injector injector = new Injector.Impl(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return InjectionType.typeOf(request).create(this, request);
+      }
+    }, Injector.Engine.GENERATED, InjectionPlanStore.open(file));
+    ExampleFixture fixture = injector.getInstance(ExampleFixture.class);
+
+    assertEquals("component:PATROCLUS({controller=hostname:80})", fixture.getPatroclus().toString());
+    assertEquals("component:PRIAMOS({})", fixture.getNestedFixture().priamos.toString());
+  }
+
+  @Test
+  public void givenStore$whenPlanIsLoadedTwice$thenSamePlanIsReturned() throws IOException {
+    File file = temporaryFolder.newFile();
+    InjectionPlanStore.write(file, Arrays.asList(ExampleFixture.class));
+    try (InjectionPlanStore store = InjectionPlanStore.open(file)) {
+      assertSame(store.load(ExampleFixture.class), store.load(ExampleFixture.class));
+    }
+  }
+
+  @Test
+  public void givenClosedStore$whenPlanLoadedBeforeIsRequested$thenItIsReturned() throws IOException {
+    File file = temporaryFolder.newFile();
+    InjectionPlanStore.write(file, Arrays.asList(ExampleFixture.class, Calc.class));
+    InjectionPlanStore store = InjectionPlanStore.open(file);
+    InjectionPlan<ExampleFixture> loaded = store.load(ExampleFixture.class);
+    store.close();
+
+    assertSame(loaded, store.load(ExampleFixture.class));
+    assertNull(store.load(ExampleFixture.NestedFixture.class));
+  }
+
+  @Test
+  public void givenClosedStore$whenInjectorUsesIt$thenPlansNotLoadedYetAreComputed() throws IOException {
+    File file = temporaryFolder.newFile();
+    InjectionPlanStore.write(file, Arrays.asList(ExampleFixture.class, Calc.class));
+    InjectionPlanStore store = InjectionPlanStore.open(file);
+    store.close();
+
+    assertNull(store.load(Calc.class));
+    assertEquals(
+        "component:PRIAMOS({})",
+        new Injector.Impl(new Context.Builder.Base() {
+          @Override
+          protected Object create(InjectionRequest request) {
+            return InjectionType.typeOf(request).create(this, request);
+          }
+        }, Injector.Engine.REFLECTIVE, store).getInstance(ExampleFixture.class).getNestedFixture().priamos.toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void givenBrokenFile$whenOpened$thenExceptionThrown() throws IOException {
+    File file = temporaryFolder.newFile();
+    try (OutputStream os = new FileOutputStream(file)) {
+      os.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 });
+    }
+    InjectionPlanStore.open(file);
+  }
+}
@@ -0,0 +1,145 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.InjectionType;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+public class InjectionPlanTest {
+  @Test
+  public void givenExampleFixture$whenInjectedTwice$thenPlanIsCreatedOnlyOnce() {
+    final AtomicInteger count = new AtomicInteger(0);
+    Injector injector = new Injector.Impl(createBuilder()) {
+      @Override
+      protected <T> InjectionPlan<T> createPlan(Class<T> targetClass) {
+        if (ExampleFixture.class.equals(targetClass)) {
+          count.incrementAndGet();
+        }
+        return super.createPlan(targetClass);
+      }
+    };
+    ExampleFixture first = injector.getInstance(ExampleFixture.class);
+    ExampleFixture second = injector.getInstance(ExampleFixture.class);
+
+    assertEquals(1, count.get());
+    assertEquals("component:PATROCLUS({controller=hostname:80})", first.getPatroclus().toString());
+    assertEquals("component:PATROCLUS({controller=hostname:80})", second.getPatroclus().toString());
+  }
+
+  @Test
+  public void givenExampleFixture$whenPlanIsCreated$thenInjectionPointsAreOrderedAndStable() {
+    InjectionPlan<ExampleFixture> plan = InjectionPlan.Factory.create(ExampleFixture.class);
+
+    assertEquals(2, plan.getConstructorInjectionPoints().size());
+    assertEquals(0, plan.getConstructorInjectionPoints().get(0).getTargetElement().asConstructorParameter().getIndex());
+    assertEquals(1, plan.getConstructorInjectionPoints().get(1).getTargetElement().asConstructorParameter().getIndex());
+    assertEquals(3, plan.getFieldInjectionPoints().size());
+    assertSame(
+        plan.getFieldInjectionPoints().get(0).getRequest(),
+        plan.getFieldInjectionPoints().get(0).getRequest()
+    );
+  }
+
+  public static class PrimitiveFields {
+    @Inject
+    long longValue;
+
+    @Inject
+    private double doubleValue;
+  }
+
+  @Test
+  public void givenPrimitiveFields$whenNarrowerValuesAreInjected$thenWidened() {
+    PrimitiveFields injected = FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return 123;
+      }
+    }).getInstance(PrimitiveFields.class);
+
+    assertEquals(123L, injected.longValue);
+    assertEquals(123.0, injected.doubleValue, 0.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void givenPrimitiveFields$whenNullIsInjected$thenExceptionThrown() {
+    FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return null;
+      }
+    }).getInstance(PrimitiveFields.class);
+  }
+
+  @Test
+  public void givenExampleFixture$whenGeneratedEngineIsUsed$thenInjectionHappensThroughGeneratedCode() {
+    assertThat(InjectionPlan.Factory.createGenerated(ExampleFixture.class), instanceOf(InjectionPlan.Generated.class));
+
+    ExampleFixture fixture = FruitJuice.createInjector(createBuilder(), Injector.Engine.GENERATED).getInstance(ExampleFixture.class);
+    assertEquals(
+        "subsystem:TROJAN(configs={config1=configvalue1},dependencies={dep1=depvalue1,dep2=depvalue2},children={child1=childvalue1,child2=childvalue2})",
+        fixture.trojan.toString()
+    );
+    assertEquals("component:PATROCLUS({controller=hostname:80})", fixture.getPatroclus().toString());
+    assertEquals("component:HECTOR({})", fixture.getHector().toString());
+    assertEquals("HelloSystem", fixture.getMessage());
+    assertEquals("component:PRIAMOS({})", fixture.getNestedFixture().priamos.toString());
+  }
+
+  static class NonPublicClass {
+    @Inject
+    public String value;
+
+    public NonPublicClass() {
+    }
+  }
+
+  @Test
+  public void givenNonPublicClass$whenGeneratedPlanIsRequested$thenFallsBackToReflectivePlan() {
+    assertThat(InjectionPlan.Factory.createGenerated(NonPublicClass.class), instanceOf(InjectionPlan.Impl.class));
+  }
+
+  public static class PublicPrimitiveFields {
+    @Inject
+    public long longValue;
+
+    @Inject
+    public int intValue;
+  }
+
+  @Test
+  public void givenPublicPrimitiveFields$whenGeneratedEngineIsUsed$thenWidened() {
+    PublicPrimitiveFields injected = FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return 'A';
+      }
+    }, Injector.Engine.GENERATED).getInstance(PublicPrimitiveFields.class);
+
+    assertEquals(65L, injected.longValue);
+    assertEquals(65, injected.intValue);
+  }
+
+  private static Context.Builder createBuilder() {
+    return new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        checkNotNull(request);
+        return InjectionType.typeOf(request).create(this, request);
+      }
+    };
+  }
+}
@@ -0,0 +1,107 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.tests.fixture.Component;
+import com.github.dakusui.fruitjuice.tests.fixture.Fixture.InjectComponent;
+import com.github.dakusui.fruitjuice.tests.fixture.Fixture.InjectSubsystem;
+import com.github.dakusui.fruitjuice.tests.fixture.Fixture.Value;
+import org.junit.Test;
+
+import java.lang.annotation.Annotation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class InjectionRequestTest {
+  public static class Components {
+    @Inject
+    @InjectComponent(type = "HECTOR", config = { @Value(name = "controller", value = "hostname:80") })
+    public Component hector;
+
+    @Inject
+    @InjectComponent(type = "HECTOR", config = { @Value(name = "controller", value = "hostname:8080") })
+    public Component anotherHector;
+  }
+
+  public static class SameComponents {
+    @Inject
+    @InjectComponent(type = "HECTOR", config = { @Value(name = "controller", value = "hostname:80") })
+    public Component hector;
+  }
+
+  @Test
+  public void givenEqualRequestsFromDifferentClasses$whenKeysAreCompared$thenSameInstance() {
+    InjectionRequest.Base request = requestOf(Components.class, 0);
+    InjectionRequest.Base another = requestOf(SameComponents.class, 0);
+
+    assertSame(request.getKey(), another.getKey());
+    assertEquals(request, another);
+    assertEquals(request.hashCode(), another.hashCode());
+  }
+
+  @Test
+  public void givenSameTypedRequestsWithDifferentAttributes$whenCompared$thenNotEqualAndHashedDifferently() {
+    InjectionRequest.Base request = requestOf(Components.class, 0);
+    InjectionRequest.Base another = requestOf(Components.class, 1);
+
+    assertFalse(request.equals(another));
+    assertNotEquals(request.hashCode(), another.hashCode());
+  }
+
+  @Test
+  public void givenQualifiedRequest$whenAnnotationsAreAccessed$thenLookedUpByType() {
+    InjectionRequest request = requestOf(Components.class, 0);
+
+    assertTrue(request.isAnnotationPresent(InjectComponent.class));
+    assertFalse(request.isAnnotationPresent(InjectSubsystem.class));
+    assertEquals("HECTOR", request.getAnnotation(InjectComponent.class).type());
+    assertNull(request.getAnnotation(InjectSubsystem.class));
+  }
+
+  @Test
+  public void givenQualifiedRequest$whenQualifierAnnotationsAreRequested$thenInjectIsExcluded() {
+    InjectionRequest.Base request = requestOf(Components.class, 0);
+
+    assertEquals(1, request.getQualifierAnnotations().size());
+    assertSame(request.getAnnotation(InjectComponent.class), request.getQualifierAnnotations().get(0));
+  }
+
+  @Test
+  public void givenRequestImplementedByUser$whenQualifierAnnotationsAreRequested$thenInjectIsExcluded() {
+    final InjectionRequest.Base base = requestOf(Components.class, 0);
+    InjectionRequest request = new InjectionRequest() {
+      @Override
+      public boolean isAnnotationPresent(Class<? extends Annotation> annotationClass) {
+        return base.isAnnotationPresent(annotationClass);
+      }
+
+      @Override
+      public <T extends Annotation> T getAnnotation(Class<T> annotationClass) {
+        return base.getAnnotation(annotationClass);
+      }
+
+      @Override
+      public Class<?> getType() {
+        return base.getType();
+      }
+
+      @Override
+      public Iterable<Annotation> getAnnotations() {
+        return base.getAnnotations();
+      }
+    };
+
+    assertEquals(base.getQualifierAnnotations(), InjectionRequest.Utils.qualifierAnnotationsOf(request));
+    assertSame(base.getQualifierAnnotations(), InjectionRequest.Utils.qualifierAnnotationsOf(base));
+  }
+
+  private static InjectionRequest.Base requestOf(Class<?> klass, int index) {
+    return (InjectionRequest.Base) InjectionPlan.Factory.create(klass).getFieldInjectionPoints().get(index).getRequest();
+  }
+}
@@ -0,0 +1,231 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.Lazy;
+import com.github.dakusui.fruitjuice.examples.calc.Add;
+import com.github.dakusui.fruitjuice.examples.calc.Calc;
+import com.github.dakusui.fruitjuice.tests.fixture.ExampleFixture;
+import com.github.dakusui.fruitjuice.tests.fixture.InjectionType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InjectorTest {
+  @Test
+  public void givenCalc$whenInstancesAreRequested$thenValuesAreCreatedOnlyOnce() {
+    final AtomicInteger count = new AtomicInteger(0);
+    Injector.Extended injector = FruitJuice.createExtendedInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        count.incrementAndGet();
+        return request.getAnnotation(Add.class).value().length;
+      }
+    });
+    List<Calc> calcs = injector.getInstances(Calc.class, 100);
+
+    assertEquals(100, calcs.size());
+    assertNotSame(calcs.get(0), calcs.get(99));
+    assertEquals(1, count.get());
+  }
+
+  @Test
+  public void givenExampleFixture$whenInstancesAreRequestedInParallel$thenAllCreated() {
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      List<ExampleFixture> fixtures = createFixtureInjector().getInstances(ExampleFixture.class, 101, executorService);
+
+      assertEquals(101, fixtures.size());
+      for (ExampleFixture each : fixtures) {
+        assertEquals("component:PATROCLUS({controller=hostname:80})", each.getPatroclus().toString());
+        assertSame(fixtures.get(0).getPatroclus(), each.getPatroclus());
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void givenNonThreadSafeBuilder$whenInstancesAreRequestedInParallel$thenCreatedByOneThread() {
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      List<Recorded> recorded = createCalcInjector().getInstances(Recorded.class, 101, executorService);
+
+      assertEquals(101, recorded.size());
+      Set<Thread> threads = new HashSet<>();
+      for (Recorded each : recorded) {
+        threads.add(each.thread);
+      }
+      assertEquals(1, threads.size());
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void givenNoInstance$whenRequested$thenEmpty() {
+    assertTrue(createFixtureInjector().getInstances(ExampleFixture.class, 0).isEmpty());
+    assertTrue(createFixtureInjector().getInstances(Collections.<Class<?>>emptyList()).isEmpty());
+  }
+
+  @Test
+  public void givenDifferentClasses$whenInstancesAreRequested$thenReturnedInOrder() {
+    List<Object> instances = createFixtureInjector().getInstances(
+        Arrays.<Class<?>>asList(ExampleFixture.class, ExampleFixture.NestedFixture.class)
+    );
+
+    assertEquals(2, instances.size());
+    assertEquals("component:HECTOR({})", ((ExampleFixture) instances.get(0)).getHector().toString());
+    assertEquals("component:PRIAMOS({})", ((ExampleFixture.NestedFixture) instances.get(1)).priamos.toString());
+  }
+
+  @Test
+  public void givenExistingCalc$whenMembersAreInjected$thenInjected() {
+    Calc calc = new Calc();
+
+    assertSame(calc, createCalcInjector().injectMembers(calc));
+    assertEquals(6, calc.sum);
+  }
+
+  @Test
+  public void givenPool$whenReleasedAndAcquired$thenRecycledAndReinjected() {
+    Injector.Pool<Calc> pool = new Injector.Pool<>(createCalcInjector(), Calc.class, 1);
+    Calc first = pool.acquire();
+    Calc second = pool.acquire();
+    first.sum = 0;
+    pool.release(first);
+    pool.release(second);
+
+    assertEquals(1, pool.getNumIdle());
+    Calc recycled = pool.acquire();
+    assertSame(first, recycled);
+    assertEquals(6, recycled.sum);
+    assertEquals(0, pool.getNumIdle());
+    assertNotSame(first, pool.acquire());
+  }
+
+  public static class Recorded {
+    public final Thread thread = Thread.currentThread();
+
+    @Inject
+    public Recorded() {
+    }
+  }
+
+  public static class Leaf {
+    @Inject
+    public String value;
+  }
+
+  public static class Branch {
+    @Inject
+    public Leaf leaf;
+
+    @Inject
+    public Lazy<Branch> self;
+  }
+
+  public static class Root {
+    @Inject
+    public Root(Branch branch, Leaf leaf) {
+    }
+  }
+
+  public static class FinalField {
+    @Inject
+    public final String value = null;
+  }
+
+  public static class Ambiguous {
+    @Inject
+    public Ambiguous() {
+    }
+
+    @Inject
+    public Ambiguous(String value) {
+    }
+  }
+
+  public static class Broken {
+    @Inject
+    public FinalField finalField;
+
+    @Inject
+    public Ambiguous ambiguous;
+  }
+
+  @Test
+  public void givenRoot$whenPrepared$thenPlansForReachableClassesAreCreatedOnce() {
+    final Set<Class<?>> planned = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+    final AtomicInteger count = new AtomicInteger(0);
+    Injector.Extended injector = new Injector.Impl(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return null;
+      }
+    }) {
+      @Override
+      protected <T> InjectionPlan<T> createPlan(Class<T> targetClass) {
+        planned.add(targetClass);
+        count.incrementAndGet();
+        return super.createPlan(targetClass);
+      }
+    };
+    injector.prepare(Root.class);
+
+    assertEquals(new HashSet<Class<?>>(Arrays.<Class<?>>asList(Root.class, Branch.class, Leaf.class)), planned);
+    assertEquals(3, count.get());
+  }
+
+  @Test
+  public void givenBrokenClasses$whenPrepared$thenErrorsAreAggregated() {
+    try {
+      createFixtureInjector().prepare(Broken.class);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals(2, e.getSuppressed().length);
+      assertTrue(e.getMessage(), e.getMessage().contains("Field 'value' is marked final."));
+      assertTrue(e.getMessage(), e.getMessage().contains("More than one constructors annotated with '@Inject'"));
+    }
+  }
+
+  private static Injector.Extended createCalcInjector() {
+    return FruitJuice.createExtendedInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        int ret = 0;
+        for (int each : request.getAnnotation(Add.class).value()) {
+          ret += each;
+        }
+        return ret;
+      }
+    });
+  }
+
+  private static Injector.Extended createFixtureInjector() {
+    return FruitJuice.createExtendedInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return InjectionType.typeOf(request).create(this, request);
+      }
+    });
+  }
+}
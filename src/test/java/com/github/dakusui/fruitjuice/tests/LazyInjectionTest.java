@@ -0,0 +1,131 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.Lazy;
+import com.github.dakusui.fruitjuice.Provider;
+import com.github.dakusui.fruitjuice.examples.calc.Add;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class LazyInjectionTest {
+  public static class Target {
+    @Inject
+    @Add({ 1, 2 })
+    public Lazy<StringBuilder> lazy;
+
+    @Inject
+    @Add({ 1, 2 })
+    public StringBuilder direct;
+
+    private final Provider<StringBuilder> provider;
+
+    @Inject
+    public Target(@Add({ 3 }) Provider<StringBuilder> provider) {
+      this.provider = provider;
+    }
+  }
+
+  public static class Invalid {
+    @Inject
+    public Lazy<?> lazy;
+  }
+
+  @Test
+  public void givenLazyAndProvider$whenPlanIsCreated$thenRequestsCarryWrappedType() {
+    InjectionPlan<Target> plan = InjectionPlan.Factory.create(Target.class);
+    InjectionPoint lazy = plan.getFieldInjectionPoints().get(0);
+    InjectionPoint provider = plan.getConstructorInjectionPoints().get(0);
+
+    assertEquals(InjectionPoint.Delivery.LAZY, InjectionPoint.Delivery.of(lazy));
+    assertEquals(StringBuilder.class, lazy.getRequest().getType());
+    assertEquals(InjectionPoint.Delivery.PROVIDER, InjectionPoint.Delivery.of(provider));
+    assertEquals(StringBuilder.class, provider.getRequest().getType());
+    assertEquals(InjectionPoint.Delivery.DIRECT, InjectionPoint.Delivery.of(plan.getFieldInjectionPoints().get(1)));
+  }
+
+  @Test
+  public void givenInjectionPointImplementedByUser$whenDeliveryIsAsked$thenDerivedFromTargetElement() {
+    InjectionPlan<Target> plan = InjectionPlan.Factory.create(Target.class);
+    final InjectionPoint lazy = plan.getFieldInjectionPoints().get(0);
+    final InjectionPoint provider = plan.getConstructorInjectionPoints().get(0);
+
+    assertEquals(InjectionPoint.Delivery.LAZY, InjectionPoint.Delivery.of(new InjectionPoint() {
+      @Override
+      public InjectionRequest getRequest() {
+        return lazy.getRequest();
+      }
+
+      @Override
+      public TargetElement getTargetElement() {
+        return lazy.getTargetElement();
+      }
+    }));
+    assertEquals(InjectionPoint.Delivery.PROVIDER, InjectionPoint.Delivery.of(new InjectionPoint() {
+      @Override
+      public InjectionRequest getRequest() {
+        return provider.getRequest();
+      }
+
+      @Override
+      public TargetElement getTargetElement() {
+        return provider.getTargetElement();
+      }
+    }));
+  }
+
+  @Test
+  public void givenLazyAndProvider$whenInjected$thenCreatedOnGet() {
+    final AtomicInteger count = new AtomicInteger(0);
+    Injector injector = FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        count.incrementAndGet();
+        return new StringBuilder().append(request.getAnnotation(Add.class).value().length);
+      }
+    });
+    Target target = injector.getInstance(Target.class);
+
+    assertEquals(1, count.get());
+    assertEquals("2", target.direct.toString());
+    assertNotSame(target.direct, target.lazy.get());
+    assertSame(target.lazy.get(), target.lazy.get());
+    assertEquals("2", target.lazy.get().toString());
+    assertEquals(2, count.get());
+    assertNotSame(target.provider.get(), target.provider.get());
+    assertEquals("1", target.provider.get().toString());
+    assertEquals(5, count.get());
+  }
+
+  @Test
+  public void givenBatch$whenLazyIsInjected$thenSharedAndCreatedOnce() {
+    final AtomicInteger count = new AtomicInteger(0);
+    Injector.Extended injector = FruitJuice.createExtendedInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        count.incrementAndGet();
+        return new StringBuilder();
+      }
+    });
+    List<Target> targets = injector.getInstances(Target.class, 3);
+
+    assertSame(targets.get(0).lazy.get(), targets.get(2).lazy.get());
+    assertEquals(2, count.get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void givenLazyWithoutConcreteTypeArgument$whenPlanIsCreated$thenExceptionThrown() {
+    InjectionPlan.Factory.create(Invalid.class);
+  }
+}
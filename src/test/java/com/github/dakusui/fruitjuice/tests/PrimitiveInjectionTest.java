@@ -0,0 +1,224 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.examples.calc.Add;
+import com.github.dakusui.fruitjuice.examples.calc.Calc;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class PrimitiveInjectionTest {
+  private static final int NUM_CALLS = 10000;
+
+  @Test
+  public void givenCalc$whenInjectedByCreateInt$thenCreateIsNotCalled() {
+    assertEquals(6, FruitJuice.createInjector(new UnboxedBuilder()).getInstance(Calc.class).sum);
+  }
+
+  @Test
+  public void givenPrimitiveFieldsAndParameters$whenInjectedByConcurrentBuilder$thenInjectedWithoutCreate() {
+    Wide wide = FruitJuice.createInjector(new Context.Builder.Concurrent() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      protected int createInt(InjectionRequest request) {
+        return (int) sum(request);
+      }
+
+      @Override
+      protected long createLong(InjectionRequest request) {
+        return sum(request);
+      }
+
+      @Override
+      protected double createDouble(InjectionRequest request) {
+        return sum(request) / 2.0;
+      }
+    }, Injector.Engine.GENERATED).getInstance(Wide.class);
+
+    assertWide(wide);
+  }
+
+  @Test
+  public void givenPrimitiveFieldsAndParameters$whenCreatedBoxed$thenUnboxedAndInjected() {
+    Wide wide = FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        ////
+        // Widened to long and double.
+        return (int) sum(request);
+      }
+    }).getInstance(Wide.class);
+
+    assertEquals(2000000, wide.intField);
+    assertEquals(4000000L, wide.longField);
+    assertEquals(6000000.0, wide.doubleField, 0.0);
+    assertEquals(2000000, wide.intParameter);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void givenPrimitiveField$whenStringIsCreated$thenExceptionThrown() {
+    FruitJuice.createInjector(new Context.Builder.Concurrent() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return "not a number";
+      }
+    }).getInstance(Calc.class);
+  }
+
+  @Test
+  public void givenCalc$whenInjectedManyTimes$thenOnlyCalcObjectsAreAllocated() {
+    assertOnlyTargetsAllocated(FruitJuice.createInjector(new UnboxedBuilder()), Calc.class, new Factory() {
+      @Override
+      public Object create() {
+        return new Calc();
+      }
+    });
+  }
+
+  @Test
+  public void givenWide$whenInjectedManyTimesReflectively$thenOnlyWideObjectsAreAllocated() {
+    assertOnlyTargetsAllocated(FruitJuice.createInjector(new UnboxedBuilder()), Wide.class, new Factory() {
+      @Override
+      public Object create() {
+        return new Wide(0, 0, 0);
+      }
+    });
+  }
+
+  @Test
+  public void givenWide$whenInjectedManyTimesByGeneratedCode$thenOnlyWideObjectsAreAllocated() {
+    assertOnlyTargetsAllocated(FruitJuice.createInjector(new UnboxedBuilder(), Injector.Engine.GENERATED), Wide.class, new Factory() {
+      @Override
+      public Object create() {
+        return new Wide(0, 0, 0);
+      }
+    });
+  }
+
+  private static void assertOnlyTargetsAllocated(Injector injector, Class<?> targetClass, Factory factory) {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+    assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+    long threadId = Thread.currentThread().getId();
+    Object[] sink = new Object[1];
+    ////
+    // Warms up so that plans, slots and handles are created beforehand.
+    for (int i = 0; i < NUM_CALLS; i++) {
+      sink[0] = injector.getInstance(targetClass);
+      sink[0] = factory.create();
+    }
+
+    long before = allocations.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < NUM_CALLS; i++) {
+      sink[0] = factory.create();
+    }
+    long expected = allocations.getThreadAllocatedBytes(threadId) - before;
+    before = allocations.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < NUM_CALLS; i++) {
+      sink[0] = injector.getInstance(targetClass);
+    }
+    long actual = allocations.getThreadAllocatedBytes(threadId) - before;
+
+    assertEquals(
+        String.format("allocated %d bytes per call, where %s is %d bytes", actual / NUM_CALLS, targetClass.getSimpleName(), expected / NUM_CALLS),
+        expected / NUM_CALLS,
+        actual / NUM_CALLS);
+  }
+
+  private static void assertWide(Wide wide) {
+    assertEquals(2000000, wide.intField);
+    assertEquals(4000000L, wide.longField);
+    assertEquals(3000000.0, wide.doubleField, 0.0);
+    assertEquals(2000000, wide.intParameter);
+    assertEquals(4000000L, wide.longParameter);
+    assertEquals(3000000.0, wide.doubleParameter, 0.0);
+  }
+
+  private static long sum(InjectionRequest request) {
+    long ret = 0;
+    for (int each : request.getAnnotation(Add.class).value()) {
+      ret += each;
+    }
+    return ret;
+  }
+
+  private interface Factory {
+    Object create();
+  }
+
+  /*
+   * Creates values of Calc and Wide without boxing them. Sums are computed only once
+   * since annotations copy their array attributes every time they are read.
+   */
+  private static class UnboxedBuilder extends Context.Builder.Base {
+    private final Map<InjectionRequest, Long> sums = new HashMap<>();
+
+    @Override
+    protected Object create(InjectionRequest request) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected int createInt(InjectionRequest request) {
+      return (int) cachedSum(request);
+    }
+
+    @Override
+    protected long createLong(InjectionRequest request) {
+      return cachedSum(request);
+    }
+
+    @Override
+    protected double createDouble(InjectionRequest request) {
+      return cachedSum(request) / 2.0;
+    }
+
+    private long cachedSum(InjectionRequest request) {
+      Long ret = this.sums.get(request);
+      if (ret == null) {
+        this.sums.put(request, ret = sum(request));
+      }
+      return ret;
+    }
+  }
+
+  public static class Wide {
+    @Inject
+    @Add({ 1000000, 1000000 })
+    public int intField;
+
+    @Inject
+    @Add({ 2000000, 2000000 })
+    public long longField;
+
+    @Inject
+    @Add({ 3000000, 3000000 })
+    public double doubleField;
+
+    public final int    intParameter;
+    public final long   longParameter;
+    public final double doubleParameter;
+
+    @Inject
+    public Wide(@Add({ 1000000, 1000000 }) int intParameter, @Add({ 2000000, 2000000 }) long longParameter, @Add({ 3000000, 3000000 }) double doubleParameter) {
+      this.intParameter = intParameter;
+      this.longParameter = longParameter;
+      this.doubleParameter = doubleParameter;
+    }
+  }
+}
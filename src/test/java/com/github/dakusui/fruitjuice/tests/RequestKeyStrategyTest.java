@@ -0,0 +1,174 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.RequestKeyStrategy;
+import com.github.dakusui.fruitjuice.Scope;
+import org.junit.Test;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RequestKeyStrategyTest {
+  @Test
+  public void givenDefaultStrategy$whenFieldAndParameterHaveSameQualifier$thenCreatedSeparately() {
+    Target target = createInjector(RequestKeyStrategy.Standard.FULL, new AtomicInteger()).getInstance(Target.class);
+
+    assertNotSame(target.field, target.parameter);
+  }
+
+  @Test
+  public void givenQualifiersOnly$whenFieldAndParameterHaveSameQualifier$thenShared() {
+    AtomicInteger count = new AtomicInteger();
+    Target target = createInjector(RequestKeyStrategy.Standard.QUALIFIERS_ONLY, count).getInstance(Target.class);
+
+    assertSame(target.field, target.parameter);
+    assertNotSame(target.field, target.documented);
+    assertNotSame(target.field, target.named);
+    assertEquals(3, count.get());
+  }
+
+  @Test
+  public void givenTypeOnly$whenInstanceIsRequested$thenAllShareOneValue() {
+    AtomicInteger count = new AtomicInteger();
+    Target target = createInjector(RequestKeyStrategy.Standard.TYPE_ONLY, count).getInstance(Target.class);
+
+    assertSame(target.field, target.documented);
+    assertSame(target.field, target.named);
+    assertSame(target.field, target.parameter);
+    assertEquals(1, count.get());
+  }
+
+  @Test
+  public void givenSignificantAnnotation$whenInstanceIsRequested$thenOtherAnnotationsAreIgnored() {
+    AtomicInteger count = new AtomicInteger();
+    Target target = createInjector(new RequestKeyStrategy.Significant().annotation(Pool.class), count).getInstance(Target.class);
+
+    assertSame(target.field, target.documented);
+    assertSame(target.field, target.parameter);
+    assertNotSame(target.field, target.named);
+    assertEquals(2, count.get());
+  }
+
+  @Test
+  public void givenSignificantAttribute$whenInstanceIsRequested$thenOtherAttributesAreIgnored() {
+    AtomicInteger count = new AtomicInteger();
+    Target target = createInjector(new RequestKeyStrategy.Significant().annotation(Pool.class, "size"), count).getInstance(Target.class);
+
+    assertSame(target.field, target.named);
+    assertEquals(1, count.get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void givenUnknownAttribute$whenDeclared$thenExceptionThrown() {
+    new RequestKeyStrategy.Significant().annotation(Pool.class, "unknown");
+  }
+
+  @Test
+  public void givenCachingBuilderWithQualifiersOnly$whenInstanceIsRequested$thenFewerValuesAreCached() {
+    Context.Builder.Caching builder = new Context.Builder.Caching(new Context.Builder.Caching.Policy(), RequestKeyStrategy.Standard.QUALIFIERS_ONLY) {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return new Object();
+      }
+    };
+    Target target = FruitJuice.createInjector(builder).getInstance(Target.class);
+
+    assertSame(target.field, target.parameter);
+    assertEquals(3, builder.getStats().getMissCount());
+  }
+
+  @Test
+  public void givenBaseBuilderWithSingletonScope$whenFieldAndParameterHaveSameQualifier$thenShared() {
+    Injector injector = FruitJuice.createInjector(new Context.Builder.Base(RequestKeyStrategy.Standard.QUALIFIERS_ONLY) {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return new Object();
+      }
+
+      @Override
+      protected Scope scopeFor(InjectionRequest request) {
+        return scopeOf(Scope.Singleton.class);
+      }
+    });
+    Target target = injector.getInstance(Target.class);
+
+    assertSame(target.field, target.parameter);
+    assertSame(target.field, injector.getInstance(Target.class).parameter);
+  }
+
+  @Test
+  public void givenCanonicalizer$whenRepresentativeIsUnreachable$thenItIsNotRetained() throws InterruptedException {
+    RequestKeyStrategy.Canonicalizer canonicalizer = new RequestKeyStrategy.Canonicalizer(RequestKeyStrategy.Standard.QUALIFIERS_ONLY);
+    WeakReference<InjectionRequest> representative = canonicalizeNewRequest(canonicalizer);
+    for (int i = 0; i < 50 && representative.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+
+    assertNull(representative.get());
+  }
+
+  private static WeakReference<InjectionRequest> canonicalizeNewRequest(RequestKeyStrategy.Canonicalizer canonicalizer) {
+    ////
+    // Plans created by the factory are not cached, so their requests are new objects.
+    InjectionRequest request = InjectionPlan.Factory.create(Target.class).getFieldInjectionPoints().get(0).getRequest();
+    assertSame(request, canonicalizer.canonicalize(request));
+    return new WeakReference<>(request);
+  }
+
+  private static Injector createInjector(RequestKeyStrategy strategy, final AtomicInteger count) {
+    return FruitJuice.createInjector(new Context.Builder.Concurrent(strategy) {
+      @Override
+      protected Object create(InjectionRequest request) {
+        count.incrementAndGet();
+        return new Object();
+      }
+    });
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  public @interface Pool {
+    int size();
+
+    String name() default "";
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  public @interface Note {
+    String value();
+  }
+
+  public static class Target {
+    @Inject
+    @Pool(size = 4)
+    public Object field;
+
+    @Inject
+    @Pool(size = 4)
+    @Note("irrelevant to what is injected")
+    public Object documented;
+
+    @Inject
+    @Pool(size = 4, name = "named")
+    public Object named;
+
+    public final Object parameter;
+
+    @Inject
+    public Target(@Pool(size = 4) Object parameter) {
+      this.parameter = parameter;
+    }
+  }
+}
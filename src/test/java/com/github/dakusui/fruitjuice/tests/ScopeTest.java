@@ -0,0 +1,272 @@
+package com.github.dakusui.fruitjuice.tests;
+
+import com.github.dakusui.fruitjuice.Context;
+import com.github.dakusui.fruitjuice.FruitJuice;
+import com.github.dakusui.fruitjuice.Inject;
+import com.github.dakusui.fruitjuice.InjectionPlan;
+import com.github.dakusui.fruitjuice.InjectionPoint;
+import com.github.dakusui.fruitjuice.InjectionRequest;
+import com.github.dakusui.fruitjuice.Injector;
+import com.github.dakusui.fruitjuice.Provider;
+import com.github.dakusui.fruitjuice.Scope;
+import com.github.dakusui.fruitjuice.Scoped;
+import com.github.dakusui.fruitjuice.examples.executorservice.ContainsMultiThreadedExecutorService;
+import com.github.dakusui.fruitjuice.examples.executorservice.MultiThreaded;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Test;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ScopeTest {
+  private static final Provider<Object> NEW_OBJECT = new Provider<Object>() {
+    @Override
+    public Object get() {
+      return new Object();
+    }
+  };
+
+  @Retention(RetentionPolicy.RUNTIME)
+  @Scoped(Scope.Graph.class)
+  public @interface PerGraph {
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  @Scoped(Scope.PerThread.class)
+  public @interface PerThread {
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  public @interface Unscoped {
+  }
+
+  public static class Nested {
+    @Inject
+    @PerGraph
+    public Object perGraph;
+  }
+
+  public static class Target {
+    @Inject
+    @PerGraph
+    public Object perGraph;
+
+    @Inject
+    @PerThread
+    public Object perThread;
+
+    @Inject
+    @Unscoped
+    public Object unscoped;
+
+    @Inject
+    public Nested nested;
+  }
+
+  public static class Pair {
+    @Inject
+    @PerGraph
+    public Object first;
+
+    @Inject
+    @PerGraph
+    public Object second;
+  }
+
+  @Test
+  public void givenGraphScope$whenInjected$thenSharedWithinGraphOnly() {
+    Injector injector = createInjector();
+    Target first = injector.getInstance(Target.class);
+    Target second = injector.getInstance(Target.class);
+
+    assertSame(first.perGraph, first.nested.perGraph);
+    assertNotSame(first.perGraph, second.perGraph);
+    assertNotSame(first.unscoped, second.unscoped);
+  }
+
+  @Test
+  public void givenGraphScopeOnConcurrentBuilder$whenInjected$thenSharedWithinGraphOnly() {
+    Injector injector = createConcurrentInjector();
+    Target first = injector.getInstance(Target.class);
+    Target second = injector.getInstance(Target.class);
+
+    assertSame(first.perGraph, first.nested.perGraph);
+    assertNotSame(first.perGraph, second.perGraph);
+  }
+
+  @Test
+  public void givenGraphScopeOnAsyncBuilder$whenInjectedAsynchronously$thenCreatedOnceInGraph() throws Exception {
+    final AtomicInteger count = new AtomicInteger(0);
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      Pair pair = FruitJuice.createExtendedInjector(new Context.Builder.Async.Base() {
+        @Override
+        protected ListenableFuture<?> createAsync(InjectionRequest request, Executor executor) {
+          count.incrementAndGet();
+          return Futures.immediateFuture(new Object());
+        }
+      }).getInstanceAsync(Pair.class, executorService).get();
+
+      assertSame(pair.first, pair.second);
+      assertEquals(1, count.get());
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void givenPerThreadScope$whenInjected$thenSharedWithinThreadOnly() throws Exception {
+    final Injector injector = createConcurrentInjector();
+    Target first = injector.getInstance(Target.class);
+    Target second = injector.getInstance(Target.class);
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    Target third;
+    try {
+      third = executorService.submit(new Callable<Target>() {
+        @Override
+        public Target call() throws Exception {
+          return injector.getInstance(Target.class);
+        }
+      }).get();
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertSame(first.perThread, second.perThread);
+    assertNotSame(first.perThread, third.perThread);
+  }
+
+  @Test
+  public void givenPerThreadScope$whenCleared$thenCreatedAgain() {
+    Scope.PerThread scope = new Scope.PerThread();
+    InjectionRequest request = requestsOf(Target.class).get(0);
+    Object first = scope.get(request, NEW_OBJECT);
+
+    assertSame(first, scope.get(request, NEW_OBJECT));
+    scope.clear();
+    assertNotSame(first, scope.get(request, NEW_OBJECT));
+  }
+
+  @Test(timeout = 10000)
+  public void givenSingletonScope$whenDifferentRequestsAreCreatedAtOnce$thenCreatedConcurrently() throws Exception {
+    final Scope scope = new Scope.Singleton();
+    final CountDownLatch creating = new CountDownLatch(2);
+    final Provider<Boolean> bothCreating = new Provider<Boolean>() {
+      @Override
+      public Boolean get() {
+        creating.countDown();
+        try {
+          return creating.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    for (final InjectionRequest each : requestsOf(Target.class).subList(0, 2)) {
+      tasks.add(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return scope.get(each, bothCreating);
+        }
+      });
+    }
+    ExecutorService executorService = Executors.newFixedThreadPool(2);
+    try {
+      for (Future<Boolean> each : executorService.invokeAll(tasks)) {
+        assertTrue(each.get());
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void givenScopeConfiguredByBuilder$whenInjected$thenShared() {
+    Injector injector = FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        if (Nested.class.equals(request.getType()))
+          return FruitJuice.createInjector(this).getInstance(Nested.class);
+        return new Object();
+      }
+
+      @Override
+      protected Scope scopeFor(InjectionRequest request) {
+        return request.isAnnotationPresent(Unscoped.class)
+            ? scopeOf(Scope.Singleton.class)
+            : super.scopeFor(request);
+      }
+    });
+
+    assertSame(injector.getInstance(Target.class).unscoped, injector.getInstance(Target.class).unscoped);
+  }
+
+  @Test
+  public void givenSingletonQualifier$whenInjectedTwice$thenPoolIsCreatedOnlyOnce() throws Exception {
+    Injector injector = FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        return Executors.newFixedThreadPool(request.getAnnotation(MultiThreaded.class).poolSize());
+      }
+    });
+    ExecutorService first = executorServiceOf(injector.getInstance(ContainsMultiThreadedExecutorService.class));
+    ExecutorService second = executorServiceOf(injector.getInstance(ContainsMultiThreadedExecutorService.class));
+    first.shutdown();
+
+    assertSame(first, second);
+  }
+
+  private static Injector createInjector() {
+    return FruitJuice.createInjector(new Context.Builder.Base() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        if (Nested.class.equals(request.getType()))
+          return FruitJuice.createInjector(this).getInstance(Nested.class);
+        return new Object();
+      }
+    });
+  }
+
+  private static Injector createConcurrentInjector() {
+    return FruitJuice.createInjector(new Context.Builder.Concurrent() {
+      @Override
+      protected Object create(InjectionRequest request) {
+        if (Nested.class.equals(request.getType()))
+          return FruitJuice.createInjector(this).getInstance(Nested.class);
+        return new Object();
+      }
+    });
+  }
+
+  private static List<InjectionRequest> requestsOf(Class<?> targetClass) {
+    List<InjectionRequest> ret = new ArrayList<>();
+    for (InjectionPoint each : InjectionPlan.Factory.create(targetClass).getFieldInjectionPoints()) {
+      ret.add(each.getRequest());
+    }
+    return ret;
+  }
+
+  private static ExecutorService executorServiceOf(ContainsMultiThreadedExecutorService target) throws Exception {
+    Field field = ContainsMultiThreadedExecutorService.class.getDeclaredField("executorService");
+    field.setAccessible(true);
+    return (ExecutorService) field.get(target);
+  }
+}